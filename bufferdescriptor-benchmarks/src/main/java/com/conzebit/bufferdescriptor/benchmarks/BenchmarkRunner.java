@@ -0,0 +1,31 @@
+package com.conzebit.bufferdescriptor.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so allocation per operation is reported along with time. Meant to be run
+ * from an IDE; arguments are regular expressions selecting the benchmarks, all of them by default.<br />
+ * <br />
+ * The packaged jar runs the JMH command line instead, with all its options:
+ * <code>java -jar benchmarks.jar FieldAccess -prof gc</code>
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder().addProfiler(GCProfiler.class);
+        if (args.length == 0) {
+            options.include(".*Benchmark");
+        }
+        for (String arg : args) {
+            options.include(arg);
+        }
+        new Runner(options.build()).run();
+    }
+}
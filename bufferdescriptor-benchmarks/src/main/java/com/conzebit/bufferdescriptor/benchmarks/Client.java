@@ -0,0 +1,17 @@
+package com.conzebit.bufferdescriptor.benchmarks;
+
+/**
+ * Accessors of some fields of the CLIENT copybook, compiled by AccessorFactory.
+ */
+public interface Client {
+
+    String getName();
+
+    void setName(String name);
+
+    String getPhone(int contact);
+
+    long getMaxPurchaseAllowed();
+
+    void setMaxPurchaseAllowed(long max);
+}
@@ -0,0 +1,105 @@
+package com.conzebit.bufferdescriptor.benchmarks;
+
+import com.conzebit.bufferdescriptor.BufferBuilder;
+import com.conzebit.bufferdescriptor.BufferDescriptor;
+import com.conzebit.bufferdescriptor.FieldHandle;
+import com.conzebit.bufferdescriptor.RecordLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing dates in the formats found in copybooks: <code>yyyyMMdd</code>, julian <code>yyyyDDD</code> and
+ * <code>dd MMM yyyy</code>, as epoch days, as LocalDate and through the Calendar methods.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DateCodecBenchmark {
+
+    private BufferDescriptor record;
+    private FieldHandle numeric;
+    private FieldHandle julian;
+    private FieldHandle text;
+    private Calendar calendar;
+    private int epochDay;
+
+    @Setup
+    public void setup() {
+        RecordLayout layout = new BufferBuilder()
+                .addDataDescription(1, "DATES")
+                .addDateDescription(5, "NUMERIC", "yyyyMMdd")
+                .addDateDescription(5, "JULIAN", "yyyyDDD")
+                .addDateDescription(5, "TEXT", "X(11)", "dd MMM yyyy")
+                .endLayoutDescription();
+        this.record = layout.newRecord();
+        this.numeric = layout.field("NUMERIC");
+        this.julian = layout.field("JULIAN");
+        this.text = layout.field("TEXT");
+        this.epochDay = (int) LocalDate.of(2024, 2, 29).toEpochDay();
+        this.record.setEpochDay(this.numeric, this.epochDay);
+        this.record.setEpochDay(this.julian, this.epochDay);
+        this.record.setEpochDay(this.text, this.epochDay);
+        this.calendar = this.record.getDate(this.numeric, "yyyyMMdd");
+    }
+
+    @Benchmark
+    public int getEpochDayNumeric() {
+        return this.record.getEpochDay(this.numeric);
+    }
+
+    @Benchmark
+    public int getEpochDayJulian() {
+        return this.record.getEpochDay(this.julian);
+    }
+
+    @Benchmark
+    public int getEpochDayText() {
+        return this.record.getEpochDay(this.text);
+    }
+
+    @Benchmark
+    public LocalDate getLocalDateNumeric() {
+        return this.record.getLocalDate(this.numeric);
+    }
+
+    @Benchmark
+    public Calendar getDateNumeric() {
+        return this.record.getDate(this.numeric, "yyyyMMdd");
+    }
+
+    @Benchmark
+    public Calendar getDateText() {
+        return this.record.getDate(this.text, "dd MMM yyyy", Locale.ENGLISH);
+    }
+
+    @Benchmark
+    public void setEpochDayNumeric() {
+        this.record.setEpochDay(this.numeric, this.epochDay);
+    }
+
+    @Benchmark
+    public void setEpochDayText() {
+        this.record.setEpochDay(this.text, this.epochDay);
+    }
+
+    @Benchmark
+    public void setDateNumeric() {
+        this.record.setDate(this.numeric, this.calendar, "yyyyMMdd");
+    }
+}
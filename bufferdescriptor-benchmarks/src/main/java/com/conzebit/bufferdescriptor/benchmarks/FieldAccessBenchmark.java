@@ -0,0 +1,126 @@
+package com.conzebit.bufferdescriptor.benchmarks;
+
+import com.conzebit.bufferdescriptor.AccessorFactory;
+import com.conzebit.bufferdescriptor.BufferDescriptor;
+import com.conzebit.bufferdescriptor.FieldHandle;
+import com.conzebit.bufferdescriptor.RecordLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing single fields of a CLIENT record: by name, by FieldHandle, through an OCCURS index and through
+ * a generated accessor. Also clearing a record and swapping its buffer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FieldAccessBenchmark {
+
+    private RecordLayout layout;
+    private BufferDescriptor record;
+    private FieldHandle name;
+    private FieldHandle visits;
+    private FieldHandle maxPurchaseAllowed;
+    private FieldHandle phone;
+    private Client client;
+    private byte[] shortBuffer;
+    private long value = 0;
+
+    @Setup
+    public void setup() {
+        this.layout = Layouts.layout(Layouts.CLIENT);
+        this.record = this.layout.newRecord();
+        this.record.setString("NAME", "JOHN");
+        this.record.setInt("VISITS", 42);
+        this.record.setLong("MAX-PURCHASE-ALLOWED", 1000);
+        this.record.setString("PHONE", "555-0102", 2);
+
+        this.name = this.layout.field("NAME");
+        this.visits = this.layout.field("VISITS");
+        this.maxPurchaseAllowed = this.layout.field("MAX-PURCHASE-ALLOWED");
+        this.phone = this.layout.field("PHONE", 2);
+        this.client = AccessorFactory.compile(this.layout, Client.class).wrap(this.record.getBuffer());
+        this.shortBuffer = new byte[this.layout.getRecordLength() / 2];
+    }
+
+    @Benchmark
+    public String getStringByName() {
+        return this.record.getString("NAME");
+    }
+
+    @Benchmark
+    public String getStringByHandle() {
+        return this.record.getString(this.name);
+    }
+
+    @Benchmark
+    public String getStringByAccessor() {
+        return this.client.getName();
+    }
+
+    @Benchmark
+    public int getIntByName() {
+        return this.record.getInt("VISITS");
+    }
+
+    @Benchmark
+    public int getIntByHandle() {
+        return this.record.getInt(this.visits);
+    }
+
+    @Benchmark
+    public void setLongByName() {
+        this.record.setLong("MAX-PURCHASE-ALLOWED", this.value++ & 0xFFFF);
+    }
+
+    @Benchmark
+    public void setLongByHandle() {
+        this.record.setLong(this.maxPurchaseAllowed, this.value++ & 0xFFFF);
+    }
+
+    @Benchmark
+    public void setLongByAccessor() {
+        this.client.setMaxPurchaseAllowed(this.value++ & 0xFFFF);
+    }
+
+    @Benchmark
+    public String getIndexedByName() {
+        return this.record.getString("PHONE", 2);
+    }
+
+    @Benchmark
+    public String getIndexedByHandle() {
+        return this.record.getString(this.phone);
+    }
+
+    @Benchmark
+    public String getIndexedByAccessor() {
+        return this.client.getPhone(2);
+    }
+
+    @Benchmark
+    public BufferDescriptor clearBuffer() {
+        this.record.clearBuffer();
+        return this.record;
+    }
+
+    @Benchmark
+    public BufferDescriptor setBufferResized() {
+        BufferDescriptor ret = this.layout.newRecord();
+        ret.setBuffer(this.shortBuffer, true);
+        return ret;
+    }
+}
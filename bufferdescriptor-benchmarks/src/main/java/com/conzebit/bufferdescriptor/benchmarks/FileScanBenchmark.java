@@ -0,0 +1,150 @@
+package com.conzebit.bufferdescriptor.benchmarks;
+
+import com.conzebit.bufferdescriptor.BufferDescriptor;
+import com.conzebit.bufferdescriptor.ColumnBatch;
+import com.conzebit.bufferdescriptor.ColumnExtractor;
+import com.conzebit.bufferdescriptor.FieldHandle;
+import com.conzebit.bufferdescriptor.MappedRecordReader;
+import com.conzebit.bufferdescriptor.RecordFilter;
+import com.conzebit.bufferdescriptor.RecordLayout;
+import com.conzebit.bufferdescriptor.RecordReader;
+import com.conzebit.bufferdescriptor.RecordWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanning a file of CLIENT records: summing a field with a mapped reader and with a stream reader, with a filter on
+ * the raw bytes of a field, and extracting columns.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileScanBenchmark {
+
+    private static final String[] COUNTRIES = {"ES", "FR", "PT", "IT", "DE"};
+
+    @Param({"100000"})
+    public int records;
+
+    private RecordLayout layout;
+    private File file;
+    private FieldHandle maxPurchaseAllowed;
+    private RecordFilter spain;
+    private ColumnExtractor extractor;
+
+    @Setup
+    public void setup() throws IOException {
+        this.layout = Layouts.layout(Layouts.CLIENT);
+        this.maxPurchaseAllowed = this.layout.field("MAX-PURCHASE-ALLOWED");
+        this.spain = RecordFilter.equalTo(this.layout.field("COUNTRY"), "ES");
+        this.extractor = new ColumnExtractor(this.layout)
+                .addLongColumn("MAX-PURCHASE-ALLOWED")
+                .addIntColumn("VISITS")
+                .addStringColumn("COUNTRY");
+
+        this.file = File.createTempFile("clients", ".dat");
+        RecordWriter writer = new RecordWriter(this.layout, new FileOutputStream(this.file));
+        try {
+            for (int i = 0; i < this.records; i++) {
+                BufferDescriptor record = writer.nextRecord();
+                record.setLong("CLIENT-ID", i);
+                record.setString("NAME", "NAME" + i);
+                record.setString("COUNTRY", COUNTRIES[i % COUNTRIES.length]);
+                record.setLong(this.maxPurchaseAllowed, i % 10000);
+                record.setInt("VISITS", i % 100);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.file.delete();
+    }
+
+    @Benchmark
+    public long mappedScan() throws IOException {
+        MappedRecordReader reader = new MappedRecordReader(this.layout, this.file);
+        try {
+            return this.sum(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Benchmark
+    public long mappedFilteredScan() throws IOException {
+        MappedRecordReader reader = new MappedRecordReader(this.layout, this.file);
+        try {
+            reader.setFilter(this.spain);
+            return this.sum(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Benchmark
+    public long streamScan() throws IOException {
+        RecordReader reader = new RecordReader(this.layout,
+                new BufferedInputStream(new FileInputStream(this.file), 1 << 16));
+        try {
+            long ret = 0;
+            while (reader.next()) {
+                ret += reader.getRecord().getLong(this.maxPurchaseAllowed);
+            }
+            return ret;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Benchmark
+    public long columnScan() throws IOException {
+        MappedRecordReader reader = new MappedRecordReader(this.layout, this.file);
+        try {
+            ColumnBatch batch = this.extractor.extract(reader);
+            long[] values = batch.getLongs(0);
+            long ret = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                ret += values[i];
+            }
+            return ret;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Sums MAX-PURCHASE-ALLOWED over the records of a reader.
+     * @param reader Reader positioned before the first record
+     * @return the sum
+     */
+    private long sum(final MappedRecordReader reader) {
+        long ret = 0;
+        while (reader.next()) {
+            ret += reader.getRecord().getLong(this.maxPurchaseAllowed);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,61 @@
+package com.conzebit.bufferdescriptor.benchmarks;
+
+import com.conzebit.bufferdescriptor.BufferDescriptor;
+import com.conzebit.bufferdescriptor.CopybookParser;
+import com.conzebit.bufferdescriptor.RecordLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building layouts, from a copybook and from a snapshot, and creating blank records from them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LayoutBenchmark {
+
+    @Param({Layouts.CLIENT, Layouts.DEEP, Layouts.WIDE})
+    public String copybook;
+
+    private String text;
+    private byte[] snapshot;
+    private RecordLayout layout;
+
+    @Setup
+    public void setup() {
+        this.text = Layouts.copybook(this.copybook);
+        this.layout = Layouts.layout(this.copybook);
+        this.snapshot = this.layout.toSnapshot();
+    }
+
+    @Benchmark
+    public RecordLayout parse() {
+        // Parsed layouts are cached by their text, so the cache is emptied to measure the parser itself
+        CopybookParser.clearCache();
+        return new CopybookParser().setFixedFormat(true).parse(this.text);
+    }
+
+    @Benchmark
+    public RecordLayout fromSnapshot() {
+        return RecordLayout.fromSnapshot(this.snapshot);
+    }
+
+    @Benchmark
+    public BufferDescriptor newRecord() {
+        return this.layout.newRecord();
+    }
+}
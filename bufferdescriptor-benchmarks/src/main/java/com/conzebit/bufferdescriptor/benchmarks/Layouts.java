@@ -0,0 +1,62 @@
+package com.conzebit.bufferdescriptor.benchmarks;
+
+import com.conzebit.bufferdescriptor.CopybookParser;
+import com.conzebit.bufferdescriptor.RecordLayout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Copybooks used by the benchmarks, read from <code>/layouts</code> in the classpath.<br />
+ * <br />
+ * <code>CLIENT</code> is a typical master file record, <code>DEEP</code> nests four OCCURS tables and <code>WIDE</code>
+ * has some three hundred fields and a table of a thousand entries. All of them are in fixed format.
+ */
+final class Layouts {
+
+    static final String CLIENT = "CLIENT";
+    static final String DEEP = "DEEP";
+    static final String WIDE = "WIDE";
+
+    private Layouts() {
+    }
+
+    /**
+     * Returns the text of a copybook.
+     * @param name Name of the copybook, without extension
+     * @return the copybook
+     */
+    static String copybook(final String name) {
+        InputStream in = Layouts.class.getResourceAsStream("/layouts/" + name + ".cpy");
+        if (in == null) {
+            throw new IllegalArgumentException(name);
+        }
+        try {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] chunk = new byte[4096];
+                int read;
+                while ((read = in.read(chunk)) > 0) {
+                    out.write(chunk, 0, read);
+                }
+                return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parses a copybook.
+     * @param name Name of the copybook, without extension
+     * @return the layout
+     */
+    static RecordLayout layout(final String name) {
+        return new CopybookParser().setFixedFormat(true).parse(copybook(name));
+    }
+}
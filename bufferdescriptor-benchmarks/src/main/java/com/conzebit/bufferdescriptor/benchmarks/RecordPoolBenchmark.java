@@ -0,0 +1,58 @@
+package com.conzebit.bufferdescriptor.benchmarks;
+
+import com.conzebit.bufferdescriptor.BufferDescriptor;
+import com.conzebit.bufferdescriptor.RecordLayout;
+import com.conzebit.bufferdescriptor.RecordPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handling a message with a new CLIENT record against one taken from a pool shared by several threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class RecordPoolBenchmark {
+
+    private RecordLayout layout;
+    private RecordPool pool;
+
+    @Setup
+    public void setup() {
+        this.layout = Layouts.layout(Layouts.CLIENT);
+        this.pool = new RecordPool(this.layout, 64);
+    }
+
+    @Benchmark
+    public long newRecord() {
+        BufferDescriptor record = this.layout.newRecord();
+        record.setLong("CLIENT-ID", 42);
+        return record.getLong("CLIENT-ID");
+    }
+
+    @Benchmark
+    public long pooledRecord() {
+        BufferDescriptor record = this.pool.acquire();
+        try {
+            record.setLong("CLIENT-ID", 42);
+            return record.getLong("CLIENT-ID");
+        } finally {
+            this.pool.release(record);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.conzebit.bufferdescriptor;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles a RecordLayout into a class with one method per field, implementing an interface declared by the user.
+ * <br />
+ * <br />
+ * Given the layout of the sample CLIENT record, the following interface:<br />
+ * <br />
+ * <code>
+ * public interface Client {<br />
+ * &nbsp;String getName();<br />
+ * &nbsp;void setName(String name);<br />
+ * &nbsp;String getPhone(int contact);<br />
+ * &nbsp;long getMaxPurchaseAllowed();<br />
+ * &nbsp;void setMaxPurchaseAllowed(long max);<br />
+ * }
+ * </code><br />
+ * <br />
+ * is implemented with:<br />
+ * <br />
+ * <code>
+ * AccessorFactory&lt;Client&gt; factory = AccessorFactory.compile(layout, Client.class);<br />
+ * Client client = factory.wrap(record);<br />
+ * long max = client.getMaxPurchaseAllowed();
+ * </code><br />
+ * <br />
+ * Methods are bound to fields by name, ignoring case, hyphens and underscores: <code>getMaxPurchaseAllowed</code> is
+ * bound to <code>MAX_PURCHASE_ALLOWED</code> or <code>MAX-PURCHASE-ALLOWED</code>. Getters take one int per OCCURS
+ * of the field, from 1, and setters take the same indexes followed by the value. Values can be String for any field;
+ * int, long or BigDecimal for numeric fields; and LocalDate for date fields.<br />
+ * <br />
+ * The bytecode of every method is generated with the position, length and codec of its field as constants, so once
+ * compiled by the JIT there is no lookup and no type dispatch left. Accessors read and write byte[] records in place.
+ * Compiled classes are cached by the layout, so each interface is compiled once per layout.
+ *
+ * @param <T> Interface implemented by the accessors
+ */
+public final class AccessorFactory<T> {
+
+    private static final String PACKAGE = "com/conzebit/bufferdescriptor/";
+    private static final String GENERATED_PACKAGE = "com.conzebit.bufferdescriptor.generated.";
+    private static final String ACCESSOR = PACKAGE + "RecordAccessor";
+    private static final String DESCRIPTOR = "L" + PACKAGE + "DataDescriptor;";
+    private static final String CODEC_ARGUMENTS = "[BII" + DESCRIPTOR;
+    private static final AtomicInteger GENERATED = new AtomicInteger();
+
+    private final RecordLayout layout;
+    private final Class<T> type;
+    private final Constructor<?> constructor;
+
+    private AccessorFactory(final RecordLayout layout, final Class<T> type) {
+        if (!type.isInterface() || !Modifier.isPublic(type.getModifiers())) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_ACCESSOR + type.getName());
+        }
+        this.layout = layout;
+        this.type = type;
+
+        String className = GENERATED_PACKAGE + type.getSimpleName() + "Accessor" + GENERATED.incrementAndGet();
+        List<DataDescriptor> fields = new ArrayList<DataDescriptor>();
+        byte[] classFile = this.generate(className.replace('.', '/'), fields);
+        RecordAccessor.register(className, fields.toArray(new DataDescriptor[fields.size()]));
+        Class<?> generated = new AccessorClassLoader(type.getClassLoader()).define(className, classFile);
+        try {
+            this.constructor = generated.getConstructor(RecordLayout.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the factory of accessors of a layout implementing an interface, compiling it the first time.
+     * @param layout Layout of the records
+     * @param type Interface with one method per field to be accessed
+     * @param <T> Interface implemented by the accessors
+     * @return the factory
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> AccessorFactory<T> compile(final RecordLayout layout, final Class<T> type) {
+        AccessorFactory<?> factory = layout.accessorFactories.get(type);
+        if (factory == null) {
+            factory = new AccessorFactory<T>(layout, type);
+            AccessorFactory<?> cached = layout.accessorFactories.putIfAbsent(type, factory);
+            if (cached != null) {
+                factory = cached;
+            }
+        }
+        return (AccessorFactory<T>) factory;
+    }
+
+    /**
+     * Returns the interface implemented by the accessors.
+     * @return the interface
+     */
+    public Class<T> getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns the layout of the records.
+     * @return the layout
+     */
+    public RecordLayout getLayout() {
+        return this.layout;
+    }
+
+    /**
+     * Creates an accessor over a new record, with every field initialized.
+     * @return the accessor
+     */
+    public T newRecord() {
+        return this.wrap(this.layout.newRecord().getBuffer(), 0);
+    }
+
+    /**
+     * Creates an accessor that reads and writes a record in place.
+     * @param buffer Buffer holding the record, with the length of a record
+     * @return the accessor
+     */
+    public T wrap(final byte[] buffer) {
+        if (buffer.length != this.layout.recordLength) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+        return this.wrap(buffer, 0);
+    }
+
+    /**
+     * Creates an accessor that reads and writes a record in place, starting at any position of a bigger array.
+     * @param buffer Buffer holding the record
+     * @param offset Position of the first byte of the record
+     * @return the accessor
+     */
+    public T wrap(final byte[] buffer, final int offset) {
+        RecordAccessor accessor;
+        try {
+            accessor = (RecordAccessor) this.constructor.newInstance(this.layout);
+        } catch (InstantiationException e) {
+            throw new IllegalStateException(e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        accessor.setBuffer(buffer, offset);
+        return this.type.cast(accessor);
+    }
+
+    /**
+     * Writes the class file of the accessor.
+     * @param className Internal name of the class
+     * @param fields List where the fields used by the class are added
+     * @return the class file
+     */
+    private byte[] generate(final String className, final List<DataDescriptor> fields) {
+        Map<String, DataDescriptor> byName = new HashMap<String, DataDescriptor>();
+        for (DataDescriptor dd : this.layout.descriptors()) {
+            if (dd.length > 0 && byName.put(normalize(dd.name), dd) != null) {
+                // Names that differ only in hyphens or underscores can't be bound
+                byName.put(normalize(dd.name), null);
+            }
+        }
+
+        ClassFileWriter writer = new ClassFileWriter();
+        Map<DataDescriptor, String> staticFields = new HashMap<DataDescriptor, String>();
+        for (Method method : this.type.getMethods()) {
+            if (!Modifier.isAbstract(method.getModifiers())) {
+                continue;
+            }
+            DataDescriptor dd = byName.get(normalize(property(method)));
+            if (dd == null) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_ACCESSOR + method.getName());
+            }
+            String staticField = staticFields.get(dd);
+            if (staticField == null) {
+                staticField = "FIELD" + fields.size();
+                staticFields.put(dd, staticField);
+                fields.add(dd);
+                writer.addField(ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL, staticField, DESCRIPTOR);
+            }
+            generateMethod(writer, className, staticField, method, dd);
+        }
+
+        // Constructor
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "(L" + PACKAGE + "RecordLayout;)V", 2, 2)
+                .local(0x19, 0)
+                .local(0x19, 1)
+                .ref(0xB7, writer.methodRef(ACCESSOR, "<init>", "(L" + PACKAGE + "RecordLayout;)V"))
+                .op(0xB1)
+                .end();
+
+        // Static initializer, taking the fields registered for this class
+        ClassFileWriter.Code init = writer.addMethod(ClassFileWriter.ACC_STATIC, "<clinit>", "()V", 3, 1)
+                .pushString(className.replace('/', '.'))
+                .ref(0xB8, writer.methodRef(ACCESSOR, "fields", "(Ljava/lang/String;)[" + DESCRIPTOR))
+                .local(0x3A, 0);
+        for (int i = 0; i < fields.size(); i++) {
+            init.local(0x19, 0)
+                    .pushInt(i)
+                    .op(0x32)
+                    .ref(0xB3, writer.fieldRef(className, "FIELD" + i, DESCRIPTOR));
+        }
+        init.op(0xB1).end();
+
+        return writer.toByteArray(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL | ClassFileWriter.ACC_SUPER,
+                className, ACCESSOR, this.type.getName().replace('.', '/'));
+    }
+
+    /**
+     * Writes a method that reads or writes a field.
+     * @param writer Class being written
+     * @param className Internal name of the class
+     * @param staticField Static field holding the field
+     * @param method Method of the interface
+     * @param dd Field bound to the method
+     */
+    private static void generateMethod(final ClassFileWriter writer, final String className, final String staticField,
+                                       final Method method, final DataDescriptor dd) {
+        boolean setter = method.getName().startsWith("set");
+        Class<?>[] parameters = method.getParameterTypes();
+        int indexes = setter ? parameters.length - 1 : parameters.length;
+        Class<?> valueType = setter ? (indexes >= 0 ? parameters[indexes] : null) : method.getReturnType();
+        if (indexes != dd.dimensions.length || (setter && method.getReturnType() != void.class)) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_ACCESSOR + method.getName());
+        }
+        for (int i = 0; i < indexes; i++) {
+            if (parameters[i] != int.class) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_ACCESSOR + method.getName());
+            }
+        }
+
+        String codec = codec(dd, valueType);
+        if (codec == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_ACCESSOR + method.getName());
+        }
+
+        int valueSlot = 1 + indexes;
+        int maxLocals = valueSlot + (setter ? (valueType == long.class ? 2 : 1) : 0);
+        ClassFileWriter.Code code = writer.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL,
+                method.getName(), descriptor(method), 8, maxLocals);
+
+        // buffer, offset + position of the first occurrence + (index - 1) * stride..., length, field
+        code.local(0x19, 0).ref(0xB4, writer.fieldRef(ACCESSOR, "buffer", "[B"));
+        code.local(0x19, 0).ref(0xB4, writer.fieldRef(ACCESSOR, "offset", "I"));
+        code.pushInt(dd.bufferInit).op(0x60);
+        for (int i = 0; i < indexes; i++) {
+            code.local(0x15, 1 + i)
+                    .pushInt(dd.dimensions[i])
+                    .ref(0xB8, writer.methodRef(ACCESSOR, "index", "(II)I"))
+                    .pushInt(dd.strides[i])
+                    .op(0x68)
+                    .op(0x60);
+        }
+        code.pushInt(dd.length);
+        code.ref(0xB2, writer.fieldRef(className, staticField, DESCRIPTOR));
+
+        boolean numeric = !"String".equals(codec) && !"LocalDate".equals(codec);
+        if (setter) {
+            if (valueType == long.class) {
+                code.local(0x16, valueSlot);
+            } else if (valueType == int.class) {
+                code.local(0x15, valueSlot).op(0x85);
+            } else if (valueType == BigDecimal.class) {
+                code.local(0x19, valueSlot)
+                        .pushInt(dd.scale)
+                        .ref(0xB8, writer.methodRef(ACCESSOR, "unscale", "(Ljava/math/BigDecimal;I)J"));
+            } else {
+                code.local(0x19, valueSlot);
+            }
+            String value = numeric ? "J" : descriptor(valueType);
+            code.ref(0xB8, writer.methodRef(ACCESSOR, "set" + codec, "(" + CODEC_ARGUMENTS + value + ")V"))
+                    .op(0xB1)
+                    .end();
+            return;
+        }
+
+        if (!numeric) {
+            code.ref(0xB8, writer.methodRef(ACCESSOR, "get" + codec, "(" + CODEC_ARGUMENTS + ")"
+                    + descriptor(valueType))).op(0xB0).end();
+            return;
+        }
+        code.ref(0xB8, writer.methodRef(ACCESSOR, "get" + codec, "(" + CODEC_ARGUMENTS + ")J"));
+        if (valueType == long.class) {
+            code.op(0xAD);
+        } else if (valueType == int.class) {
+            code.ref(0xB8, writer.methodRef(ACCESSOR, "toInt", "(J)I")).op(0xAC);
+        } else {
+            code.pushInt(dd.scale)
+                    .ref(0xB8, writer.methodRef("java/math/BigDecimal", "valueOf", "(JI)Ljava/math/BigDecimal;"))
+                    .op(0xB0);
+        }
+        code.end();
+    }
+
+    /**
+     * Returns the codec of RecordAccessor used to access a field as a Java type.
+     * @param dd Field
+     * @param valueType Java type of the value
+     * @return the name of the codec, or null if the field can't be accessed as that type
+     */
+    private static String codec(final DataDescriptor dd, final Class<?> valueType) {
+        if (valueType == String.class) {
+            return "String";
+        }
+        if (valueType == LocalDate.class) {
+            return dd.datePattern == null ? null : "LocalDate";
+        }
+        if (valueType != int.class && valueType != long.class && valueType != BigDecimal.class) {
+            return null;
+        }
+        switch (dd.type) {
+        case PACKED:
+            return "Packed";
+        case BINARY:
+            return "Binary";
+        case NUMBER:
+            return dd.signed ? "Zoned" : "Display";
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the name of the property read or written by a method.
+     * @param method Method of the interface
+     * @return the property, or an empty String if the method is not a getter or a setter
+     */
+    private static String property(final Method method) {
+        String name = method.getName();
+        return (name.startsWith("get") || name.startsWith("set")) && name.length() > 3 ? name.substring(3) : "";
+    }
+
+    /**
+     * Normalizes the name of a field or a property, so <code>MaxPurchaseAllowed</code> and
+     * <code>MAX-PURCHASE-ALLOWED</code> are the same name.
+     * @param name Name of a field or a property
+     * @return the normalized name
+     */
+    private static String normalize(final String name) {
+        return name.replace("-", "").replace("_", "").toUpperCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Returns the descriptor of a method.
+     * @param method Method
+     * @return the descriptor, as in <code>(I)Ljava/lang/String;</code>
+     */
+    private static String descriptor(final Method method) {
+        StringBuilder ret = new StringBuilder("(");
+        for (Class<?> parameter : method.getParameterTypes()) {
+            ret.append(descriptor(parameter));
+        }
+        return ret.append(')').append(descriptor(method.getReturnType())).toString();
+    }
+
+    /**
+     * Returns the descriptor of a type.
+     * @param type Type supported by accessors
+     * @return the descriptor, as in <code>J</code> or <code>Ljava/lang/String;</code>
+     */
+    private static String descriptor(final Class<?> type) {
+        if (type == void.class) {
+            return "V";
+        }
+        if (type == int.class) {
+            return "I";
+        }
+        if (type == long.class) {
+            return "J";
+        }
+        return "L" + type.getName().replace('.', '/') + ";";
+    }
+
+    /**
+     * Class loader of a generated accessor. It sees the classes of the interface and of this library.
+     */
+    private static final class AccessorClassLoader extends ClassLoader {
+
+        AccessorClassLoader(final ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+            if (name.startsWith(PACKAGE.replace('/', '.')) && !name.startsWith(GENERATED_PACKAGE)) {
+                return RecordAccessor.class.getClassLoader().loadClass(name);
+            }
+            return super.loadClass(name, resolve);
+        }
+
+        /**
+         * Defines a generated class.
+         * @param name Name of the class
+         * @param classFile Class file
+         * @return the class
+         */
+        Class<?> define(final String name, final byte[] classFile) {
+            return this.defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.conzebit.bufferdescriptor;
+
+/**
+ * How values that don't fit are written into binary fields (<code>COMP</code>, <code>COMP-4</code> and
+ * <code>BINARY</code>), as chosen by the <code>TRUNC</code> option of the COBOL compiler that wrote the records.
+ * <code>COMP-5</code> fields are always {@link #NATIVE}.
+ */
+public enum BinaryTruncation {
+
+    /**
+     * Values are truncated to the number of digits of the PIC, keeping the rightmost ones as COBOL does. A field
+     * declared as <code>9(4) COMP</code> holds up to 9999. This is the default.
+     */
+    DECIMAL,
+
+    /**
+     * Values are only limited by the size of the field, as native integers. A field declared as
+     * <code>9(4) COMP</code> holds up to 65535, and values that don't fit into 2 bytes wrap around.
+     */
+    NATIVE
+}
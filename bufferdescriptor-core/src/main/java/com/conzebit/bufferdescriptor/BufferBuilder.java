@@ -1,5 +1,7 @@
 package com.conzebit.bufferdescriptor;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +18,7 @@ import java.util.Map;
  * &nbsp;&nbsp;10 A-B&nbsp;&nbsp;PIC X OCCURS 5.<br />
  * &nbsp;5 B&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;PIC X.<br />
  * &nbsp;5 C&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;PIC 9 OCCURS 2.<br />
+ * &nbsp;5 D&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;PIC S9(13)V99 COMP-3.<br />
  * </code>
  * <br />
  * To be able to use this on Java, you must write the following code:
@@ -28,6 +31,7 @@ import java.util.Map;
  * &nbsp;.addDataDescription(10, "A-B", "X(1)", 5)<br />
  * &nbsp;.addDataDescription(5, "B", "X(1)")<br />
  * &nbsp;.addDataDescription(5, "C", "9(3)")<br />
+ * &nbsp;.addDataDescription(5, "D", "S9(13)V99 COMP-3")<br />
  * &nbsp;.endDataDescription();<br />
  * </code>
  * From that point, you can use the Buffer using sets and gets as described by javadoc.
@@ -37,6 +41,10 @@ public class BufferBuilder {
     private DataDescriptor rootDataDescriptor = null;
     private int bufferSize = 0;
     private Map<String, DataDescriptor> descriptorHash = null;
+    private final List<DataDescriptor> openDescriptors = new ArrayList<DataDescriptor>();
+    private CodePage codePage = CodePage.DEFAULT;
+    private BinaryTruncation binaryTruncation = BinaryTruncation.DECIMAL;
+    private final long started = RecordMetrics.active == null ? 0 : System.nanoTime();
 
     public BufferBuilder() {
         this.rootDataDescriptor = null;
@@ -44,6 +52,47 @@ public class BufferBuilder {
         this.descriptorHash = new HashMap<String, DataDescriptor>(0);
     }
     
+    /**
+     * Sets the code page of the fields added from now on. If it's set before adding the first field, it's the code
+     * page of the whole record, otherwise it can be changed for some fields only:<br />
+     * <br />
+     * <b><code>
+     * .setCodePage(CodePage.CP037)<br />
+     * .addDataDescription(1, "CLIENT")<br />
+     * .addDataDescription(5, "NAME", "X(50)")<br />
+     * .setCodePage(CodePage.ISO_8859_1)<br />
+     * .addDataDescription(5, "ASCII-NOTE", "X(20)")
+     * </code></b><br />
+     * <br />
+     * Fields use {@link CodePage#DEFAULT} unless another code page is set.
+     * @param codePage Code page of the next fields
+     */
+    public final BufferBuilder setCodePage(final CodePage codePage) {
+        if (codePage == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_CODE_PAGE);
+        }
+        this.codePage = codePage;
+        return this;
+    }
+
+    /**
+     * Sets how values that don't fit are written into the binary fields added from now on, as the <code>TRUNC</code>
+     * option of the COBOL compiler does. <code>COMP-5</code> fields are always native.<br />
+     * <br />
+     * <b><code>
+     * .setBinaryTruncation(BinaryTruncation.NATIVE)<br />
+     * .addDataDescription(5, "COUNTER", "9(4) COMP")
+     * </code></b>
+     * @param binaryTruncation Truncation of the next binary fields, {@link BinaryTruncation#DECIMAL} by default
+     */
+    public final BufferBuilder setBinaryTruncation(final BinaryTruncation binaryTruncation) {
+        if (binaryTruncation == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+        this.binaryTruncation = binaryTruncation;
+        return this;
+    }
+
     /**
      * Adds a new field to descriptor list. OCCURS will have a value of 1 and PIC will not be set.<br />
      * <br />
@@ -91,7 +140,7 @@ public class BufferBuilder {
      * <b><code>.addDataDescription(5, "NAME", "PIC X(50)");</code></b>
      * @param levelNumber Level number of the field. It must be greater than zero.
      * @param name Name of the field.
-     * @param pic PIC of the field using the following format <code>PIC [X|9](length)</code>
+     * @param pic PIC of the field, as in <code>X(50)</code>, <code>S9(7)V99</code> or <code>S9(13)V99 COMP-3</code>
      */
     public final BufferBuilder addDataDescription(final int levelNumber, final String name, final String pic) {
         return this.addDataDescription(levelNumber, name, pic, 1);
@@ -109,7 +158,7 @@ public class BufferBuilder {
      * <b><code>.addDataDescription(5, "PHONES", "PIC 9(9)", 3);</code></b>
      * @param levelNumber Level number of the field. It must be greater than zero.
      * @param name Name of the field.
-     * @param pic PIC of the field using the following format <code>PIC [X|9](length)</code>
+     * @param pic PIC of the field, as in <code>X(50)</code>, <code>S9(7)V99</code> or <code>S9(13)V99 COMP-3</code>
      * @param occurs Number of occurrences of the field. It must be greater than zero.
      */
     public final BufferBuilder addDataDescription(final int levelNumber,
@@ -121,88 +170,215 @@ public class BufferBuilder {
             throw new IllegalArgumentException(IBufferConstant.ERROR_NAME_EXISTS);
         }
 
-        DataDescriptor.Type type = this.getPICType(pic);
-        int length = this.getPICLength(pic);
-
-        DataDescriptor dd = new DataDescriptor(levelNumber, name, length, occurs, type);
+        Picture picture = Picture.parse(pic);
+        DataDescriptor dd = new DataDescriptor(levelNumber, name, picture.length, occurs, picture.type);
+        dd.digits = picture.digits;
+        dd.scale = picture.scale;
+        dd.signed = picture.signed;
+        dd.signLeading = picture.signLeading;
+        dd.signSeparate = picture.signSeparate;
+        dd.nativeBinary = picture.type == DataDescriptor.Type.BINARY
+                && (picture.nativeBinary || this.binaryTruncation == BinaryTruncation.NATIVE);
+        dd.codePage = this.codePage;
 
         if (this.rootDataDescriptor == null) {
             this.rootDataDescriptor = dd;
         } else {
+            this.appendChildDescriptor(dd);
+        }
+        this.descriptorHash.put(name, dd);
+        this.openDescriptors.add(dd);
+        return this;
+    }
+
+    /**
+     * Sets the initial value of the last field added, as the <code>VALUE</code> clause of COBOL does. Every new or
+     * cleared record gets this value instead of spaces or zeroes.<br />
+     * <br />
+     * Example: If we have the following COBOL expression<br />
+     * <br />
+     * <b><code>5  COUNTRY PIC X(2) VALUE 'ES'.</code></b><br />
+     * <br />
+     * The call to the method will be:<br />
+     * <br />
+     * <b><code>.addDataDescription(5, "COUNTRY", "X(2)").withValue("ES")</code></b>
+     * @param value Initial value. Numeric fields take a decimal number, as in <code>-12.5</code>
+     */
+    public final BufferBuilder withValue(final String value) {
+        int last = this.openDescriptors.size() - 1;
+        DataDescriptor dd = last < 0 ? null : this.openDescriptors.get(last);
+        if (dd == null || dd.length == 0 || value == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+        if (dd.type != DataDescriptor.Type.STRING) {
+            long unscaled;
             try {
-                boolean ok = appendChildDescriptor(this.rootDataDescriptor, dd);
-                if (ok) {
-                    this.descriptorHash.put(name, dd);
-                } else {
-                    throw new IllegalArgumentException(IBufferConstant.ERROR_DESCRIPTOR_LEVEL);
-                }
-            } catch (CloneNotSupportedException cloneNotSupportedException) {
-                // This exception will never be raised as DataDescriptor is cloneable
+                unscaled = BufferDescriptor.unscale(new BigDecimal(value.trim()), dd.scale);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+            }
+            if ((unscaled < 0 && !dd.signed) || (dd.digits < 19 && Math.abs(unscaled) >= FieldCodec.POW10[dd.digits])) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
             }
+            dd.unscaledValue = unscaled;
         }
+        dd.value = value;
         return this;
     }
     
     /**
-     * Adds a DataDescriptor as a child
-     * @param parent Parent of the descriptor to be added
-     * @param dd DataDescriptor to be added
-     * @return true if DataDescriptor was added, false otherwise
-     * @throws CloneNotSupportedException if not able to clone
+     * Makes the last field added redefine a previous field, as the <code>REDEFINES</code> clause of COBOL does. Both
+     * fields start at the same position, so the same bytes can be read with either layout and switching from one to
+     * the other copies nothing. The area takes the length of the longest of them.<br />
+     * <br />
+     * Example: If we have the following COBOL expression<br />
+     * <br />
+     * <b><code>5  PAYMENT REDEFINES ADDRESS.</code></b><br />
+     * <br />
+     * The call to the method will be:<br />
+     * <br />
+     * <b><code>.addDataDescription(5, "PAYMENT").redefines("ADDRESS")</code></b><br />
+     * <br />
+     * The redefined field must be the previous field with the same parent, not counting other fields redefining it.
+     * New and cleared records are initialized by the redefined field. If a redefining field is longer, the bytes past
+     * the redefined field are initialized by the longest redefining field.
+     * @param name Name of the redefined field
      */
-    private boolean appendChildDescriptor(final DataDescriptor parent, final DataDescriptor dd)
-            throws CloneNotSupportedException {
+    public final BufferBuilder redefines(final String name) {
+        int last = this.openDescriptors.size() - 1;
+        DataDescriptor dd = last < 0 ? null : this.openDescriptors.get(last);
+        DataDescriptor redefined = this.descriptorHash.get(name);
+        if (dd == null || dd.parent == null || dd.redefines != null || redefined == null
+                || redefined.parent != dd.parent) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_REDEFINES + name);
+        }
 
-        if (parent.levelNumber >= dd.levelNumber) {
-            return false;
+        // The field just added is the last child of its parent
+        List<DataDescriptor> siblings = dd.parent.children;
+        int previous = siblings.size() - 2;
+        while (previous >= 0 && siblings.get(previous).redefines != null) {
+            previous--;
         }
+        if (previous < 0 || siblings.get(previous) != redefined) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_REDEFINES + name);
+        }
+        dd.redefines = name;
+        return this;
+    }
 
-        if (parent.length > 0) {
-            throw new IllegalArgumentException(IBufferConstant.ERROR_ILLEGAL_INSERTION);
+    /**
+     * Adds a new date field to descriptor list. Its PIC is computed from the format: <code>9(8)</code> for
+     * <code>yyyyMMdd</code>, <code>X(10)</code> for <code>yyyy-MM-dd</code>.<br />
+     * <br />
+     * <b><code>.addDateDescription(5, "BIRTH-DATE", "yyyyMMdd");</code></b><br />
+     * <br />
+     * Date fields are read and written with getLocalDate and getEpochDay, see {@link DatePattern}.
+     * @param levelNumber Level number of the field. It must be greater than zero.
+     * @param name Name of the field.
+     * @param format Format of the date, as in <code>yyyyMMdd</code>, <code>yyyy-MM-dd</code> or <code>yyyyDDD</code>
+     */
+    public final BufferBuilder addDateDescription(final int levelNumber, final String name, final String format) {
+        DatePattern datePattern = DatePattern.of(format);
+        String pic = (datePattern.isNumeric() ? "9(" : "X(") + format.length() + ")";
+        return this.addDateDescription(levelNumber, name, pic, datePattern);
+    }
+
+    /**
+     * Adds a new date field to descriptor list with its own PIC, for formats whose length is not the length of the
+     * pattern, such as <code>dd MMM yyyy</code>.<br />
+     * <br />
+     * <b><code>.addDateDescription(5, "BIRTH-DATE", "X(11)", "dd MMM yyyy");</code></b>
+     * @param levelNumber Level number of the field. It must be greater than zero.
+     * @param name Name of the field.
+     * @param pic PIC of the field, <code>X(n)</code> or <code>9(n)</code>
+     * @param format Format of the date, as used by DateTimeFormatter
+     */
+    public final BufferBuilder addDateDescription(final int levelNumber,
+                                                  final String name,
+                                                  final String pic,
+                                                  final String format) {
+        return this.addDateDescription(levelNumber, name, pic, DatePattern.of(format));
+    }
+
+    /**
+     * Adds a new date field to descriptor list.
+     * @param levelNumber Level number of the field
+     * @param name Name of the field
+     * @param pic PIC of the field
+     * @param datePattern Format of the date
+     */
+    private BufferBuilder addDateDescription(final int levelNumber,
+                                             final String name,
+                                             final String pic,
+                                             final DatePattern datePattern) {
+        Picture picture = Picture.parse(pic);
+        if (picture.type == DataDescriptor.Type.PACKED || picture.type == DataDescriptor.Type.BINARY
+                || picture.signed || picture.scale > 0) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
         }
+        this.addDataDescription(levelNumber, name, pic, 1);
+        this.descriptorHash.get(name).datePattern = datePattern;
+        return this;
+    }
 
-        boolean insertOk = false;
-        for (List<DataDescriptor> list : parent.children) {
-            int size = list.size() - 1;
-            if (size >= 0) {
-                insertOk = appendChildDescriptor(list.get(size), dd);
-            }
+    /**
+     * Adds a DataDescriptor as a child of the last field with a lower level number. Occurrences are not materialized,
+     * a field with OCCURS is added once.<br />
+     * <br />
+     * The fields that can still get children, from the root to the last field added, are kept in a stack, so adding a
+     * field doesn't walk the tree and building a layout is linear in the number of fields.
+     * @param dd DataDescriptor to be added
+     */
+    private void appendChildDescriptor(final DataDescriptor dd) {
+        int top = this.openDescriptors.size() - 1;
+        while (top >= 0 && this.openDescriptors.get(top).levelNumber >= dd.levelNumber) {
+            top--;
         }
-        if (insertOk) {
-            return true;
+        if (top < 0) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_DESCRIPTOR_LEVEL);
         }
 
-        DataDescriptor clone = (DataDescriptor) dd.clone();
-        clone.indexPosition = parent.indexPosition;
-        List<DataDescriptor> list = parent.children.get(0);
-        list.add(clone);
-        if (dd.occurs > 1) {
-            clone.length = 0;
-            int j = 0;
-            for (List<DataDescriptor> clonedList : clone.children) {
-                DataDescriptor newClone = (DataDescriptor) dd.clone();
-                newClone.indexPosition = clone.indexPosition + '(' + (j + 1) + ')'; // Replaced to StringBuilder by javac, no worries...
-                j++;
-                newClone.occurs = 1;
-                clonedList.add(newClone);
-            }
+        DataDescriptor parent = this.openDescriptors.get(top);
+        if (parent.length > 0) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_ILLEGAL_INSERTION);
         }
-        return true;
+
+        this.openDescriptors.subList(top + 1, this.openDescriptors.size()).clear();
+        dd.parent = parent;
+        parent.children.add(dd);
     }
 
-    
     /**
      * Ending of definition of field descriptions.
+     * @return a BufferDescriptor with its own buffer
      */
     public final BufferDescriptor endDataDescription() {
+        return this.endLayoutDescription().newRecord();
+    }
+
+    /**
+     * Ending of definition of field descriptions, returning the structure alone. The returned RecordLayout is
+     * immutable and can be shared by any number of threads, each one creating or wrapping its own records.
+     * @return an immutable RecordLayout
+     */
+    public final RecordLayout endLayoutDescription() {
         if (this.rootDataDescriptor == null) {
             throw new IllegalStateException(IBufferConstant.ERROR_NO_DESC);
         }
 
-        this.bufferSize = adjustLimit(this.rootDataDescriptor, 0);
-        this.descriptorHash = new HashMap<String, DataDescriptor>();
-        addToHash(this.rootDataDescriptor, this.descriptorHash);
-        return new BufferDescriptor(this.rootDataDescriptor, this.bufferSize, this.descriptorHash);
+        // The layout gets its own copy so it can't be changed by adding more fields to this builder
+        DataDescriptor root = this.rootDataDescriptor.copy(null);
+        this.bufferSize = adjustLimit(root, 0);
+        adjustDimensions(root);
+        Map<String, DataDescriptor> hash = new HashMap<String, DataDescriptor>(this.descriptorHash.size() * 4 / 3 + 1);
+        addToHash(root, hash);
+        RecordLayout layout = new RecordLayout(root, this.bufferSize, hash);
+
+        RecordMetrics metrics = RecordMetrics.active;
+        if (metrics != null && this.started != 0) {
+            metrics.layoutBuilt(layout, System.nanoTime() - this.started);
+        }
+        return layout;
     }
     
     
@@ -212,82 +388,39 @@ public class BufferBuilder {
      */
     protected final void addToHash(final DataDescriptor dd, final Map<String, DataDescriptor> ht) {
         ht.put(dd.getName(), dd);
-        for (List<DataDescriptor> children : dd.children) {
-            for (DataDescriptor child : children) {
-            	addToHash(child, ht);
-            }
+        for (DataDescriptor child : dd.children) {
+            addToHash(child, ht);
         }
     }
     
     /**
-     * Adjust limits to read current descriptor.
+     * Adjust limits to read current descriptor. Sets the position of the first occurrence and the length of a single
+     * occurrence. Fields that redefine another one start where it starts, and the area ends after the longest of them.
      * @param bi Starting point
-     * @return total length
+     * @return total length, including all the occurrences
      */
     protected final int adjustLimit(final DataDescriptor dd, final int bi) {
         dd.bufferInit = bi;
-        dd.bufferLen = 0;
-        for (List<DataDescriptor> childs : dd.children) {
-            for (DataDescriptor child : childs) {
-                dd.bufferLen += adjustLimit(child, bi + dd.bufferLen);
+        int end = bi;
+        int area = bi;
+        for (DataDescriptor child : dd.children) {
+            if (child.redefines == null) {
+                area = end;
             }
+            end = Math.max(end, area + adjustLimit(child, area));
         }
-        dd.bufferLen += dd.length;
-        return dd.bufferLen;
+        dd.bufferLen = end - bi + dd.length;
+        return dd.parent == null ? dd.bufferLen : dd.bufferLen * dd.occurs;
     }
-    
 
-    
     /**
-     * Gets the type given a PIC.
-     * @param pic PIC of the field
-     * @return type of the field
+     * Sets the size and the stride of every OCCURS dimension that applies to current descriptor and all it's child.
+     * Limits must have been adjusted before.
      */
-    private DataDescriptor.Type getPICType(final String pic) {
-        if (pic == null) {
-            return DataDescriptor.Type.STRING;
-        }
-
-        if (pic.length() < 4) {
-            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
+    protected final void adjustDimensions(final DataDescriptor dd) {
+        dd.inheritDimensions();
+        for (DataDescriptor child : dd.children) {
+            adjustDimensions(child);
         }
-
-        DataDescriptor.Type ret;
-
-        char c = pic.charAt(0);
-        if (c == 'x' || c == 'X') {
-            ret = DataDescriptor.Type.STRING;
-        } else if (c == '9') {
-            ret = DataDescriptor.Type.NUMBER;
-        } else {
-            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
-        }
-        return ret;
     }
-    
-    /**
-     * Gets PIC length
-     * @param pic PIC of the field
-     * @return length of the field
-     */
-    private int getPICLength(final String pic) {
-        if (pic == null) {
-            return 0;
-        }
-
-        if ((pic.length() < 4) || (pic.charAt(1) != '(') || (pic.charAt(pic.length() - 1) != ')')) {
-            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
-        }
-
-        String sLength = pic.substring(2, pic.length() - 1);
-
-        int ret;
-        try {
-            ret = Integer.parseInt(sLength);
-        } catch (Exception e) {
-            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
-        }
-        return ret;
-    }
-    
 }
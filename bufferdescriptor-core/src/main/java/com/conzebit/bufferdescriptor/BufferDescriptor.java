@@ -1,59 +1,232 @@
 package com.conzebit.bufferdescriptor;
 
-import com.conzebit.bufferdescriptor.DataDescriptor.Type;
-
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.text.SimpleDateFormat;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
 import java.util.*;
 
 /**
- * BufferDescriptor that contains both the structure and the values of a Buffer.
+ * BufferDescriptor that contains both the structure and the values of a Buffer.<br />
+ * <br />
+ * The structure is held by an immutable RecordLayout that can be shared, while the values live in a buffer that
+ * may be owned by this BufferDescriptor, wrapped from a bigger array starting at any position or wrapped from a
+ * ByteBuffer, including direct ones. Wrapped buffers are read and written in place, nothing is copied.<br />
+ * <br />
+ * Records are serializable. A record wrapping a ByteBuffer is serialized as a copy of its own bytes, so it's
+ * deserialized as a record with its own buffer, no longer linked to the ByteBuffer.
  */
 public class BufferDescriptor implements Cloneable, Serializable {
 
 	private static final long serialVersionUID = 1L;
 
     protected DataDescriptor rootDataDescriptor = null;
+    private final RecordLayout layout;
     private byte[] buffer = null;
-    private Map<String, DataDescriptor> descriptorHash = null;
+    private transient ByteBuffer byteBuffer = null;
+    private transient ByteBuffer arrayView = null;
+    private int offset = 0;
 
-    protected BufferDescriptor(DataDescriptor rootDataDescriptor, int bufferSize, Map<String, DataDescriptor> descriptorHash) {
-        this.rootDataDescriptor = rootDataDescriptor;
-        this.buffer = new byte[bufferSize];
-        this.descriptorHash = descriptorHash;
+    protected BufferDescriptor(DataDescriptor rootDataDescriptor, int bufferSize,
+                               Map<String, DataDescriptor> descriptorHash) {
+        this(new RecordLayout(rootDataDescriptor, bufferSize, descriptorHash), new byte[bufferSize], 0);
         this.clearBuffer();
     }
 
+    BufferDescriptor(final RecordLayout layout, final byte[] buffer, final int offset) {
+        this.rootDataDescriptor = layout.rootDataDescriptor;
+        this.layout = layout;
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    BufferDescriptor(final RecordLayout layout, final ByteBuffer buffer, final int index) {
+        this.rootDataDescriptor = layout.rootDataDescriptor;
+        this.layout = layout;
+        this.setBuffer(buffer, index);
+    }
+
+    /**
+     * Writes this record. ByteBuffers are not serializable, so a record wrapping one writes a copy of its bytes
+     * instead, as if it had its own buffer.
+     * @param out Stream of the serialization
+     * @throws IOException if the record can't be written
+     */
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        if (this.byteBuffer == null) {
+            out.defaultWriteObject();
+            return;
+        }
+        byte[] copy = new byte[this.layout.recordLength];
+        this.copyTo(copy, 0);
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("rootDataDescriptor", this.rootDataDescriptor);
+        fields.put("layout", this.layout);
+        fields.put("buffer", copy);
+        fields.put("offset", 0);
+        out.writeFields();
+    }
+
     /**
      * Clear the data buffer. Initializes all fields to their default value.
-     * PIC X are initialized to blank spaces and PIC 9 are initialized to zeroes.
+     * PIC X are initialized to blank spaces and PIC 9 are initialized to zeroes, both in the code page of the field.
+     * Fields with a VALUE get it. The blank record is computed once by the layout, so this is a single copy.
      */
     public final void clearBuffer() {
-        for (DataDescriptor dd : this.descriptorHash.values()) {
-            String value = null;
+        byte[] template = this.layout.template;
+        if (this.byteBuffer == null) {
+            System.arraycopy(template, 0, this.buffer, this.offset, template.length);
+        } else {
+            ByteBuffer target = this.byteBuffer.duplicate();
+            target.position(this.offset);
+            target.put(template);
+        }
+    }
+
+    /**
+     * Initializes all the occurrences of a field and its children.
+     * @param dd Field to be initialized
+     * @param position Position of the first occurrence
+     */
+    private void clear(final DataDescriptor dd, final int position) {
+        int occurs = dd.parent == null ? 1 : dd.occurs;
+        for (int i = 0; i < occurs; i++) {
+            int pos = position + i * dd.bufferLen;
             if (dd.length > 0) {
-                char[] b = new char[dd.length];
-                if (dd.type == Type.NUMBER) {
-                    Arrays.fill(b, '0');
-                } else {
-                    Arrays.fill(b, ' ');
+                this.clearField(dd, pos);
+            }
+            this.clearChildren(dd, pos);
+        }
+    }
+
+    /**
+     * Initializes the children of an occurrence of a group. An area with redefinitions is initialized by the field
+     * redefined, but when a redefining field is longer, the longest one initializes the area first so the bytes past
+     * the redefined field are not left as they were.
+     * @param dd Group
+     * @param pos Position of the occurrence
+     */
+    private void clearChildren(final DataDescriptor dd, final int pos) {
+        List<DataDescriptor> children = dd.children;
+        for (int i = 0; i < children.size(); i++) {
+            DataDescriptor child = children.get(i);
+            if (child.redefines != null) {
+                continue;
+            }
+            DataDescriptor longest = child;
+            for (int j = i + 1; j < children.size() && children.get(j).redefines != null; j++) {
+                DataDescriptor view = children.get(j);
+                if ((long) view.bufferLen * view.occurs > (long) longest.bufferLen * longest.occurs) {
+                    longest = view;
                 }
-                value = new String(b);
             }
-            if (value != null) {
-                System.arraycopy(value.getBytes(), 0, this.buffer, dd.bufferInit, dd.bufferLen);
+            if (longest != child) {
+                this.clear(longest, pos + longest.bufferInit - dd.bufferInit);
             }
+            this.clear(child, pos + child.bufferInit - dd.bufferInit);
         }
     }
     
     /**
-     * Returns the data buffer as a byte[]
+     * Initializes an occurrence of an elementary field.
+     * @param dd Field to be initialized
+     * @param pos Position of the occurrence
+     */
+    private void clearField(final DataDescriptor dd, final int pos) {
+        switch (dd.type) {
+        case NUMBER:
+            if (!dd.signed) {
+                this.fill(pos, dd.bufferLen, dd.codePage.digitBytes[0]);
+            } else if (this.byteBuffer == null) {
+                FieldCodec.encodeZoned(this.buffer, pos, dd.bufferLen, dd, 0);
+            } else {
+                FieldCodec.encodeZoned(this.byteBuffer, pos, dd.bufferLen, dd, 0);
+            }
+            break;
+        case BINARY:
+            this.fill(pos, dd.bufferLen, (byte) 0);
+            break;
+        case PACKED:
+            this.fill(pos, dd.bufferLen - 1, (byte) 0);
+            this.fill(pos + dd.bufferLen - 1, 1, dd.signed ? (byte) 0x0C : (byte) 0x0F);
+            break;
+        default:
+            this.fill(pos, dd.bufferLen, dd.codePage.space);
+            break;
+        }
+        if (dd.value != null) {
+            this.writeValue(dd, pos);
+        }
+    }
+
+    /**
+     * Writes the initial value of an occurrence of an elementary field.
+     * @param dd Field with a value
+     * @param pos Position of the occurrence
+     */
+    private void writeValue(final DataDescriptor dd, final int pos) {
+        if (dd.type == DataDescriptor.Type.STRING) {
+            if (this.byteBuffer == null) {
+                FieldCodec.encodeString(this.buffer, pos, dd.bufferLen, dd.codePage, dd.value);
+            } else {
+                FieldCodec.encodeString(this.byteBuffer, pos, dd.bufferLen, dd.codePage, dd.value);
+            }
+        } else if (this.byteBuffer == null) {
+            FieldCodec.encodeNumber(this.buffer, pos, dd.bufferLen, dd, dd.unscaledValue);
+        } else {
+            FieldCodec.encodeNumber(this.byteBuffer, pos, dd.bufferLen, dd, dd.unscaledValue);
+        }
+    }
+
+    /**
+     * Returns the data buffer as a byte[]. If this BufferDescriptor wraps a record inside a bigger array, the whole
+     * array is returned and the record starts at {@link #getBufferOffset()}. If it wraps a direct or read only
+     * ByteBuffer, there is no array to return and an IllegalStateException is thrown.
      * @return Data buffer 
      */
     public final byte[] getBuffer() {
+        if (this.byteBuffer != null) {
+            throw new IllegalStateException(IBufferConstant.ERROR_NO_ARRAY);
+        }
         return this.buffer;
     }
 
+    /**
+     * Returns the position of the record inside the array returned by {@link #getBuffer()}, or inside the wrapped
+     * ByteBuffer.
+     * @return Position of the first byte of the record
+     */
+    public final int getBufferOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Returns the structure of this BufferDescriptor, which can be shared with other threads to create or wrap
+     * records.
+     * @return the layout
+     */
+    public final RecordLayout getLayout() {
+        return this.layout;
+    }
+
+    /**
+     * Resolves a field so it can be accessed later without looking it up by name again.<br />
+     * <br />
+     * <b><code>
+     * FieldHandle phone = bd.field("PHONE", 2); // same as bd.field("PHONE(2)")<br />
+     * bd.setString(phone, "555-111111");
+     * </code></b>
+     * @param name Name of the field
+     * @param index optional parameters with indexes of the field name
+     * @return a FieldHandle for the field
+     */
+    public final FieldHandle field(final String name, final int... index) {
+        return this.layout.field(name, index);
+    }
+
     /**
      * Returns a Calendar instance.
      * For instance, given a field with PIC 9(8) in which we have a date with yyyyMMdd format, to get a Calendar
@@ -86,10 +259,83 @@ public class BufferDescriptor implements Cloneable, Serializable {
      * @return a Calendar instance or an exception if unable to parse the field
      */
     public final Calendar getDate(final String name, final String format, final Locale locale, final int... index) {
-        String value = this.getString(name, index);
-        SimpleDateFormat sdf = new SimpleDateFormat(format, locale);
+        return this.parseDate(this.getString(name, index), format, locale);
+    }
+
+    /**
+     * Returns a Calendar instance from a resolved field.
+     * @param field Field handle
+     * @param format Format as used by SimpleDateFormat
+     * @return a Calendar instance or an exception if unable to parse the field
+     */
+    public final Calendar getDate(final FieldHandle field, final String format) {
+        return getDate(field, format, Locale.getDefault());
+    }
+
+    /**
+     * Returns a Calendar instance from a resolved field.
+     * @param field Field handle
+     * @param format Format as used by SimpleDateFormat
+     * @param locale Locale to be used
+     * @return a Calendar instance or an exception if unable to parse the field
+     */
+    public final Calendar getDate(final FieldHandle field, final String format, final Locale locale) {
+        return this.parseDate(this.getString(field), format, locale);
+    }
+
+    /**
+     * Returns the value of a date field declared with its format, see
+     * {@link BufferBuilder#addDateDescription(int, String, String)}.
+     * @param name Name of the field
+     * @param index optional parameters with indexes of the field name
+     * @return the date, or null if the field is made of spaces or zeroes
+     */
+    public final LocalDate getLocalDate(final String name, final int... index) {
+        int epochDay = this.readEpochDay(this.getDescriptor(name, index));
+        return epochDay == DatePattern.EMPTY ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * Returns the value of a resolved date field.
+     * @param field Field handle
+     * @return the date, or null if the field is made of spaces or zeroes
+     */
+    public final LocalDate getLocalDate(final FieldHandle field) {
+        this.checkHandle(field);
+        int epochDay = this.readEpochDay(field);
+        return epochDay == DatePattern.EMPTY ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * Returns the value of a date field as days since 1970-01-01, without creating any object.
+     * @param name Name of the field
+     * @param index optional parameters with indexes of the field name
+     * @return Days since 1970-01-01, or {@link DatePattern#EMPTY} if the field is made of spaces or zeroes
+     */
+    public final int getEpochDay(final String name, final int... index) {
+        return this.readEpochDay(this.getDescriptor(name, index));
+    }
+
+    /**
+     * Returns the value of a resolved date field as days since 1970-01-01.
+     * @param field Field handle
+     * @return Days since 1970-01-01, or {@link DatePattern#EMPTY} if the field is made of spaces or zeroes
+     */
+    public final int getEpochDay(final FieldHandle field) {
+        this.checkHandle(field);
+        return this.readEpochDay(field);
+    }
+
+    /**
+     * Parses a date.
+     * @param value Value of the field
+     * @param format Format as used by SimpleDateFormat
+     * @param locale Locale to be used
+     * @return a Calendar instance or an exception if unable to parse the value
+     */
+    private Calendar parseDate(final String value, final String format, final Locale locale) {
         try {
-            Date d = sdf.parse(value);
+            Date d = DatePattern.simpleDateFormat(format, locale).parse(value);
             Calendar c = Calendar.getInstance();
             c.setTime(d);
             return c;
@@ -105,13 +351,68 @@ public class BufferDescriptor implements Cloneable, Serializable {
      * <br />
      * <b><code>bd.getDouble("TOTAL-INCOME", 2);</code></b><br />
      * <br />
+     * Doubles can't hold every decimal value exactly, {@link #getBigDecimal(String, int...)} or
+     * {@link #getUnscaledLong(String, int...)} should be used for amounts of money.
      * @param name Name of the field
      * @param numDecimal Number of decimal positions of the double field
      * @param index optional parameters with indexes of the field name
      * @return Value as double type
      */
     public final double getDouble(final String name, final int numDecimal, final int... index) {
-        return (this.getInt(name, index) / Math.pow(10, numDecimal));
+        return (this.getLong(name, index) / FieldCodec.pow10(numDecimal));
+    }
+
+    /**
+     * Returns a resolved field as a double value
+     * @param field Field handle
+     * @param numDecimal Number of decimal positions of the double field
+     * @return Value as double type
+     */
+    public final double getDouble(final FieldHandle field, final int numDecimal) {
+        return (this.getLong(field) / FieldCodec.pow10(numDecimal));
+    }
+
+    /**
+     * Returns the value of a numeric field as the integer made by all its digits, ignoring the implied decimal
+     * point. Given <b><code>5 INCOME PIC S9(7)V99</code></b> holding 12345.67, the unscaled value is 1234567.
+     * @param name Name of the field
+     * @param index optional parameters with indexes of the field name
+     * @return Unscaled value of the field
+     */
+    public final long getUnscaledLong(final String name, final int... index) {
+        return this.readLong(this.getDescriptor(name, index));
+    }
+
+    /**
+     * Returns the value of a resolved numeric field as the integer made by all its digits.
+     * @param field Field handle
+     * @return Unscaled value of the field
+     */
+    public final long getUnscaledLong(final FieldHandle field) {
+        this.checkHandle(field);
+        return this.readLong(field);
+    }
+
+    /**
+     * Returns the value of a numeric field with the decimal positions declared in its PIC, as in
+     * <b><code>9(7)V99</code></b>.
+     * @param name Name of the field
+     * @param index optional parameters with indexes of the field name
+     * @return Value of the field
+     */
+    public final BigDecimal getBigDecimal(final String name, final int... index) {
+        FieldHandle dd = this.getDescriptor(name, index);
+        return BigDecimal.valueOf(this.readLong(dd), dd.descriptor.scale);
+    }
+
+    /**
+     * Returns the value of a resolved numeric field with the decimal positions declared in its PIC.
+     * @param field Field handle
+     * @return Value of the field
+     */
+    public final BigDecimal getBigDecimal(final FieldHandle field) {
+        this.checkHandle(field);
+        return BigDecimal.valueOf(this.readLong(field), field.descriptor.scale);
     }
 
     /**
@@ -121,16 +422,18 @@ public class BufferDescriptor implements Cloneable, Serializable {
      * @return Integer value of the field
      */
     public final int getInt(final String name, final int... index) {
-        int ret = -1;
-        String sRet = this.getValue(name, index);
-        if (sRet != null) {
-            try {
-                ret = Integer.parseInt(sRet);
-            } catch (Exception e) {
-                throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
-            }
-        }
-        return ret;
+        FieldHandle dd = this.getDescriptor(name, index);
+        return this.readInt(dd);
+    }
+
+    /**
+     * Returns a resolved field as an int value
+     * @param field Field handle
+     * @return Integer value of the field
+     */
+    public final int getInt(final FieldHandle field) {
+        this.checkHandle(field);
+        return this.readInt(field);
     }
 
     /**
@@ -140,16 +443,18 @@ public class BufferDescriptor implements Cloneable, Serializable {
      * @return Long value of the field
      */
     public final long getLong(final String name, final int... index) {
-        long ret = -1;
-        String sRet = this.getValue(name, index);
-        if (sRet != null) {
-            try {
-                ret = Long.parseLong(sRet);
-            } catch (Exception e) {
-                throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
-            }
-        }
-        return ret;
+        FieldHandle dd = this.getDescriptor(name, index);
+        return this.readLong(dd);
+    }
+
+    /**
+     * Returns a resolved field as a long value
+     * @param field Field handle
+     * @return Long value of the field
+     */
+    public final long getLong(final FieldHandle field) {
+        this.checkHandle(field);
+        return this.readLong(field);
     }
 
     /**
@@ -159,7 +464,18 @@ public class BufferDescriptor implements Cloneable, Serializable {
      * @return String value of the field
      */
     public final String getString(final String name, final int... index) {
-        return this.getValue(name, index);
+        FieldHandle dd = this.getDescriptor(name, index);
+        return this.readString(dd);
+    }
+
+    /**
+     * Returns a resolved field as string.
+     * @param field Field handle
+     * @return String value of the field
+     */
+    public final String getString(final FieldHandle field) {
+        this.checkHandle(field);
+        return this.readString(field);
     }
 
     /**
@@ -168,10 +484,51 @@ public class BufferDescriptor implements Cloneable, Serializable {
      * @param buffer Buffer to be set
      */
     public final void setBuffer(final byte[] buffer) {
-        if (buffer.length != this.buffer.length) {
+        if (buffer.length != this.layout.recordLength) {
             throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
         }
+        this.setBuffer(buffer, 0);
+    }
+
+    /**
+     * Sets a buffer holding the record at the given position. The buffer may hold other data before and after the
+     * record, which is read and written in place.
+     * @param buffer Buffer to be set
+     * @param offset Position of the first byte of the record
+     */
+    public final void setBuffer(final byte[] buffer, final int offset) {
+        this.layout.checkBounds(buffer.length, offset);
         this.buffer = buffer;
+        this.byteBuffer = null;
+        this.offset = offset;
+    }
+
+    /**
+     * Sets a ByteBuffer holding the record at its current position. The position of the ByteBuffer is not changed.
+     * @param buffer Buffer to be set
+     */
+    public final void setBuffer(final ByteBuffer buffer) {
+        this.setBuffer(buffer, buffer.position());
+    }
+
+    /**
+     * Sets a ByteBuffer holding the record at the given absolute position. The position of the ByteBuffer is not
+     * used nor changed. Heap buffers are accessed through their array, direct and read only buffers through their
+     * absolute get and put methods.
+     * @param buffer Buffer to be set
+     * @param index Absolute position of the first byte of the record
+     */
+    public final void setBuffer(final ByteBuffer buffer, final int index) {
+        this.layout.checkBounds(buffer.limit(), index);
+        if (buffer.hasArray()) {
+            this.buffer = buffer.array();
+            this.byteBuffer = null;
+            this.offset = buffer.arrayOffset() + index;
+        } else {
+            this.buffer = null;
+            this.byteBuffer = buffer;
+            this.offset = index;
+        }
     }
 
     /**
@@ -181,20 +538,17 @@ public class BufferDescriptor implements Cloneable, Serializable {
      * @param resize true resize the buffer, false do not resize
      */
     public final void setBuffer(final byte[] buffer, final boolean resize) {
-        byte[] resizeBuffer;
         if (resize) {
-            this.clearBuffer();
-            resizeBuffer = new byte[this.buffer.length];
-            System.arraycopy(this.buffer, 0, resizeBuffer, 0, this.buffer.length);
-            int size = resizeBuffer.length;
-            if (buffer.length < resizeBuffer.length) {
-                size = buffer.length;
+            byte[] resizeBuffer = new byte[this.layout.recordLength];
+            this.setBuffer(resizeBuffer, 0);
+            int size = Math.min(buffer.length, resizeBuffer.length);
+            if (size < resizeBuffer.length) {
+                this.clearBuffer();
             }
             System.arraycopy(buffer, 0, resizeBuffer, 0, size);
         } else {
-            resizeBuffer = buffer;
+            this.setBuffer(buffer);
         }
-        this.setBuffer(resizeBuffer);
     }
 
     /**
@@ -218,17 +572,105 @@ public class BufferDescriptor implements Cloneable, Serializable {
      */
     public final void setDate(final String name, final Calendar calendar, final String format, final Locale locale,
                               final int... index) {
+        FieldHandle dd = this.getDescriptorToSet(name, index);
+        this.writeString(dd, formatDate(calendar, format, locale));
+    }
+
+    /**
+     * Sets a date as value for a resolved field<br />
+     * @param field Field handle
+     * @param calendar Calendar instance
+     * @param format Format as used by SimpleDateFormat
+     */
+    public final void setDate(final FieldHandle field, final Calendar calendar, final String format) {
+        this.setDate(field, calendar, format, Locale.getDefault());
+    }
+
+    /**
+     * Sets a date as value for a resolved field<br />
+     * @param field Field handle
+     * @param calendar Calendar instance
+     * @param format Format as used by SimpleDateFormat
+     * @param locale Locale to be used
+     */
+    public final void setDate(final FieldHandle field, final Calendar calendar, final String format,
+                              final Locale locale) {
+        this.checkHandle(field);
+        this.writeString(field, formatDate(calendar, format, locale));
+    }
+
+    /**
+     * Sets the value of a date field declared with its format, see
+     * {@link BufferBuilder#addDateDescription(int, String, String)}.
+     * @param name Name of the field
+     * @param date Date to be set, null to empty the field
+     * @param index optional parameters with indexes of the field name
+     */
+    public final void setLocalDate(final String name, final LocalDate date, final int... index) {
+        this.writeEpochDay(this.getDescriptorToSet(name, index),
+                date == null ? DatePattern.EMPTY : toEpochDay(date));
+    }
+
+    /**
+     * Sets the value of a resolved date field.
+     * @param field Field handle
+     * @param date Date to be set, null to empty the field
+     */
+    public final void setLocalDate(final FieldHandle field, final LocalDate date) {
+        this.checkHandle(field);
+        this.writeEpochDay(field, date == null ? DatePattern.EMPTY : toEpochDay(date));
+    }
+
+    /**
+     * Sets the value of a date field as days since 1970-01-01, without creating any object.
+     * @param name Name of the field
+     * @param epochDay Days since 1970-01-01, or {@link DatePattern#EMPTY} to empty the field
+     * @param index optional parameters with indexes of the field name
+     */
+    public final void setEpochDay(final String name, final int epochDay, final int... index) {
+        this.writeEpochDay(this.getDescriptorToSet(name, index), epochDay);
+    }
+
+    /**
+     * Sets the value of a resolved date field as days since 1970-01-01.
+     * @param field Field handle
+     * @param epochDay Days since 1970-01-01, or {@link DatePattern#EMPTY} to empty the field
+     */
+    public final void setEpochDay(final FieldHandle field, final int epochDay) {
+        this.checkHandle(field);
+        this.writeEpochDay(field, epochDay);
+    }
+
+    /**
+     * Converts a date to days since 1970-01-01.
+     * @param date Date
+     * @return Days since 1970-01-01
+     */
+    private static int toEpochDay(final LocalDate date) {
+        long epochDay = date.toEpochDay();
+        if (epochDay <= DatePattern.EMPTY || epochDay > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+        return (int) epochDay;
+    }
+
+    /**
+     * Formats a date.
+     * @param calendar Calendar instance
+     * @param format Format as used by SimpleDateFormat
+     * @param locale Locale to be used
+     * @return the formatted date, or an empty String if calendar is null
+     */
+    private static String formatDate(final Calendar calendar, final String format, final Locale locale) {
         if (format == null) {
             throw new IllegalArgumentException(IBufferConstant.ERROR_NULL_FORMAT);
         }
 
-        SimpleDateFormat sdf = new SimpleDateFormat(format, locale);
         String value = "";
         if (calendar != null) {
-            value = sdf.format(calendar.getTime());
+            value = DatePattern.simpleDateFormat(format, locale).format(calendar.getTime());
         }
-
-        this.setValue(name, value, DataDescriptor.Type.STRING, index);
+        return value;
     }
 
     /**
@@ -246,8 +688,19 @@ public class BufferDescriptor implements Cloneable, Serializable {
      * @param index optional parameters with indexes of the field name
      */
     public final void setDouble(final String name, final double value, final int numDecimal, final int... index) {
-        int val = (int) (value * (Math.pow(10, numDecimal)));
-        this.setInt(name, val, index);
+        long val = (long) (value * FieldCodec.pow10(numDecimal));
+        this.setLong(name, val, index);
+    }
+
+    /**
+     * Sets a double to a resolved field
+     * @param field Field handle
+     * @param value Value to be set
+     * @param numDecimal Number of digits of the decimal part
+     */
+    public final void setDouble(final FieldHandle field, final double value, final int numDecimal) {
+        long val = (long) (value * FieldCodec.pow10(numDecimal));
+        this.setLong(field, val);
     }
 
     /**
@@ -263,7 +716,18 @@ public class BufferDescriptor implements Cloneable, Serializable {
      * @param index optional parameters with indexes of the field name
      */
     public final void setInt(final String name, final int value, final int... index) {
-        this.setValue(name, String.valueOf(value), DataDescriptor.Type.NUMBER, index);
+        FieldHandle dd = this.getDescriptorToSet(name, index);
+        this.writeLong(dd, value);
+    }
+
+    /**
+     * Sets an int value to a resolved field
+     * @param field Field handle
+     * @param value Value to be set
+     */
+    public final void setInt(final FieldHandle field, final int value) {
+        this.checkHandle(field);
+        this.writeLong(field, value);
     }
 
     /**
@@ -273,7 +737,78 @@ public class BufferDescriptor implements Cloneable, Serializable {
      * @param index optional parameters with indexes of the field name
      */
     public final void setLong(final String name, final long value, final int... index) {
-        this.setValue(name, String.valueOf(value), DataDescriptor.Type.NUMBER, index);
+        FieldHandle dd = this.getDescriptorToSet(name, index);
+        this.writeLong(dd, value);
+    }
+
+    /**
+     * Sets a long to a resolved field
+     * @param field Field handle
+     * @param value Value to be set
+     */
+    public final void setLong(final FieldHandle field, final long value) {
+        this.checkHandle(field);
+        this.writeLong(field, value);
+    }
+
+    /**
+     * Sets the value of a numeric field as the integer made by all its digits, ignoring the implied decimal point.
+     * Given <b><code>5 INCOME PIC S9(7)V99</code></b>, an unscaled value of 1234567 stores 12345.67.
+     * @param name Name of the field
+     * @param value Unscaled value to be set
+     * @param index optional parameters with indexes of the field name
+     */
+    public final void setUnscaledLong(final String name, final long value, final int... index) {
+        this.writeLong(this.getDescriptorToSet(name, index), value);
+    }
+
+    /**
+     * Sets the value of a resolved numeric field as the integer made by all its digits.
+     * @param field Field handle
+     * @param value Unscaled value to be set
+     */
+    public final void setUnscaledLong(final FieldHandle field, final long value) {
+        this.checkHandle(field);
+        this.writeLong(field, value);
+    }
+
+    /**
+     * Sets the value of a numeric field with the decimal positions declared in its PIC. Extra decimal positions are
+     * truncated, as a COBOL MOVE does.
+     * @param name Name of the field
+     * @param value Value to be set
+     * @param index optional parameters with indexes of the field name
+     */
+    public final void setBigDecimal(final String name, final BigDecimal value, final int... index) {
+        FieldHandle dd = this.getDescriptorToSet(name, index);
+        this.writeLong(dd, unscale(value, dd.descriptor.scale));
+    }
+
+    /**
+     * Sets the value of a resolved numeric field with the decimal positions declared in its PIC.
+     * @param field Field handle
+     * @param value Value to be set
+     */
+    public final void setBigDecimal(final FieldHandle field, final BigDecimal value) {
+        this.checkHandle(field);
+        this.writeLong(field, unscale(value, field.descriptor.scale));
+    }
+
+    /**
+     * Converts a decimal value to the unscaled value of a field.
+     * @param value Decimal value
+     * @param scale Decimal positions of the field
+     * @return Unscaled value
+     */
+    static long unscale(final BigDecimal value, final int scale) {
+        if (value == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+        try {
+            return value.setScale(scale, RoundingMode.DOWN).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
     }
 
     /**
@@ -284,82 +819,380 @@ public class BufferDescriptor implements Cloneable, Serializable {
      * @param index optional parameters with indexes of the field name
      */
     public final void setString(final String name, final String value, final int... index) {
-        this.setValue(name, value, DataDescriptor.Type.STRING, index);
+        FieldHandle dd = this.getDescriptorToSet(name, index);
+        this.writeString(dd, value);
+    }
+
+    /**
+     * Sets a string to a resolved field. If the string is bigger than the field size it'll be truncated. if it's
+     * shorter than the field size then it's filled by right spaces.
+     * @param field Field handle
+     * @param value Value to be set
+     */
+    public final void setString(final FieldHandle field, final String value) {
+        this.checkHandle(field);
+        this.writeString(field, value);
     }
 
     /**
-     * Returns the value of the field
+     * Returns the descriptor of a field to be read
      * @param name Name of the field
-     * @return value of the field or null if it doesn't exist
      * @param index optional parameters with indexes of the field name
+     * @return the resolved field or an exception if it doesn't exist
      */
-    private String getValue(final String name, int... index) {
-        DataDescriptor dd = this.descriptorHash.get(composeNameWithIndexes(name, index));
+    private FieldHandle getDescriptor(final String name, final int... index) {
+        FieldHandle dd = this.layout.resolve(name, index);
         if (dd == null) {
+            this.failed(name, IBufferConstant.ERROR_NAME_DOESNT_EXIST);
             throw new IllegalArgumentException(IBufferConstant.ERROR_NAME_DOESNT_EXIST);
         }
-        return new String(this.buffer, dd.bufferInit, dd.bufferLen);
+        return dd;
     }
-    
+
     /**
-     * Sets the value of the field
+     * Returns the descriptor of a field to be written
      * @param name Name of the field
-     * @param value vañie of the field
-     * @param type Data Type
      * @param index optional parameters with indexes of the field name
+     * @return the resolved field or an exception if it doesn't exist
      */
-    private void setValue(final String name, final String value, final DataDescriptor.Type type, final int...index) {
-        DataDescriptor dd = this.descriptorHash.get(composeNameWithIndexes(name, index));
+    private FieldHandle getDescriptorToSet(final String name, final int... index) {
+        FieldHandle dd = this.layout.resolve(name, index);
         if (dd == null) {
+            this.failed(name, IBufferConstant.ERROR_DESCRIPTOR_NOT_FOUND + name);
             throw new IllegalArgumentException(IBufferConstant.ERROR_DESCRIPTOR_NOT_FOUND + name);
         }
+        return dd;
+    }
 
-        String _value = value;
-        if (value == null) {
-            switch (type) {
-            case NUMBER:
-                _value = "0";
-                break;
-            default:
-                _value = " ";
-                break;
-            }
+    /**
+     * Counts a failed access, if metrics are enabled
+     * @param name Name of the field
+     * @param error Message of the exception to be thrown
+     */
+    private void failed(final String name, final String error) {
+        RecordMetrics metrics = RecordMetrics.active;
+        if (metrics != null) {
+            metrics.failed(this.layout, name, error);
         }
+    }
+
+    /**
+     * Checks that a field handle was resolved from the layout of this BufferDescriptor
+     * @param field Field handle
+     */
+    private void checkHandle(final FieldHandle field) {
+        if (field.layout != this.layout) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_FOREIGN_HANDLE);
+        }
+    }
 
-        String processedValue = _value;
-        if (dd.bufferLen < _value.length()) {
-            processedValue = _value.substring(0, dd.bufferLen);
-        } else if (dd.bufferLen > _value.length()) {
-            char[] c = new char[dd.bufferLen - _value.length()];
-            switch (type) {
-            case NUMBER:
-                Arrays.fill(c, '0');
-                processedValue = String.valueOf(c) + _value;
-                break;
-            default:
-                Arrays.fill(c, ' ');
-                processedValue = _value + String.valueOf(c);
+    /**
+     * Copies the bytes of the record to an array.
+     * @param target Array where the record is copied
+     * @param targetPos Position of the array where the record starts
+     */
+    final void copyTo(final byte[] target, final int targetPos) {
+        int len = this.layout.recordLength;
+        if (this.byteBuffer == null) {
+            System.arraycopy(this.buffer, this.offset, target, targetPos, len);
+        } else {
+            for (int i = 0; i < len; i++) {
+                target[targetPos + i] = this.byteBuffer.get(this.offset + i);
             }
         }
+    }
 
-        System.arraycopy(processedValue.getBytes(), 0, this.buffer, dd.bufferInit, dd.bufferLen);
+    /**
+     * Reads a field as a String
+     * @param field Resolved field
+     * @return value of the field
+     */
+    private String readString(final FieldHandle field) {
+        RecordMetrics metrics = RecordMetrics.active;
+        if (metrics != null) {
+            metrics.read(field);
+        }
+        return this.readString(field.descriptor, field.bufferInit, field.bufferLen);
     }
 
     /**
-     * Retrieves a full name given a field name and an undetermined number of indexes.
-     * @param name Name of the field
-     * @param index Optional index or indexes for that field
-     * @return Returns a composed name with indexes already in place if needed
-     */
-    private String composeNameWithIndexes(String name, int...index) {
-        String fullName = name;
-        if (index != null && index.length > 0) {
-            StringBuilder sb = new StringBuilder(fullName);
-            for (int i : index) {
-                sb.append('(').append(i).append(')');
+     * Reads an occurrence of a field as a String
+     * @param dd Field
+     * @param bufferInit Position of the occurrence inside the record
+     * @param bufferLen Length of the occurrence
+     * @return value of the field
+     */
+    final String readString(final DataDescriptor dd, final int bufferInit, final int bufferLen) {
+        int pos = this.offset + bufferInit;
+        if (this.byteBuffer == null) {
+            return FieldCodec.decodeString(this.buffer, pos, bufferLen, dd.codePage);
+        }
+        return FieldCodec.decodeString(this.byteBuffer, pos, bufferLen, dd.codePage);
+    }
+
+    /**
+     * Reads a field as an int
+     * @param field Resolved field
+     * @return value of the field
+     */
+    private int readInt(final FieldHandle field) {
+        long ret = this.readLong(field);
+        if (ret < Integer.MIN_VALUE || ret > Integer.MAX_VALUE) {
+            this.failed(field.getName(), IBufferConstant.ERROR_TYPE_INVALID);
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        return (int) ret;
+    }
+
+    /**
+     * Reads a field as a long
+     * @param field Resolved field
+     * @return value of the field
+     */
+    private long readLong(final FieldHandle field) {
+        RecordMetrics metrics = RecordMetrics.active;
+        if (metrics == null) {
+            return this.readLong(field.descriptor, field.bufferInit, field.bufferLen);
+        }
+        metrics.read(field);
+        try {
+            return this.readLong(field.descriptor, field.bufferInit, field.bufferLen);
+        } catch (IllegalArgumentException e) {
+            metrics.failed(this.layout, field.getName(), e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Reads an occurrence of a field as a long
+     * @param dd Field
+     * @param bufferInit Position of the occurrence inside the record
+     * @param bufferLen Length of the occurrence
+     * @return value of the field
+     */
+    final long readLong(final DataDescriptor dd, final int bufferInit, final int bufferLen) {
+        int pos = this.offset + bufferInit;
+        if (dd.type == DataDescriptor.Type.BINARY) {
+            return FieldCodec.decodeBinary(this.binaryView(), pos, bufferLen, dd.signed);
+        }
+        if (this.byteBuffer == null) {
+            return FieldCodec.decodeNumber(this.buffer, pos, bufferLen, dd);
+        }
+        return FieldCodec.decodeNumber(this.byteBuffer, pos, bufferLen, dd);
+    }
+
+    /**
+     * Writes a String to a field
+     * @param field Resolved field
+     * @param value Value to be written
+     */
+    private void writeString(final FieldHandle field, final String value) {
+        RecordMetrics metrics = RecordMetrics.active;
+        if (metrics != null) {
+            metrics.write(field);
+        }
+        this.writeString(field.descriptor, field.bufferInit, field.bufferLen, value);
+    }
+
+    /**
+     * Writes a String to an occurrence of a field
+     * @param dd Field
+     * @param bufferInit Position of the occurrence inside the record
+     * @param bufferLen Length of the occurrence
+     * @param value Value to be written
+     */
+    final void writeString(final DataDescriptor dd, final int bufferInit, final int bufferLen, final String value) {
+        int pos = this.offset + bufferInit;
+        if (this.byteBuffer == null) {
+            FieldCodec.encodeString(this.buffer, pos, bufferLen, dd.codePage, value);
+        } else {
+            FieldCodec.encodeString(this.byteBuffer, pos, bufferLen, dd.codePage, value);
+        }
+    }
+
+    /**
+     * Writes a long to a field
+     * @param field Resolved field
+     * @param value Value to be written
+     */
+    private void writeLong(final FieldHandle field, final long value) {
+        RecordMetrics metrics = RecordMetrics.active;
+        if (metrics == null) {
+            this.writeLong(field.descriptor, field.bufferInit, field.bufferLen, value);
+            return;
+        }
+        metrics.write(field);
+        try {
+            this.writeLong(field.descriptor, field.bufferInit, field.bufferLen, value);
+        } catch (IllegalArgumentException e) {
+            metrics.failed(this.layout, field.getName(), e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a long to an occurrence of a field
+     * @param dd Field
+     * @param bufferInit Position of the occurrence inside the record
+     * @param bufferLen Length of the occurrence
+     * @param value Value to be written
+     */
+    final void writeLong(final DataDescriptor dd, final int bufferInit, final int bufferLen, final long value) {
+        int pos = this.offset + bufferInit;
+        if (dd.type == DataDescriptor.Type.BINARY) {
+            FieldCodec.encodeBinary(this.binaryView(), pos, bufferLen, FieldCodec.truncateBinary(dd, value));
+            return;
+        }
+        if (this.byteBuffer == null) {
+            FieldCodec.encodeNumber(this.buffer, pos, bufferLen, dd, value);
+        } else {
+            FieldCodec.encodeNumber(this.byteBuffer, pos, bufferLen, dd, value);
+        }
+    }
+
+    /**
+     * Reads a date field as days since 1970-01-01
+     * @param field Resolved field
+     * @return value of the field, or {@link DatePattern#EMPTY}
+     */
+    private int readEpochDay(final FieldHandle field) {
+        RecordMetrics metrics = RecordMetrics.active;
+        if (metrics == null) {
+            return this.readEpochDay(field.descriptor, field.bufferInit, field.bufferLen);
+        }
+        metrics.read(field);
+        try {
+            return this.readEpochDay(field.descriptor, field.bufferInit, field.bufferLen);
+        } catch (IllegalArgumentException e) {
+            metrics.failed(this.layout, field.getName(), e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Reads an occurrence of a date field as days since 1970-01-01
+     * @param dd Field
+     * @param bufferInit Position of the occurrence inside the record
+     * @param bufferLen Length of the occurrence
+     * @return value of the field, or {@link DatePattern#EMPTY}
+     */
+    final int readEpochDay(final DataDescriptor dd, final int bufferInit, final int bufferLen) {
+        DatePattern datePattern = dd.datePattern;
+        if (datePattern == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_NO_DATE_FORMAT);
+        }
+        int pos = this.offset + bufferInit;
+        if (this.byteBuffer == null) {
+            return datePattern.decode(this.buffer, pos, bufferLen, dd.codePage);
+        }
+        return datePattern.decode(this.byteBuffer, pos, bufferLen, dd.codePage);
+    }
+
+    /**
+     * Writes days since 1970-01-01 to a date field
+     * @param field Resolved field
+     * @param epochDay Value to be written, {@link DatePattern#EMPTY} to initialize the field
+     */
+    private void writeEpochDay(final FieldHandle field, final int epochDay) {
+        RecordMetrics metrics = RecordMetrics.active;
+        if (metrics == null) {
+            this.writeEpochDay(field.descriptor, field.bufferInit, field.bufferLen, epochDay);
+            return;
+        }
+        metrics.write(field);
+        try {
+            this.writeEpochDay(field.descriptor, field.bufferInit, field.bufferLen, epochDay);
+        } catch (IllegalArgumentException e) {
+            metrics.failed(this.layout, field.getName(), e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Writes days since 1970-01-01 to an occurrence of a date field
+     * @param dd Field
+     * @param bufferInit Position of the occurrence inside the record
+     * @param bufferLen Length of the occurrence
+     * @param epochDay Value to be written, {@link DatePattern#EMPTY} to initialize the field
+     */
+    final void writeEpochDay(final DataDescriptor dd, final int bufferInit, final int bufferLen, final int epochDay) {
+        DatePattern datePattern = dd.datePattern;
+        if (datePattern == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_NO_DATE_FORMAT);
+        }
+        int pos = this.offset + bufferInit;
+        if (epochDay == DatePattern.EMPTY) {
+            this.clearField(dd, pos);
+        } else if (this.byteBuffer == null) {
+            datePattern.encode(this.buffer, pos, bufferLen, dd.codePage, epochDay);
+        } else {
+            datePattern.encode(this.byteBuffer, pos, bufferLen, dd.codePage, epochDay);
+        }
+    }
+
+    /**
+     * Initializes an occurrence of a field and its children to their default value
+     * @param dd Field
+     * @param bufferInit Position of the occurrence inside the record
+     */
+    final void initialize(final DataDescriptor dd, final int bufferInit) {
+        int pos = this.offset + bufferInit;
+        if (dd.length > 0) {
+            this.clearField(dd, pos);
+        }
+        this.clearChildren(dd, pos);
+    }
+
+    /**
+     * Tells if this record owns its buffer, an array holding this record alone
+     * @return true if the buffer is an array with the length of a record
+     */
+    final boolean isStandalone() {
+        return this.byteBuffer == null && this.offset == 0 && this.buffer.length == this.layout.recordLength;
+    }
+
+    /**
+     * Checks this record with a filter, on the bytes of the record
+     * @param filter Filter of the layout of this record
+     * @return true if the record is accepted
+     */
+    final boolean matches(final RecordFilter filter) {
+        if (this.byteBuffer == null) {
+            return filter.accept(this.buffer, this.offset);
+        }
+        return filter.accept(this.byteBuffer, this.offset);
+    }
+
+    /**
+     * Returns a ByteBuffer over the record, so binary fields are read and written with a single multi-byte access
+     * instead of byte by byte. The view of an array is kept while the same array is used.
+     * @return the wrapped ByteBuffer or a view of the array
+     */
+    private ByteBuffer binaryView() {
+        if (this.byteBuffer != null) {
+            return this.byteBuffer;
+        }
+        ByteBuffer view = this.arrayView;
+        if (view == null || view.array() != this.buffer) {
+            view = ByteBuffer.wrap(this.buffer);
+            this.arrayView = view;
+        }
+        return view;
+    }
+
+    /**
+     * Fills a range of the buffer
+     * @param pos Starting position
+     * @param len Length of the range
+     * @param value Value to fill the range with
+     */
+    private void fill(final int pos, final int len, final byte value) {
+        if (this.byteBuffer == null) {
+            Arrays.fill(this.buffer, pos, pos + len, value);
+        } else {
+            for (int i = pos; i < pos + len; i++) {
+                this.byteBuffer.put(i, value);
             }
-            fullName = sb.toString();
         }
-        return fullName;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,366 @@
+package com.conzebit.bufferdescriptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Internal helper class used by AccessorFactory to write Java class files.<br />
+ * <br />
+ * Only what generated accessors need is supported: a constant pool, fields, and methods made of straight code without
+ * branches, which don't need stack map frames.
+ */
+final class ClassFileWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int JAVA_8 = 52;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(this.poolBytes);
+    private final Map<String, Integer> poolIndexes = new HashMap<String, Integer>();
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream memberBytes = new ByteArrayOutputStream();
+    private final DataOutputStream fields = new DataOutputStream(this.memberBytes);
+    private int fieldCount = 0;
+
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(this.methodBytes);
+    private int methodCount = 0;
+
+    /**
+     * Adds a field.
+     * @param access Access flags
+     * @param name Name of the field
+     * @param descriptor Type descriptor of the field
+     */
+    void addField(final int access, final String name, final String descriptor) {
+        try {
+            this.fields.writeShort(access);
+            this.fields.writeShort(this.utf8(name));
+            this.fields.writeShort(this.utf8(descriptor));
+            this.fields.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.fieldCount++;
+    }
+
+    /**
+     * Starts a method. Its code is added to the class by {@link Code#end()}.
+     * @param access Access flags
+     * @param name Name of the method
+     * @param descriptor Method descriptor
+     * @param maxStack Maximum depth of the operand stack
+     * @param maxLocals Number of local variable slots, including parameters
+     * @return the code of the method
+     */
+    Code addMethod(final int access, final String name, final String descriptor, final int maxStack,
+                   final int maxLocals) {
+        return new Code(access, name, descriptor, maxStack, maxLocals);
+    }
+
+    /**
+     * Returns the class file.
+     * @param access Access flags of the class
+     * @param name Internal name of the class, as in <code>java/lang/Object</code>
+     * @param superName Internal name of the super class
+     * @param interfaces Internal names of the implemented interfaces
+     * @return the class file
+     */
+    byte[] toByteArray(final int access, final String name, final String superName, final String... interfaces) {
+        int thisClass = this.classRef(name);
+        int superClass = this.classRef(superName);
+        int[] interfaceClasses = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceClasses[i] = this.classRef(interfaces[i]);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                64 + this.poolBytes.size() + this.memberBytes.size() + this.methodBytes.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(JAVA_8);
+            out.writeShort(this.poolCount);
+            this.poolBytes.writeTo(out);
+            out.writeShort(access);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaceClasses.length);
+            for (int interfaceClass : interfaceClasses) {
+                out.writeShort(interfaceClass);
+            }
+            out.writeShort(this.fieldCount);
+            this.memberBytes.writeTo(out);
+            out.writeShort(this.methodCount);
+            this.methodBytes.writeTo(out);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the constant pool index of a UTF-8 constant.
+     * @param value Value of the constant
+     * @return its index
+     */
+    int utf8(final String value) {
+        Integer index = this.poolIndexes.get("U" + value);
+        if (index == null) {
+            index = this.add("U" + value, 1);
+            try {
+                this.pool.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the constant pool index of a class.
+     * @param name Internal name of the class
+     * @return its index
+     */
+    int classRef(final String name) {
+        return this.reference("C" + name, 7, this.utf8(name), -1);
+    }
+
+    /**
+     * Returns the constant pool index of a String constant.
+     * @param value Value of the constant
+     * @return its index
+     */
+    int string(final String value) {
+        return this.reference("S" + value, 8, this.utf8(value), -1);
+    }
+
+    /**
+     * Returns the constant pool index of an int constant.
+     * @param value Value of the constant
+     * @return its index
+     */
+    int integer(final int value) {
+        Integer index = this.poolIndexes.get("I" + value);
+        if (index == null) {
+            index = this.add("I" + value, 3);
+            try {
+                this.pool.writeInt(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the constant pool index of a field.
+     * @param owner Internal name of the class of the field
+     * @param name Name of the field
+     * @param descriptor Type descriptor of the field
+     * @return its index
+     */
+    int fieldRef(final String owner, final String name, final String descriptor) {
+        return this.memberRef(9, owner, name, descriptor);
+    }
+
+    /**
+     * Returns the constant pool index of a method of a class.
+     * @param owner Internal name of the class of the method
+     * @param name Name of the method
+     * @param descriptor Method descriptor
+     * @return its index
+     */
+    int methodRef(final String owner, final String name, final String descriptor) {
+        return this.memberRef(10, owner, name, descriptor);
+    }
+
+    /**
+     * Returns the constant pool index of a field or method.
+     * @param tag Tag of the constant
+     * @param owner Internal name of the class of the member
+     * @param name Name of the member
+     * @param descriptor Descriptor of the member
+     * @return its index
+     */
+    private int memberRef(final int tag, final String owner, final String name, final String descriptor) {
+        int nameAndType = this.reference("N" + name + ' ' + descriptor, 12, this.utf8(name), this.utf8(descriptor));
+        return this.reference("M" + tag + owner + '.' + name + descriptor, tag, this.classRef(owner), nameAndType);
+    }
+
+    /**
+     * Returns the constant pool index of a constant made of one or two references to other constants.
+     * @param key Key of the constant
+     * @param tag Tag of the constant
+     * @param first First reference
+     * @param second Second reference, -1 if there is only one
+     * @return its index
+     */
+    private int reference(final String key, final int tag, final int first, final int second) {
+        Integer index = this.poolIndexes.get(key);
+        if (index == null) {
+            index = this.add(key, tag);
+            try {
+                this.pool.writeShort(first);
+                if (second >= 0) {
+                    this.pool.writeShort(second);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Adds a constant to the pool, writing its tag.
+     * @param key Key of the constant
+     * @param tag Tag of the constant
+     * @return its index
+     */
+    private int add(final String key, final int tag) {
+        int index = this.poolCount++;
+        this.poolIndexes.put(key, index);
+        try {
+            this.pool.writeByte(tag);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return index;
+    }
+
+    /**
+     * Code of a method being written.
+     */
+    final class Code {
+
+        private final int access;
+        private final String name;
+        private final String descriptor;
+        private final int maxStack;
+        private final int maxLocals;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+        private Code(final int access, final String name, final String descriptor, final int maxStack,
+                     final int maxLocals) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        /**
+         * Adds an instruction without operands.
+         * @param opcode Opcode of the instruction
+         * @return this code
+         */
+        Code op(final int opcode) {
+            this.code.write(opcode);
+            return this;
+        }
+
+        /**
+         * Adds an instruction with a local variable operand, as <code>aload</code> or <code>iload</code>.
+         * @param opcode Opcode of the instruction
+         * @param slot Local variable
+         * @return this code
+         */
+        Code local(final int opcode, final int slot) {
+            if (slot > 0xFF) {
+                this.code.write(0xC4);
+                this.code.write(opcode);
+                this.u2(slot);
+            } else {
+                this.code.write(opcode);
+                this.code.write(slot);
+            }
+            return this;
+        }
+
+        /**
+         * Adds an instruction that takes a constant pool index, as <code>getfield</code> or
+         * <code>invokestatic</code>.
+         * @param opcode Opcode of the instruction
+         * @param index Constant pool index
+         * @return this code
+         */
+        Code ref(final int opcode, final int index) {
+            this.code.write(opcode);
+            this.u2(index);
+            return this;
+        }
+
+        /**
+         * Pushes an int constant.
+         * @param value Value of the constant
+         * @return this code
+         */
+        Code pushInt(final int value) {
+            if (value >= -1 && value <= 5) {
+                this.code.write(0x03 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                this.code.write(0x10);
+                this.code.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                this.code.write(0x11);
+                this.u2(value);
+            } else {
+                this.ref(0x13, ClassFileWriter.this.integer(value));
+            }
+            return this;
+        }
+
+        /**
+         * Pushes a String constant.
+         * @param value Value of the constant
+         * @return this code
+         */
+        Code pushString(final String value) {
+            return this.ref(0x13, ClassFileWriter.this.string(value));
+        }
+
+        /**
+         * Ends the method, adding it to the class.
+         */
+        void end() {
+            DataOutputStream out = ClassFileWriter.this.methods;
+            try {
+                out.writeShort(this.access);
+                out.writeShort(ClassFileWriter.this.utf8(this.name));
+                out.writeShort(ClassFileWriter.this.utf8(this.descriptor));
+                out.writeShort(1);
+                out.writeShort(ClassFileWriter.this.utf8("Code"));
+                out.writeInt(12 + this.code.size());
+                out.writeShort(this.maxStack);
+                out.writeShort(this.maxLocals);
+                out.writeInt(this.code.size());
+                this.code.writeTo(out);
+                out.writeShort(0);
+                out.writeShort(0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            ClassFileWriter.this.methodCount++;
+        }
+
+        /**
+         * Writes an unsigned short operand.
+         * @param value Value of the operand
+         */
+        private void u2(final int value) {
+            this.code.write((value >>> 8) & 0xFF);
+            this.code.write(value & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.conzebit.bufferdescriptor;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a field of a Java class to a field of a record, to be filled and extracted by {@link RecordMapper}.<br />
+ * <br />
+ * <code>
+ * public class Client {<br />
+ * &nbsp;@CobolField("NAME") private String name;<br />
+ * &nbsp;@CobolField("MAX-PURCHASE-ALLOWED") private long maxPurchaseAllowed;<br />
+ * &nbsp;@CobolField("CONTACT") private List&lt;Contact&gt; contacts;<br />
+ * }
+ * </code>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface CobolField {
+
+    /**
+     * Name of the field of the record.
+     * @return the name, as declared in the layout
+     */
+    String value();
+}
@@ -0,0 +1,296 @@
+package com.conzebit.bufferdescriptor;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Single byte encoding of the fields of a record.<br />
+ * <br />
+ * Text is transcoded through two precomputed lookup tables, one from bytes to chars and one from chars to bytes, so
+ * reading or writing a field costs an array access per character and no Charset is involved. Digits, signs and
+ * padding spaces are written directly with their bytes in the code page.<br />
+ * <br />
+ * Mainframe records are usually encoded with one of the EBCDIC code pages:<br />
+ * <br />
+ * <b><code>
+ * RecordLayout layout = new BufferBuilder()<br />
+ * &nbsp;.setCodePage(CodePage.CP037)<br />
+ * &nbsp;.addDataDescription(1, "CLIENT")<br />
+ * &nbsp;.addDataDescription(5, "NAME", "X(50)")<br />
+ * &nbsp;.endLayoutDescription();
+ * </code></b><br />
+ * <br />
+ * {@link #DEFAULT} keeps the behaviour of previous versions: text is encoded with the default charset of the JVM
+ * and numbers are written as ASCII digits.
+ */
+public final class CodePage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int SIZE = 256;
+    private static final char SUBSTITUTE = '?';
+    private static final String POSITIVE_OVERPUNCH = "{ABCDEFGHI";
+    private static final String NEGATIVE_OVERPUNCH = "}JKLMNOPQR";
+
+    /**
+     * IBM CCSID 037, EBCDIC for USA, Canada and other english speaking countries. 0x15 is decoded as NEL and 0x25 as
+     * line feed, so every byte has its own char.
+     */
+    private static final String EBCDIC_037 =
+            "\u0000\u0001\u0002\u0003\u009c\u0009\u0086\u007f\u0097\u008d\u008e\u000b\u000c\r\u000e\u000f" +
+            "\u0010\u0011\u0012\u0013\u009d\u0085\u0008\u0087\u0018\u0019\u0092\u008f\u001c\u001d\u001e\u001f" +
+            "\u0080\u0081\u0082\u0083\u0084\n\u0017\u001b\u0088\u0089\u008a\u008b\u008c\u0005\u0006\u0007" +
+            "\u0090\u0091\u0016\u0093\u0094\u0095\u0096\u0004\u0098\u0099\u009a\u009b\u0014\u0015\u009e\u001a" +
+            "\u0020\u00a0\u00e2\u00e4\u00e0\u00e1\u00e3\u00e5\u00e7\u00f1\u00a2\u002e\u003c\u0028\u002b\u007c" +
+            "\u0026\u00e9\u00ea\u00eb\u00e8\u00ed\u00ee\u00ef\u00ec\u00df\u0021\u0024\u002a\u0029\u003b\u00ac" +
+            "\u002d\u002f\u00c2\u00c4\u00c0\u00c1\u00c3\u00c5\u00c7\u00d1\u00a6\u002c\u0025\u005f\u003e\u003f" +
+            "\u00f8\u00c9\u00ca\u00cb\u00c8\u00cd\u00ce\u00cf\u00cc\u0060\u003a\u0023\u0040\u0027\u003d\"" +
+            "\u00d8\u0061\u0062\u0063\u0064\u0065\u0066\u0067\u0068\u0069\u00ab\u00bb\u00f0\u00fd\u00fe\u00b1" +
+            "\u00b0\u006a\u006b\u006c\u006d\u006e\u006f\u0070\u0071\u0072\u00aa\u00ba\u00e6\u00b8\u00c6\u00a4" +
+            "\u00b5\u007e\u0073\u0074\u0075\u0076\u0077\u0078\u0079\u007a\u00a1\u00bf\u00d0\u00dd\u00de\u00ae" +
+            "\u005e\u00a3\u00a5\u00b7\u00a9\u00a7\u00b6\u00bc\u00bd\u00be\u005b\u005d\u00af\u00a8\u00b4\u00d7" +
+            "\u007b\u0041\u0042\u0043\u0044\u0045\u0046\u0047\u0048\u0049\u00ad\u00f4\u00f6\u00f2\u00f3\u00f5" +
+            "\u007d\u004a\u004b\u004c\u004d\u004e\u004f\u0050\u0051\u0052\u00b9\u00fb\u00fc\u00f9\u00fa\u00ff" +
+            "\\\u00f7\u0053\u0054\u0055\u0056\u0057\u0058\u0059\u005a\u00b2\u00d4\u00d6\u00d2\u00d3\u00d5" +
+            "\u0030\u0031\u0032\u0033\u0034\u0035\u0036\u0037\u0038\u0039\u00b3\u00db\u00dc\u00d9\u00da\u009f";
+
+    /**
+     * Default charset of the JVM for text, ASCII for digits and signs. This is the code page of every field unless
+     * another one is set.
+     */
+    public static final CodePage DEFAULT = new CodePage("DEFAULT", latin1(), true);
+
+    /**
+     * ISO-8859-1, each byte is the char with the same value.
+     */
+    public static final CodePage ISO_8859_1 = new CodePage("ISO-8859-1", latin1(), false);
+
+    /**
+     * EBCDIC 037: USA, Canada, Netherlands, Portugal, Brazil, Australia, New Zealand.
+     */
+    public static final CodePage CP037 = new CodePage("IBM037", EBCDIC_037.toCharArray(), false);
+
+    /**
+     * EBCDIC 1140: 037 with the euro sign at 0x9F.
+     */
+    public static final CodePage CP1140 = new CodePage("IBM01140",
+            patch(EBCDIC_037, new int[] {0x9F, '\u20ac'}), false);
+
+    /**
+     * EBCDIC 284: Spain and Latin America.
+     */
+    public static final CodePage CP284 = new CodePage("IBM284",
+            patch(EBCDIC_037, new int[] {0x49, '\u00a6', 0x4A, '[', 0x5A, ']', 0x69, '#', 0x6A, '\u00f1',
+                    0x7B, '\u00d1', 0xA1, '\u00a8', 0xB0, '\u00a2', 0xBA, '^', 0xBB, '!', 0xBD, '~'}), false);
+
+    /**
+     * EBCDIC 500: International Latin-1.
+     */
+    public static final CodePage CP500 = new CodePage("IBM500",
+            patch(EBCDIC_037, new int[] {0x4A, '[', 0x4F, '!', 0x5A, ']', 0x5F, '^', 0xB0, '\u00a2',
+                    0xBA, '\u00ac', 0xBB, '|'}), false);
+
+    private final String name;
+    private final boolean platformCharset;
+    private final char[] toChar;
+    private final byte[] toByte;
+    private final char[] extraChars;
+    private final byte[] extraBytes;
+    final byte[] digitBytes;
+    final byte[] digitValues;
+    final byte[] overpunchBytes;
+    final byte[] overpunchValues;
+    final byte space;
+    final byte minus;
+    final byte plus;
+
+    private CodePage(final String name, final char[] table, final boolean platformCharset) {
+        this.name = name;
+        this.platformCharset = platformCharset;
+        this.toChar = table;
+
+        // Chars up to 0xFF are looked up directly, the few ones above are kept sorted aside
+        this.toByte = new byte[SIZE];
+        int extra = 0;
+        for (int b = SIZE - 1; b >= 0; b--) {
+            if (table[b] >= SIZE) {
+                extra++;
+            }
+        }
+        this.extraChars = new char[extra];
+        this.extraBytes = new byte[extra];
+        byte substitute = 0;
+        boolean[] mapped = new boolean[SIZE];
+        for (int b = SIZE - 1; b >= 0; b--) {
+            char c = table[b];
+            if (c < SIZE) {
+                this.toByte[c] = (byte) b;
+                mapped[c] = true;
+            } else {
+                this.extraChars[--extra] = c;
+            }
+            if (c == SUBSTITUTE) {
+                substitute = (byte) b;
+            }
+        }
+        for (int c = 0; c < SIZE; c++) {
+            if (!mapped[c]) {
+                this.toByte[c] = substitute;
+            }
+        }
+        Arrays.sort(this.extraChars);
+        for (int i = 0; i < this.extraChars.length; i++) {
+            for (int b = 0; b < SIZE; b++) {
+                if (table[b] == this.extraChars[i]) {
+                    this.extraBytes[i] = (byte) b;
+                }
+            }
+        }
+
+        this.digitBytes = new byte[10];
+        this.digitValues = new byte[SIZE];
+        Arrays.fill(this.digitValues, (byte) -1);
+        for (int d = 0; d < 10; d++) {
+            this.digitBytes[d] = this.toByte['0' + d];
+            this.digitValues[this.digitBytes[d] & 0xFF] = (byte) d;
+        }
+
+        // A signed digit is the digit with a C zone when positive or a D zone when negative, plain digits are positive
+        this.overpunchBytes = new byte[20];
+        this.overpunchValues = this.digitValues.clone();
+        for (int d = 0; d < 10; d++) {
+            this.overpunchBytes[d] = this.toByte[POSITIVE_OVERPUNCH.charAt(d)];
+            this.overpunchBytes[d + 10] = this.toByte[NEGATIVE_OVERPUNCH.charAt(d)];
+            this.overpunchValues[this.overpunchBytes[d] & 0xFF] = (byte) d;
+            this.overpunchValues[this.overpunchBytes[d + 10] & 0xFF] = (byte) (d + 10);
+        }
+        this.space = this.toByte[' '];
+        this.minus = this.toByte['-'];
+        this.plus = this.toByte['+'];
+    }
+
+    /**
+     * Returns a predefined code page given its name or number, as in <code>"IBM037"</code>, <code>"Cp1140"</code>,
+     * <code>"284"</code> or <code>"ISO-8859-1"</code>.
+     * @param name Name of the code page
+     * @return the code page
+     */
+    public static CodePage forName(final String name) {
+        if (name == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_CODE_PAGE);
+        }
+        String upper = name.trim().toUpperCase(Locale.ENGLISH);
+        if (DEFAULT.name.equals(upper)) {
+            return DEFAULT;
+        }
+        if (ISO_8859_1.name.equals(upper) || "ISO8859_1".equals(upper) || "LATIN1".equals(upper)) {
+            return ISO_8859_1;
+        }
+
+        String number = upper;
+        if (number.startsWith("IBM") || number.startsWith("CCSID")) {
+            number = number.substring(number.charAt(0) == 'I' ? 3 : 5);
+        } else if (number.startsWith("CP")) {
+            number = number.substring(2);
+        }
+        if (number.startsWith("-") || number.startsWith("_")) {
+            number = number.substring(1);
+        }
+        int ccsid;
+        try {
+            ccsid = Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_CODE_PAGE);
+        }
+        switch (ccsid) {
+        case 37:
+            return CP037;
+        case 284:
+            return CP284;
+        case 500:
+            return CP500;
+        case 1140:
+            return CP1140;
+        default:
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_CODE_PAGE);
+        }
+    }
+
+    /**
+     * Returns the name of the code page.
+     * @return Name of the code page
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the char encoded by a byte.
+     * @param b Byte in this code page
+     * @return the char
+     */
+    public char toChar(final byte b) {
+        return this.toChar[b & 0xFF];
+    }
+
+    /**
+     * Returns the byte encoding a char. Chars that can't be encoded get the byte of <code>'?'</code>.
+     * @param c Char to be encoded
+     * @return the byte in this code page
+     */
+    public byte toByte(final char c) {
+        if (c < SIZE) {
+            return this.toByte[c];
+        }
+        int i = Arrays.binarySearch(this.extraChars, c);
+        return i >= 0 ? this.extraBytes[i] : this.toByte[SUBSTITUTE];
+    }
+
+    /**
+     * Returns true if text is encoded with the default charset of the JVM instead of the tables.
+     * @return true for {@link #DEFAULT}
+     */
+    boolean usesPlatformCharset() {
+        return this.platformCharset;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+
+    /**
+     * Keeps a single instance of every code page after deserialization.
+     * @return the predefined code page
+     */
+    private Object readResolve() {
+        return forName(this.name);
+    }
+
+    /**
+     * Builds the identity table.
+     * @return a table mapping each byte to the char with the same value
+     */
+    private static char[] latin1() {
+        char[] table = new char[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            table[i] = (char) i;
+        }
+        return table;
+    }
+
+    /**
+     * Builds a table by changing some positions of another one.
+     * @param base Table to start from
+     * @param changes Pairs of byte and char to be changed
+     * @return the new table
+     */
+    private static char[] patch(final String base, final int[] changes) {
+        char[] table = base.toCharArray();
+        for (int i = 0; i < changes.length; i += 2) {
+            table[changes[i]] = (char) changes[i + 1];
+        }
+        return table;
+    }
+}
@@ -0,0 +1,100 @@
+package com.conzebit.bufferdescriptor;
+
+/**
+ * Columns of fields extracted from a batch of records by {@link ColumnExtractor}.<br />
+ * <br />
+ * Each column is a primitive array with one value per record, and columns are numbered in the order they were added to
+ * the extractor. Long columns are read with {@link #getLongs(int)}; int, date, year and text columns with
+ * {@link #getInts(int)}, text columns holding the codes of their {@link StringDictionary}. Only the first
+ * {@link #size()} values of every array are valid.<br />
+ * <br />
+ * A batch can be reused with {@link #clear()}, keeping its arrays and dictionaries. It's not thread safe.
+ */
+public final class ColumnBatch {
+
+    final ColumnExtractor extractor;
+    final long[][] longs;
+    final int[][] ints;
+    final StringDictionary[] dictionaries;
+    final int capacity;
+    int size = 0;
+
+    /**
+     * Creates an empty batch.
+     * @param extractor Extractor of the columns
+     * @param longs Arrays of the long columns, null for other columns
+     * @param ints Arrays of the int columns, null for other columns
+     * @param dictionaries Dictionaries of the text columns, null for other columns
+     * @param capacity Maximum number of records
+     */
+    ColumnBatch(final ColumnExtractor extractor, final long[][] longs, final int[][] ints,
+                final StringDictionary[] dictionaries, final int capacity) {
+        this.extractor = extractor;
+        this.longs = longs;
+        this.ints = ints;
+        this.dictionaries = dictionaries;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the number of records extracted.
+     * @return Number of records
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the maximum number of records of this batch.
+     * @return Length of the arrays of the columns
+     */
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Empties the batch so it can be filled again. Dictionaries are kept, so text columns keep their codes.
+     */
+    public void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * Returns a long column.
+     * @param column Number of the column, from 0
+     * @return the values
+     */
+    public long[] getLongs(final int column) {
+        long[] ret = this.longs[column];
+        if (ret == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns an int, date, year or text column.
+     * @param column Number of the column, from 0
+     * @return the values, or the codes of the values for a text column
+     */
+    public int[] getInts(final int column) {
+        int[] ret = this.ints[column];
+        if (ret == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the dictionary of a text column.
+     * @param column Number of the column, from 0
+     * @return the dictionary
+     */
+    public StringDictionary getDictionary(final int column) {
+        StringDictionary ret = this.dictionaries[column];
+        if (ret == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        return ret;
+    }
+}
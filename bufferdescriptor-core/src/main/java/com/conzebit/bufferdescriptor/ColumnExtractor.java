@@ -0,0 +1,376 @@
+package com.conzebit.bufferdescriptor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts fields from batches of records into primitive arrays, one column per field.<br />
+ * <br />
+ * Instead of moving a BufferDescriptor from record to record and reading every field, each column is filled by its
+ * own loop over the records, with the position, the length and the format of the field resolved once per batch.
+ * Aggregations can then run over plain arrays:<br />
+ * <br />
+ * <code>
+ * ColumnExtractor extractor = new ColumnExtractor(layout)<br />
+ * &nbsp;.addLongColumn("MAX_PURCHASE_ALLOWED")<br />
+ * &nbsp;.addYearColumn("BIRTHDAY");<br />
+ * ColumnBatch batch = extractor.extract(reader);<br />
+ * long[] max = batch.getLongs(0);<br />
+ * int[] year = batch.getInts(1);<br />
+ * for (int i = 0; i &lt; batch.size(); i++) {<br />
+ * &nbsp;totals.merge(year[i], max[i], Long::sum);<br />
+ * }
+ * </code><br />
+ * <br />
+ * Records can be held by a byte[], a ByteBuffer or a mapped file. Text columns are dictionary encoded: the column holds
+ * an int code per record and the distinct values are kept in a {@link StringDictionary}. An extractor can be shared by
+ * several threads once its columns are added, each one filling its own batches.
+ */
+public final class ColumnExtractor {
+
+    private static final int LONG = 0;
+    private static final int INT = 1;
+    private static final int EPOCH_DAY = 2;
+    private static final int YEAR = 3;
+    private static final int STRING = 4;
+
+    private final RecordLayout layout;
+    private final List<Column> columns = new ArrayList<Column>();
+
+    /**
+     * Creates an extractor without columns.
+     * @param layout Layout of the records
+     */
+    public ColumnExtractor(final RecordLayout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Adds a column with the values of a numeric field, as returned by <code>getLong</code>.
+     * @param name Name of the field
+     * @param index optional parameters with indexes of the field name
+     * @return this extractor
+     */
+    public ColumnExtractor addLongColumn(final String name, final int... index) {
+        return this.addColumn(this.numeric(name, index), LONG);
+    }
+
+    /**
+     * Adds a column with the values of a numeric field, as returned by <code>getInt</code>.
+     * @param name Name of the field
+     * @param index optional parameters with indexes of the field name
+     * @return this extractor
+     */
+    public ColumnExtractor addIntColumn(final String name, final int... index) {
+        return this.addColumn(this.numeric(name, index), INT);
+    }
+
+    /**
+     * Adds a column with the values of a date field as days since 1970-01-01, as returned by
+     * <code>getEpochDay</code>. Empty dates are {@link DatePattern#EMPTY}.
+     * @param name Name of the field
+     * @param index optional parameters with indexes of the field name
+     * @return this extractor
+     */
+    public ColumnExtractor addEpochDayColumn(final String name, final int... index) {
+        return this.addColumn(this.date(name, index), EPOCH_DAY);
+    }
+
+    /**
+     * Adds a column with the years of a date field. Empty dates are {@link DatePattern#EMPTY}.
+     * @param name Name of the field
+     * @param index optional parameters with indexes of the field name
+     * @return this extractor
+     */
+    public ColumnExtractor addYearColumn(final String name, final int... index) {
+        return this.addColumn(this.date(name, index), YEAR);
+    }
+
+    /**
+     * Adds a dictionary encoded column with the values of a field, as returned by <code>getString</code>.
+     * @param name Name of the field
+     * @param index optional parameters with indexes of the field name
+     * @return this extractor
+     */
+    public ColumnExtractor addStringColumn(final String name, final int... index) {
+        return this.addColumn(this.layout.field(name, index), STRING);
+    }
+
+    /**
+     * Creates an empty batch for the columns added so far.
+     * @param capacity Maximum number of records of the batch
+     * @return the batch
+     */
+    public ColumnBatch newBatch(final int capacity) {
+        int count = this.columns.size();
+        long[][] longs = new long[count][];
+        int[][] ints = new int[count][];
+        StringDictionary[] dictionaries = new StringDictionary[count];
+        for (int c = 0; c < count; c++) {
+            Column column = this.columns.get(c);
+            if (column.kind == LONG) {
+                longs[c] = new long[capacity];
+            } else {
+                ints[c] = new int[capacity];
+            }
+            if (column.kind == STRING) {
+                dictionaries[c] = new StringDictionary(column.bufferLen, column.dd.codePage);
+            }
+        }
+        return new ColumnBatch(this, longs, ints, dictionaries, capacity);
+    }
+
+    /**
+     * Extracts the columns of consecutive records held by a byte[], adding them to a batch.
+     * @param records Buffer holding the records
+     * @param offset Position of the first record
+     * @param count Number of records
+     * @param batch Batch created by this extractor
+     * @return the number of records added, less than <code>count</code> if the batch is full
+     */
+    public int extract(final byte[] records, final int offset, final int count, final ColumnBatch batch) {
+        int added = this.checkBatch(batch, offset, count, records.length);
+        int recordLength = this.layout.recordLength;
+        for (int c = 0; c < this.columns.size(); c++) {
+            Column column = this.columns.get(c);
+            DataDescriptor dd = column.dd;
+            int len = column.bufferLen;
+            int pos = offset + column.bufferInit;
+            int end = batch.size + added;
+            switch (column.kind) {
+            case LONG:
+                long[] longs = batch.longs[c];
+                for (int i = batch.size; i < end; i++, pos += recordLength) {
+                    longs[i] = FieldCodec.decodeNumber(records, pos, len, dd);
+                }
+                break;
+            case INT:
+                int[] ints = batch.ints[c];
+                for (int i = batch.size; i < end; i++, pos += recordLength) {
+                    ints[i] = toInt(FieldCodec.decodeNumber(records, pos, len, dd));
+                }
+                break;
+            case STRING:
+                int[] codes = batch.ints[c];
+                StringDictionary dictionary = batch.dictionaries[c];
+                for (int i = batch.size; i < end; i++, pos += recordLength) {
+                    codes[i] = dictionary.encode(records, pos);
+                }
+                break;
+            default:
+                int[] days = batch.ints[c];
+                for (int i = batch.size; i < end; i++, pos += recordLength) {
+                    days[i] = dd.datePattern.decode(records, pos, len, dd.codePage);
+                }
+                if (column.kind == YEAR) {
+                    toYears(days, batch.size, end);
+                }
+                break;
+            }
+        }
+        batch.size += added;
+        return added;
+    }
+
+    /**
+     * Extracts the columns of consecutive records held by a ByteBuffer, adding them to a batch.
+     * @param region Buffer holding the records
+     * @param index Position of the first record
+     * @param count Number of records
+     * @param batch Batch created by this extractor
+     * @return the number of records added, less than <code>count</code> if the batch is full
+     */
+    public int extract(final ByteBuffer region, final int index, final int count, final ColumnBatch batch) {
+        int added = this.checkBatch(batch, index, count, region.limit());
+        int recordLength = this.layout.recordLength;
+        for (int c = 0; c < this.columns.size(); c++) {
+            Column column = this.columns.get(c);
+            DataDescriptor dd = column.dd;
+            int len = column.bufferLen;
+            int pos = index + column.bufferInit;
+            int end = batch.size + added;
+            switch (column.kind) {
+            case LONG:
+                long[] longs = batch.longs[c];
+                for (int i = batch.size; i < end; i++, pos += recordLength) {
+                    longs[i] = FieldCodec.decodeNumber(region, pos, len, dd);
+                }
+                break;
+            case INT:
+                int[] ints = batch.ints[c];
+                for (int i = batch.size; i < end; i++, pos += recordLength) {
+                    ints[i] = toInt(FieldCodec.decodeNumber(region, pos, len, dd));
+                }
+                break;
+            case STRING:
+                int[] codes = batch.ints[c];
+                StringDictionary dictionary = batch.dictionaries[c];
+                for (int i = batch.size; i < end; i++, pos += recordLength) {
+                    codes[i] = dictionary.encode(region, pos);
+                }
+                break;
+            default:
+                int[] days = batch.ints[c];
+                for (int i = batch.size; i < end; i++, pos += recordLength) {
+                    days[i] = dd.datePattern.decode(region, pos, len, dd.codePage);
+                }
+                if (column.kind == YEAR) {
+                    toYears(days, batch.size, end);
+                }
+                break;
+            }
+        }
+        batch.size += added;
+        return added;
+    }
+
+    /**
+     * Extracts the columns of consecutive records of a mapped file, adding them to a batch. It doesn't change the
+     * current record of the reader.
+     * @param reader Mapped file
+     * @param first Number of the first record, from 0
+     * @param count Number of records
+     * @param batch Batch created by this extractor
+     * @return the number of records added, less than <code>count</code> if the batch is full or the file ends
+     */
+    public int extract(final MappedRecordReader reader, final long first, final int count, final ColumnBatch batch) {
+        if (reader.getLayout() != this.layout) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_FOREIGN_RECORD);
+        }
+        if (first < 0 || count < 0) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+        int recordsPerRegion = reader.getRecordsPerRegion();
+        long next = first;
+        long end = Math.min(first + count, reader.getRecordCount());
+        int added = 0;
+        while (next < end && batch.size < batch.capacity) {
+            int region = (int) (next / recordsPerRegion);
+            int regionRecord = (int) (next % recordsPerRegion);
+            int chunk = (int) Math.min(end - next, recordsPerRegion - regionRecord);
+            int index = regionRecord * this.layout.recordLength;
+            int done = this.extract(reader.getRegions()[region], index, chunk, batch);
+            added += done;
+            next += done;
+        }
+        return added;
+    }
+
+    /**
+     * Extracts the columns of all the records of a mapped file into a new batch.
+     * @param reader Mapped file, with no more than <code>Integer.MAX_VALUE</code> records
+     * @return the batch
+     */
+    public ColumnBatch extract(final MappedRecordReader reader) {
+        long records = reader.getRecordCount();
+        if (records > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+        ColumnBatch batch = this.newBatch((int) records);
+        this.extract(reader, 0, (int) records, batch);
+        return batch;
+    }
+
+    /**
+     * Checks a batch and the records to be added to it.
+     * @param batch Batch
+     * @param offset Position of the first record
+     * @param count Number of records
+     * @param limit Length of the buffer holding the records
+     * @return the number of records that fit in the batch
+     */
+    private int checkBatch(final ColumnBatch batch, final int offset, final int count, final int limit) {
+        if (batch.extractor != this || batch.longs.length != this.columns.size()) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_FOREIGN_BATCH);
+        }
+        if (offset < 0 || count < 0 || (long) offset + (long) count * this.layout.recordLength > limit) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+        return Math.min(count, batch.capacity - batch.size);
+    }
+
+    /**
+     * Adds a column.
+     * @param field Field of the column
+     * @param kind Kind of column
+     * @return this extractor
+     */
+    private ColumnExtractor addColumn(final FieldHandle field, final int kind) {
+        this.columns.add(new Column(field.descriptor, field.bufferInit, field.bufferLen, kind));
+        return this;
+    }
+
+    /**
+     * Resolves a numeric field.
+     * @param name Name of the field
+     * @param index Indexes of the field name
+     * @return the field
+     */
+    private FieldHandle numeric(final String name, final int... index) {
+        FieldHandle field = this.layout.field(name, index);
+        DataDescriptor dd = field.descriptor;
+        if (dd.type == DataDescriptor.Type.STRING || !dd.children.isEmpty() || field.bufferLen != dd.bufferLen) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        return field;
+    }
+
+    /**
+     * Resolves a date field.
+     * @param name Name of the field
+     * @param index Indexes of the field name
+     * @return the field
+     */
+    private FieldHandle date(final String name, final int... index) {
+        FieldHandle field = this.layout.field(name, index);
+        if (field.descriptor.datePattern == null || field.bufferLen != field.descriptor.bufferLen) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_NO_DATE_FORMAT);
+        }
+        return field;
+    }
+
+    /**
+     * Converts the value of a field to an int.
+     * @param value Value of the field
+     * @return the value as an int
+     */
+    private static int toInt(final long value) {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Replaces days since 1970-01-01 by their years, keeping empty dates.
+     * @param days Column
+     * @param from First value to be replaced
+     * @param to Position after the last value to be replaced
+     */
+    private static void toYears(final int[] days, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (days[i] != DatePattern.EMPTY) {
+                days[i] = DatePattern.fromEpochDay(days[i]) >> 9;
+            }
+        }
+    }
+
+    /**
+     * A field extracted as a column.
+     */
+    private static final class Column {
+
+        private final DataDescriptor dd;
+        private final int bufferInit;
+        private final int bufferLen;
+        private final int kind;
+
+        Column(final DataDescriptor dd, final int bufferInit, final int bufferLen, final int kind) {
+            this.dd = dd;
+            this.bufferInit = bufferInit;
+            this.bufferLen = bufferLen;
+            this.kind = kind;
+        }
+    }
+}
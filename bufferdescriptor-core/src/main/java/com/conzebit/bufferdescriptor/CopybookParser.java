@@ -0,0 +1,636 @@
+package com.conzebit.bufferdescriptor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Builds a RecordLayout from the text of a COBOL copybook, driving a BufferBuilder the same way it would be driven by
+ * hand.<br />
+ * <br />
+ * For instance, the following copybook:<br />
+ * <br />
+ * <code>
+ * &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;01 CLIENT.<br />
+ * &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;05 NAME&nbsp;&nbsp;&nbsp;&nbsp;PIC X(50).<br />
+ * &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;05 BALANCE PIC S9(13)V99 COMP-3 VALUE ZERO.<br />
+ * &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;05 FILLER&nbsp;&nbsp;PIC X(10).<br />
+ * &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;05 CONTACT OCCURS 3 TIMES.<br />
+ * &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;10 PHONE PIC X(20).
+ * </code><br />
+ * <br />
+ * is read with:<br />
+ * <br />
+ * <code>
+ * RecordLayout layout = new CopybookParser().parse(copybookText);
+ * </code><br />
+ * <br />
+ * Level numbers, <code>PIC</code>, <code>USAGE</code> (<code>DISPLAY</code>, <code>COMP</code>, <code>COMP-3</code>,
+ * <code>COMP-4</code>, <code>COMP-5</code>, <code>BINARY</code>, <code>PACKED-DECIMAL</code>, also when declared on a
+ * group), <code>SIGN</code>, <code>OCCURS</code> (the maximum is used for <code>OCCURS DEPENDING ON</code>),
+ * <code>VALUE</code> and <code>FILLER</code> are supported. FILLER fields are named <code>FILLER#1</code>,
+ * <code>FILLER#2</code>... <code>REDEFINES</code> is supported below level 01: the redefining field starts at the
+ * position of the redefined one and both can be read over the same bytes. Level 88 and 66 entries are ignored, and so
+ * are level 01 records redefining the first one, as a layout describes a single record; any other level 01 record after
+ * the first one is rejected. Level 77 items, and fields declared with no level 01 record, are fields of a record
+ * named <code>ROOT</code>.<br />
+ * <br />
+ * Copybooks are expected in fixed format by default: columns 1 to 6 are a sequence area, column 7 marks comments
+ * (<code>*</code> or <code>/</code>) and continuation lines (<code>-</code>), and anything after column 72 is ignored.
+ * <br />
+ * <br />
+ * Parsed layouts are cached by the SHA-256 of the copybook and the options of the parser, so the same copybook is
+ * parsed only once, no matter how many times or by how many threads it's loaded.
+ */
+public final class CopybookParser {
+
+    private static final int MAX_CACHED_LAYOUTS = 1024;
+    private static final String ROOT_NAME = "ROOT";
+    private static final String FILLER_PREFIX = "FILLER#";
+
+    private static final Set<String> USAGES = new HashSet<String>(Arrays.asList(
+            "DISPLAY", "COMP", "COMP-3", "COMP-4", "COMP-5", "BINARY", "PACKED-DECIMAL",
+            "COMPUTATIONAL", "COMPUTATIONAL-3", "COMPUTATIONAL-4", "COMPUTATIONAL-5"));
+    private static final Set<String> UNSUPPORTED_USAGES = new HashSet<String>(Arrays.asList(
+            "COMP-1", "COMP-2", "COMPUTATIONAL-1", "COMPUTATIONAL-2", "POINTER", "PROCEDURE-POINTER",
+            "FUNCTION-POINTER", "INDEX", "NATIONAL", "DISPLAY-1"));
+    private static final Set<String> CLAUSES = new HashSet<String>(Arrays.asList(
+            "PIC", "PICTURE", "USAGE", "SIGN", "LEADING", "TRAILING", "OCCURS", "VALUE", "VALUES", "REDEFINES",
+            "JUSTIFIED", "JUST", "BLANK", "SYNC", "SYNCHRONIZED", "GLOBAL", "EXTERNAL", "RENAMES"));
+
+    private static final ConcurrentMap<String, RecordLayout> LAYOUTS = new ConcurrentHashMap<String, RecordLayout>();
+
+    private boolean fixedFormat = true;
+    private CodePage codePage = CodePage.DEFAULT;
+    private BinaryTruncation binaryTruncation = BinaryTruncation.DECIMAL;
+
+    /**
+     * Sets whether copybooks are in fixed format, with sequence and indicator areas, or in free format, where
+     * comments start with <code>*&gt;</code>.
+     * @param fixedFormat true for fixed format, the default
+     */
+    public CopybookParser setFixedFormat(final boolean fixedFormat) {
+        this.fixedFormat = fixedFormat;
+        return this;
+    }
+
+    /**
+     * Sets the code page of the records described by the copybooks.
+     * @param codePage Code page of the records, {@link CodePage#DEFAULT} by default
+     * @see BufferBuilder#setCodePage(CodePage)
+     */
+    public CopybookParser setCodePage(final CodePage codePage) {
+        if (codePage == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_CODE_PAGE);
+        }
+        this.codePage = codePage;
+        return this;
+    }
+
+    /**
+     * Sets how values that don't fit are written into binary fields.
+     * @param binaryTruncation Truncation of binary fields, {@link BinaryTruncation#DECIMAL} by default
+     * @see BufferBuilder#setBinaryTruncation(BinaryTruncation)
+     */
+    public CopybookParser setBinaryTruncation(final BinaryTruncation binaryTruncation) {
+        if (binaryTruncation == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+        this.binaryTruncation = binaryTruncation;
+        return this;
+    }
+
+    /**
+     * Reads a copybook and returns its layout.
+     * @param reader Reader of the copybook, it's not closed
+     * @return the layout of the copybook
+     * @throws IOException if the copybook can't be read
+     */
+    public RecordLayout parse(final Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] chars = new char[8192];
+        int read;
+        while ((read = reader.read(chars)) > 0) {
+            text.append(chars, 0, read);
+        }
+        return this.parse(text.toString());
+    }
+
+    /**
+     * Returns the layout of a copybook. Layouts are cached, so parsing the same copybook again with the same options
+     * returns the same layout.
+     * @param copybook Text of the copybook
+     * @return the layout of the copybook
+     */
+    public RecordLayout parse(final String copybook) {
+        if (copybook == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_COPYBOOK);
+        }
+        String key = this.cacheKey(copybook);
+        RecordLayout layout = LAYOUTS.get(key);
+        if (layout == null) {
+            layout = this.build(copybook);
+            if (LAYOUTS.size() < MAX_CACHED_LAYOUTS) {
+                RecordLayout cached = LAYOUTS.putIfAbsent(key, layout);
+                if (cached != null) {
+                    layout = cached;
+                }
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Removes every cached layout.
+     */
+    public static void clearCache() {
+        LAYOUTS.clear();
+    }
+
+    /**
+     * Returns the key of a copybook in the cache of layouts.
+     * @param copybook Text of the copybook
+     * @return SHA-256 of the options and the copybook, in hexadecimal
+     */
+    private String cacheKey(final String copybook) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        Charset utf8 = Charset.forName("UTF-8");
+        digest.update((this.fixedFormat + " " + this.codePage.getName() + " " + this.binaryTruncation + "\n")
+                .getBytes(utf8));
+        byte[] hash = digest.digest(copybook.getBytes(utf8));
+
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = Character.forDigit((hash[i] >> 4) & 0x0F, 16);
+            hex[i * 2 + 1] = Character.forDigit(hash[i] & 0x0F, 16);
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Parses a copybook and builds its layout.
+     * @param copybook Text of the copybook
+     * @return the layout of the copybook
+     */
+    private RecordLayout build(final String copybook) {
+        BufferBuilder builder = new BufferBuilder()
+                .setCodePage(this.codePage)
+                .setBinaryTruncation(this.binaryTruncation);
+
+        List<Entry> groups = new ArrayList<Entry>();
+        int fillers = 0;
+        int skipLevel = 0;
+        boolean first = true;
+        boolean root = false;
+        int topLevel = 0;
+        for (List<String> statement : statements(this.sourceText(copybook))) {
+            Entry entry = Entry.parse(statement);
+            if (entry.level == 66 || entry.level == 88) {
+                continue;
+            }
+            if (skipLevel > 0 && entry.level > skipLevel) {
+                continue;
+            }
+            skipLevel = 0;
+            if (entry.redefines != null && entry.level == 1) {
+                // A layout has a single record, so records redefining the first one are left out
+                skipLevel = entry.level;
+                continue;
+            }
+
+            if (first) {
+                // Level 77 items and fields with no record are wrapped in a record of their own
+                root = entry.level != 1;
+                if (root) {
+                    builder.addDataDescription(1, ROOT_NAME);
+                }
+            } else if (entry.level == 1 || (entry.level == 77 && !root)) {
+                throw entry.invalid("a copybook must describe a single record");
+            }
+            first = false;
+            if (entry.level == 77) {
+                // An independent item, taken as a field at the top level below ROOT. Until that level is known it
+                // takes the deepest one, so the fields that follow are not nested in it.
+                entry.level = topLevel == 0 ? 49 : topLevel;
+            } else if (topLevel == 0) {
+                topLevel = entry.level;
+            }
+
+            while (!groups.isEmpty() && groups.get(groups.size() - 1).level >= entry.level) {
+                groups.remove(groups.size() - 1);
+            }
+            if (entry.usage == null) {
+                for (int i = groups.size() - 1; i >= 0 && entry.usage == null; i--) {
+                    entry.usage = groups.get(i).usage;
+                }
+            }
+
+            String name = entry.name == null ? FILLER_PREFIX + (++fillers) : entry.name;
+            if (entry.pic == null) {
+                builder.addDataDescription(entry.level, name, entry.occurs);
+                if (entry.redefines != null) {
+                    builder.redefines(entry.redefines);
+                }
+                groups.add(entry);
+                continue;
+            }
+            String pic = entry.pic();
+            builder.addDataDescription(entry.level, name, pic, entry.occurs);
+            if (entry.redefines != null) {
+                builder.redefines(entry.redefines);
+            }
+            String value = entry.value(Picture.parse(pic));
+            if (value != null) {
+                builder.withValue(value);
+            }
+        }
+        return builder.endLayoutDescription();
+    }
+
+    /**
+     * Removes comments, sequence numbers and line breaks from a copybook, joining continuation lines.
+     * @param copybook Text of the copybook
+     * @return the source text
+     */
+    private String sourceText(final String copybook) {
+        StringBuilder text = new StringBuilder(copybook.length());
+        for (String line : copybook.split("\r\n|\r|\n")) {
+            if (!this.fixedFormat) {
+                int comment = line.indexOf("*>");
+                text.append(' ').append(comment < 0 ? line : line.substring(0, comment));
+                continue;
+            }
+
+            if (line.length() <= 7) {
+                continue;
+            }
+            char indicator = line.charAt(6);
+            String content = line.substring(7, Math.min(72, line.length()));
+            if (indicator == '*' || indicator == '/' || indicator == 'D' || indicator == 'd') {
+                continue;
+            }
+            if (indicator == '-') {
+                // The continued line goes on to column 72, and a continued literal restarts after its quote
+                String continued = content.trim();
+                if (continued.length() > 0 && (continued.charAt(0) == '\'' || continued.charAt(0) == '"')) {
+                    continued = continued.substring(1);
+                }
+                text.append(continued);
+            } else {
+                int comment = content.indexOf("*>");
+                text.append(' ').append(comment < 0 ? content : content.substring(0, comment));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Splits source text into statements ended by a period, and statements into words and literals.
+     * @param text Source text
+     * @return the statements
+     */
+    private static List<List<String>> statements(final String text) {
+        List<List<String>> statements = new ArrayList<List<String>>();
+        List<String> statement = new ArrayList<String>();
+        StringBuilder token = new StringBuilder();
+        int pos = 0;
+        while (pos <= text.length()) {
+            char c = pos < text.length() ? text.charAt(pos) : ' ';
+            boolean end = pos == text.length();
+            pos++;
+
+            if (c == '\'' || c == '"') {
+                // A literal, where a doubled quote stands for a single one
+                token.append(c);
+                while (pos < text.length()) {
+                    char l = text.charAt(pos++);
+                    token.append(l);
+                    if (l == c) {
+                        if (pos < text.length() && text.charAt(pos) == c) {
+                            pos++;
+                        } else {
+                            break;
+                        }
+                    }
+                }
+                continue;
+            }
+
+            boolean separator = Character.isWhitespace(c)
+                    || ((c == ',' || c == ';') && (pos >= text.length() || Character.isWhitespace(text.charAt(pos))));
+            boolean period = c == '.' && (pos >= text.length() || Character.isWhitespace(text.charAt(pos)));
+            if (!separator && !period) {
+                token.append(c);
+                continue;
+            }
+            if (token.length() > 0) {
+                statement.add(token.toString());
+                token.setLength(0);
+            }
+            if ((period || end) && !statement.isEmpty()) {
+                statements.add(statement);
+                statement = new ArrayList<String>();
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * An entry of a copybook, as in <code>05 NAME PIC X(50) VALUE SPACES.</code>
+     */
+    private static final class Entry {
+
+        private final List<String> tokens;
+        private int level;
+        private String name;
+        private String pic;
+        private String usage;
+        private String sign;
+        private int occurs = 1;
+        private String value;
+        private String redefines;
+
+        private Entry(final List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        /**
+         * Parses the words of an entry.
+         * @param tokens Words and literals of the entry
+         * @return the entry
+         */
+        static Entry parse(final List<String> tokens) {
+            Entry entry = new Entry(tokens);
+            try {
+                entry.level = Integer.parseInt(tokens.get(0));
+            } catch (NumberFormatException e) {
+                throw entry.invalid();
+            }
+            if (entry.level < 1 || (entry.level > 49 && entry.level != 66 && entry.level != 77 && entry.level != 88)) {
+                throw entry.invalid();
+            }
+            if (entry.level == 66 || entry.level == 88) {
+                return entry;
+            }
+
+            int t = 1;
+            if (t < tokens.size() && !isClause(tokens.get(t))) {
+                String word = tokens.get(t++);
+                entry.name = "FILLER".equalsIgnoreCase(word) ? null : word;
+            }
+            while (t < tokens.size()) {
+                t = entry.parseClause(t);
+            }
+            return entry;
+        }
+
+        /**
+         * Returns true if a word starts a clause.
+         * @param word Word of an entry
+         * @return true if the word is a keyword or a usage
+         */
+        private static boolean isClause(final String word) {
+            String upper = word.toUpperCase(Locale.ENGLISH);
+            return CLAUSES.contains(upper) || USAGES.contains(upper) || UNSUPPORTED_USAGES.contains(upper);
+        }
+
+        /**
+         * Parses a clause of the entry.
+         * @param start Position of the first word of the clause
+         * @return Position of the next clause
+         */
+        private int parseClause(final int start) {
+            int t = start;
+            String word = this.word(t++);
+            if ("PIC".equals(word) || "PICTURE".equals(word)) {
+                t = this.skip(t, "IS");
+                this.pic = this.tokens.get(this.check(t++));
+            } else if ("USAGE".equals(word)) {
+                t = this.skip(t, "IS");
+                this.usage = this.usage(this.word(this.check(t++)));
+            } else if (USAGES.contains(word) || UNSUPPORTED_USAGES.contains(word)) {
+                this.usage = this.usage(word);
+            } else if ("SIGN".equals(word) || "LEADING".equals(word) || "TRAILING".equals(word)) {
+                if ("SIGN".equals(word)) {
+                    t = this.skip(t, "IS");
+                    word = this.word(this.check(t++));
+                }
+                this.sign = "SIGN " + word;
+                if (t < this.tokens.size() && "SEPARATE".equals(this.word(t))) {
+                    this.sign += " SEPARATE";
+                    t = this.skip(t + 1, "CHARACTER");
+                }
+            } else if ("OCCURS".equals(word)) {
+                t = this.parseOccurs(t);
+            } else if ("VALUE".equals(word) || "VALUES".equals(word)) {
+                t = this.skip(this.skip(t, "IS"), "ARE");
+                if ("ALL".equals(this.word(this.check(t)))) {
+                    t++;
+                    this.value = "ALL " + this.tokens.get(this.check(t++));
+                } else {
+                    this.value = this.tokens.get(this.check(t++));
+                }
+            } else if ("REDEFINES".equals(word)) {
+                this.redefines = this.tokens.get(this.check(t++));
+            } else if ("JUSTIFIED".equals(word) || "JUST".equals(word)) {
+                t = this.skip(t, "RIGHT");
+            } else if ("BLANK".equals(word)) {
+                t = this.skip(t, "WHEN");
+                this.check(t++);
+            } else if ("SYNC".equals(word) || "SYNCHRONIZED".equals(word)) {
+                t = this.skip(this.skip(t, "LEFT"), "RIGHT");
+            } else if (!"GLOBAL".equals(word) && !"EXTERNAL".equals(word)) {
+                throw this.invalid();
+            }
+            return t;
+        }
+
+        /**
+         * Parses an <code>OCCURS</code> clause.
+         * @param start Position of the word after <code>OCCURS</code>
+         * @return Position of the next clause
+         */
+        private int parseOccurs(final int start) {
+            int t = start;
+            this.occurs = this.number(this.check(t++));
+            if (t < this.tokens.size() && "TO".equals(this.word(t))) {
+                // OCCURS DEPENDING ON takes the room of its maximum
+                this.occurs = this.number(this.check(t + 1));
+                t += 2;
+            }
+            t = this.skip(t, "TIMES");
+            while (t < this.tokens.size()) {
+                String word = this.word(t);
+                if ("DEPENDING".equals(word)) {
+                    t = this.skip(t + 1, "ON");
+                    this.check(t++);
+                } else if ("ASCENDING".equals(word) || "DESCENDING".equals(word) || "INDEXED".equals(word)) {
+                    t = this.skip(this.skip(this.skip(t + 1, "KEY"), "IS"), "BY");
+                    this.check(t);
+                    while (t < this.tokens.size() && !isClause(this.tokens.get(t))
+                            && !"ASCENDING".equals(this.word(t)) && !"DESCENDING".equals(this.word(t))
+                            && !"INDEXED".equals(this.word(t))) {
+                        t++;
+                    }
+                } else {
+                    break;
+                }
+            }
+            return t;
+        }
+
+        /**
+         * Checks a usage.
+         * @param word Usage of the entry
+         * @return the usage
+         */
+        private String usage(final String word) {
+            if (!USAGES.contains(word)) {
+                throw this.invalid();
+            }
+            return word;
+        }
+
+        /**
+         * Returns the PIC of the field as accepted by BufferBuilder.
+         * @return PIC with its usage and sign
+         */
+        String pic() {
+            StringBuilder ret = new StringBuilder(this.pic);
+            if (this.usage != null) {
+                ret.append(' ').append(this.usage);
+            }
+            if (this.sign != null) {
+                ret.append(' ').append(this.sign);
+            }
+            return ret.toString();
+        }
+
+        /**
+         * Returns the initial value of the field as accepted by BufferBuilder. <code>HIGH-VALUES</code>,
+         * <code>LOW-VALUES</code> and hexadecimal literals can't be written as text, so they are ignored.
+         * @param picture Parsed PIC of the field
+         * @return the value, or null if the field keeps its default value
+         */
+        String value(final Picture picture) {
+            if (this.value == null) {
+                return null;
+            }
+            boolean all = this.value.startsWith("ALL ");
+            String literal = all ? this.value.substring(4) : this.value;
+            String upper = literal.toUpperCase(Locale.ENGLISH);
+
+            String ret;
+            if (upper.startsWith("'") || upper.startsWith("\"")) {
+                char quote = literal.charAt(0);
+                ret = literal.substring(1, literal.length() - 1).replace(
+                        String.valueOf(quote) + quote, String.valueOf(quote));
+            } else if ("ZERO".equals(upper) || "ZEROS".equals(upper) || "ZEROES".equals(upper)) {
+                ret = "0";
+                all = picture.type == DataDescriptor.Type.STRING;
+            } else if ("SPACE".equals(upper) || "SPACES".equals(upper)) {
+                return null;
+            } else if ("QUOTE".equals(upper) || "QUOTES".equals(upper)) {
+                ret = "\"";
+                all = true;
+            } else if (upper.startsWith("HIGH-VALUE") || upper.startsWith("LOW-VALUE") || upper.startsWith("NULL")
+                    || upper.startsWith("X'") || upper.startsWith("X\"")) {
+                return null;
+            } else {
+                ret = literal;
+            }
+
+            if (all && ret.length() > 0 && picture.type == DataDescriptor.Type.STRING) {
+                StringBuilder filled = new StringBuilder(picture.length + ret.length());
+                while (filled.length() < picture.length) {
+                    filled.append(ret);
+                }
+                ret = filled.substring(0, picture.length);
+            }
+            return ret;
+        }
+
+        /**
+         * Returns a word of the entry in upper case.
+         * @param t Position of the word
+         * @return the word
+         */
+        private String word(final int t) {
+            return this.tokens.get(t).toUpperCase(Locale.ENGLISH);
+        }
+
+        /**
+         * Skips an optional word.
+         * @param t Position of the next word
+         * @param optional Optional word
+         * @return Position of the next word after the optional one
+         */
+        private int skip(final int t, final String optional) {
+            return t < this.tokens.size() && optional.equals(this.word(t)) ? t + 1 : t;
+        }
+
+        /**
+         * Checks that a mandatory word is there.
+         * @param t Position of the word
+         * @return the same position
+         */
+        private int check(final int t) {
+            if (t >= this.tokens.size()) {
+                throw this.invalid();
+            }
+            return t;
+        }
+
+        /**
+         * Parses a number of the entry.
+         * @param t Position of the number
+         * @return the number
+         */
+        private int number(final int t) {
+            try {
+                return Integer.parseInt(this.tokens.get(t));
+            } catch (NumberFormatException e) {
+                throw this.invalid();
+            }
+        }
+
+        /**
+         * Returns the exception thrown for an entry that can't be parsed.
+         * @return the exception, with the entry in its message
+         */
+        private IllegalArgumentException invalid() {
+            return this.invalid(null);
+        }
+
+        /**
+         * Returns the exception thrown for an entry that is not allowed where it is.
+         * @param reason Why the entry is not allowed, or null
+         * @return the exception, with the entry and the reason in its message
+         */
+        private IllegalArgumentException invalid(final String reason) {
+            StringBuilder message = new StringBuilder(IBufferConstant.ERROR_INVALID_COPYBOOK);
+            for (String token : this.tokens) {
+                message.append(' ').append(token);
+            }
+            if (reason != null) {
+                message.append(" (").append(reason).append(')');
+            }
+            return new IllegalArgumentException(message.toString());
+        }
+    }
+}
@@ -5,15 +5,26 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Internal helper class used by BufferDescriptor.
+ * Internal helper class used by BufferDescriptor.<br />
+ * <br />
+ * There is a single DataDescriptor for each declared field, no matter how many occurrences it has. Occurrences are
+ * located by arithmetic: <code>bufferInit</code> is the position of the field when every index is 1 and each index
+ * moves it by the stride of its dimension.<br />
+ * <br />
+ * A field with <code>redefines</code> starts at the position of the field it redefines, the previous field of the
+ * same parent that is not a redefinition itself, so both are views over the same bytes.
  */
-public class DataDescriptor implements Cloneable, Serializable {
-	
+public class DataDescriptor implements Serializable {
+
 	private static final long serialVersionUID = 1L;
 
+    private static final int[] NO_DIMENSIONS = new int[0];
+
 	enum Type {
 		NUMBER,
-		STRING
+		STRING,
+		PACKED,
+		BINARY
 	}
 
     protected int levelNumber;
@@ -21,10 +32,23 @@ public class DataDescriptor implements Cloneable, Serializable {
     protected String name;
     protected int length;
     protected int occurs;
-    protected List<List<DataDescriptor>> children;
-    protected String indexPosition;
+    protected int digits;
+    protected int scale;
+    protected boolean signed;
+    protected boolean signLeading;
+    protected boolean signSeparate;
+    protected boolean nativeBinary;
+    protected CodePage codePage = CodePage.DEFAULT;
+    protected DatePattern datePattern;
+    protected String value;
+    protected long unscaledValue;
+    protected String redefines;
+    protected DataDescriptor parent;
+    protected List<DataDescriptor> children;
     protected int bufferInit = 0;
     protected int bufferLen = 0;
+    protected int[] dimensions = NO_DIMENSIONS;
+    protected int[] strides = NO_DIMENSIONS;
 
     protected DataDescriptor(final int levelNumber,
                              final String name,
@@ -35,7 +59,7 @@ public class DataDescriptor implements Cloneable, Serializable {
             throw new IllegalArgumentException("levelNumber <= 0");
         }
         this.levelNumber = levelNumber;
-    	
+
         if (name == null || "".equals(name)) {
             throw new IllegalArgumentException("name == null");
         }
@@ -51,24 +75,95 @@ public class DataDescriptor implements Cloneable, Serializable {
         }
         this.occurs = occurs;
 
-        this.children = new ArrayList<List<DataDescriptor>>(this.occurs);
-        for (int i = 0; i < this.occurs; i++) {
-            this.children.add(new ArrayList<DataDescriptor>(0));
-        }
-        this.indexPosition = "";
+        this.children = new ArrayList<DataDescriptor>(0);
         this.type = type;
     }
 
-    protected final Object clone() throws CloneNotSupportedException {
-        DataDescriptor clon = (DataDescriptor) super.clone();
-        this.children = new ArrayList<List<DataDescriptor>>(this.occurs);
-        for (int i = 0; i < this.occurs; i++) {
-            this.children.add(new ArrayList<DataDescriptor>(0));
+    /**
+     * Copies this descriptor and all its children.
+     * @param copyParent Parent of the copy
+     * @return the copy
+     */
+    protected final DataDescriptor copy(final DataDescriptor copyParent) {
+        DataDescriptor copy = new DataDescriptor(this.levelNumber, this.name, this.length, this.occurs, this.type);
+        copy.digits = this.digits;
+        copy.scale = this.scale;
+        copy.signed = this.signed;
+        copy.signLeading = this.signLeading;
+        copy.signSeparate = this.signSeparate;
+        copy.nativeBinary = this.nativeBinary;
+        copy.codePage = this.codePage;
+        copy.datePattern = this.datePattern;
+        copy.value = this.value;
+        copy.unscaledValue = this.unscaledValue;
+        copy.redefines = this.redefines;
+        copy.parent = copyParent;
+        for (DataDescriptor child : this.children) {
+            copy.children.add(child.copy(copy));
+        }
+        return copy;
+    }
+
+    /**
+     * Sets the size and the stride of every OCCURS dimension that applies to this field: the ones of its parent and
+     * its own OCCURS, if any. The dimensions of the parent and the limits of this field must have been set before.
+     */
+    protected final void inheritDimensions() {
+        if (this.parent == null) {
+            return;
+        }
+        int[] parentDimensions = this.parent.dimensions;
+        int count = parentDimensions.length + (this.occurs > 1 ? 1 : 0);
+        this.dimensions = new int[count];
+        this.strides = new int[count];
+        System.arraycopy(parentDimensions, 0, this.dimensions, 0, parentDimensions.length);
+        System.arraycopy(this.parent.strides, 0, this.strides, 0, parentDimensions.length);
+        if (this.occurs > 1) {
+            this.dimensions[count - 1] = this.occurs;
+            this.strides[count - 1] = this.bufferLen;
         }
-        return clon;
     }
 
     protected final String getName() {
-        return this.name + this.indexPosition;
+        return this.name;
+    }
+
+    /**
+     * Returns the number of indexes inherited from the parents of this field.
+     * @return number of indexes of the parents
+     */
+    protected final int getParentDimensions() {
+        return this.parent == null ? 0 : this.parent.dimensions.length;
+    }
+
+    /**
+     * Returns the position of an occurrence of this field.
+     * @param index Indexes of the occurrence, from the outermost OCCURS
+     * @return Position of the occurrence, or -1 if the indexes don't address this field
+     */
+    protected final int position(final int[] index) {
+        int count = index == null ? 0 : index.length;
+        if (count != this.dimensions.length && count != this.getParentDimensions()) {
+            return -1;
+        }
+        int pos = this.bufferInit;
+        for (int i = 0; i < count; i++) {
+            int idx = index[i];
+            if (idx < 1 || idx > this.dimensions[i]) {
+                return -1;
+            }
+            pos += (idx - 1) * this.strides[i];
+        }
+        return pos;
+    }
+
+    /**
+     * Returns the length of the field addressed by a number of indexes. If the field has OCCURS and its own index is
+     * not given, the whole table is addressed.
+     * @param count Number of indexes
+     * @return Length of the field
+     */
+    protected final int length(final int count) {
+        return count < this.dimensions.length ? this.bufferLen * this.occurs : this.bufferLen;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,519 @@
+package com.conzebit.bufferdescriptor;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Format of a date field, declared with the field in BufferBuilder.<br />
+ * <br />
+ * The usual formats made of <code>yyyy</code>, <code>MM</code>, <code>dd</code> or the julian day
+ * <code>DDD</code>, with any separators, are read and written by digit arithmetic straight from the buffer without
+ * creating any object:<br />
+ * <br />
+ * <code>
+ * yyyyMMdd&nbsp;&nbsp;yyyy-MM-dd&nbsp;&nbsp;dd/MM/yyyy&nbsp;&nbsp;yyyyDDD
+ * </code><br />
+ * <br />
+ * Any other pattern supported by DateTimeFormatter is read and written through a formatter that is created once and
+ * shared by every thread.
+ */
+public final class DatePattern implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Epoch day of empty dates, made of spaces or zeroes
+     */
+    public static final int EMPTY = Integer.MIN_VALUE;
+
+    private static final int DAYS_0000_03_01_TO_1970 = 719468;
+    private static final int[] DAYS_BEFORE_MONTH = {0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334};
+    private static final int MAX_CACHED_PATTERNS = 256;
+
+    private static final ConcurrentMap<String, DatePattern> PATTERNS = new ConcurrentHashMap<String, DatePattern>();
+    private static final ThreadLocal<Map<String, SimpleDateFormat>> SIMPLE_FORMATS =
+            new ThreadLocal<Map<String, SimpleDateFormat>>() {
+                @Override
+                protected Map<String, SimpleDateFormat> initialValue() {
+                    return new HashMap<String, SimpleDateFormat>();
+                }
+            };
+
+    private final String pattern;
+    private final boolean fast;
+    private final boolean numeric;
+    private final int yearPos;
+    private final int monthPos;
+    private final int dayPos;
+    private final int dayOfYearPos;
+    private transient DateTimeFormatter formatter;
+
+    private DatePattern(final String pattern) {
+        this.pattern = pattern;
+
+        int year = -1;
+        int month = -1;
+        int day = -1;
+        int dayOfYear = -1;
+        boolean onlyDigits = true;
+        boolean simple = true;
+        int pos = 0;
+        while (pos < pattern.length()) {
+            char c = pattern.charAt(pos);
+            if (pattern.startsWith("yyyy", pos) && year < 0) {
+                year = pos;
+                pos += 4;
+            } else if (pattern.startsWith("MM", pos) && month < 0) {
+                month = pos;
+                pos += 2;
+            } else if (pattern.startsWith("dd", pos) && day < 0) {
+                day = pos;
+                pos += 2;
+            } else if (pattern.startsWith("DDD", pos) && dayOfYear < 0) {
+                dayOfYear = pos;
+                pos += 3;
+            } else {
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '\'') {
+                    simple = false;
+                }
+                onlyDigits = false;
+                pos++;
+            }
+            if (pos < pattern.length() && pattern.charAt(pos) == pattern.charAt(pos - 1)
+                    && Character.isLetter(pattern.charAt(pos))) {
+                // Longer runs of the same letter, as in yyyyy or MMM, are not simple
+                simple = false;
+            }
+        }
+
+        this.fast = simple && year >= 0
+                && ((month >= 0 && day >= 0 && dayOfYear < 0) || (dayOfYear >= 0 && month < 0 && day < 0));
+        this.numeric = this.fast && onlyDigits;
+        this.yearPos = year;
+        this.monthPos = month;
+        this.dayPos = day;
+        this.dayOfYearPos = dayOfYear;
+        if (!this.fast) {
+            this.formatter();
+        }
+    }
+
+    /**
+     * Returns the format for a pattern. Formats are immutable and cached, so they can be shared.
+     * @param pattern Pattern of the date, as in <code>yyyyMMdd</code>
+     * @return the format
+     */
+    public static DatePattern of(final String pattern) {
+        if (pattern == null || pattern.length() == 0) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_NULL_FORMAT);
+        }
+        DatePattern ret = PATTERNS.get(pattern);
+        if (ret == null) {
+            try {
+                ret = new DatePattern(pattern);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_DATE_FORMAT);
+            }
+            if (PATTERNS.size() < MAX_CACHED_PATTERNS) {
+                PATTERNS.putIfAbsent(pattern, ret);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the pattern of the format.
+     * @return the pattern
+     */
+    public String getPattern() {
+        return this.pattern;
+    }
+
+    /**
+     * Returns true if dates are read and written by digit arithmetic, without a formatter.
+     * @return true for the usual digit formats
+     */
+    public boolean isFast() {
+        return this.fast;
+    }
+
+    /**
+     * Returns true if formatted dates are made only of digits, as in <code>yyyyMMdd</code>.
+     * @return true if there are no separators
+     */
+    boolean isNumeric() {
+        return this.numeric;
+    }
+
+    @Override
+    public String toString() {
+        return this.pattern;
+    }
+
+    /**
+     * Returns the formatter used for patterns that are not read by digit arithmetic. It's created once, and being
+     * immutable it can be used by any thread.
+     * @return the formatter
+     */
+    private DateTimeFormatter formatter() {
+        DateTimeFormatter ret = this.formatter;
+        if (ret == null) {
+            ret = DateTimeFormatter.ofPattern(this.pattern);
+            this.formatter = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns a SimpleDateFormat cached for the current thread, as SimpleDateFormat is not thread safe.
+     * @param format Format as used by SimpleDateFormat
+     * @param locale Locale to be used
+     * @return the cached SimpleDateFormat
+     */
+    static SimpleDateFormat simpleDateFormat(final String format, final Locale locale) {
+        Map<String, SimpleDateFormat> formats = SIMPLE_FORMATS.get();
+        String key = locale.toString() + ' ' + format;
+        SimpleDateFormat ret = formats.get(key);
+        if (ret == null) {
+            ret = new SimpleDateFormat(format, locale);
+            if (formats.size() < MAX_CACHED_PATTERNS) {
+                formats.put(key, ret);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Decodes a date.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param codePage Code page of the field
+     * @return Days since 1970-01-01, or {@link #EMPTY} if the field is made of spaces or zeroes
+     */
+    int decode(final byte[] buffer, final int bufferInit, final int bufferLen, final CodePage codePage) {
+        boolean empty = true;
+        for (int i = bufferInit; i < bufferInit + bufferLen && empty; i++) {
+            empty = buffer[i] == codePage.space || buffer[i] == codePage.digitBytes[0];
+        }
+        if (empty) {
+            return EMPTY;
+        }
+        if (!this.fast) {
+            return this.parse(FieldCodec.decodeString(buffer, bufferInit, bufferLen, codePage));
+        }
+        if (bufferLen < this.pattern.length()) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+
+        int year = digits(buffer, bufferInit + this.yearPos, 4, codePage);
+        if (this.dayOfYearPos >= 0) {
+            return toEpochDay(year, digits(buffer, bufferInit + this.dayOfYearPos, 3, codePage));
+        }
+        return toEpochDay(year, digits(buffer, bufferInit + this.monthPos, 2, codePage),
+                digits(buffer, bufferInit + this.dayPos, 2, codePage));
+    }
+
+    /**
+     * Encodes a date.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param codePage Code page of the field
+     * @param epochDay Days since 1970-01-01
+     */
+    void encode(final byte[] buffer, final int bufferInit, final int bufferLen, final CodePage codePage,
+                final int epochDay) {
+        if (!this.fast) {
+            FieldCodec.encodeString(buffer, bufferInit, bufferLen, codePage, this.format(epochDay));
+            return;
+        }
+        if (bufferLen < this.pattern.length()) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+
+        int packedDate = fromEpochDay(epochDay);
+        int year = packedDate >>> 9;
+        int month = (packedDate >>> 5) & 0x0F;
+        int day = packedDate & 0x1F;
+        for (int i = 0; i < bufferLen; i++) {
+            buffer[bufferInit + i] = i < this.pattern.length()
+                    ? codePage.toByte(this.pattern.charAt(i)) : codePage.space;
+        }
+        putDigits(buffer, bufferInit + this.yearPos, 4, year, codePage);
+        if (this.dayOfYearPos >= 0) {
+            putDigits(buffer, bufferInit + this.dayOfYearPos, 3, dayOfYear(year, month, day), codePage);
+        } else {
+            putDigits(buffer, bufferInit + this.monthPos, 2, month, codePage);
+            putDigits(buffer, bufferInit + this.dayPos, 2, day, codePage);
+        }
+    }
+
+    /**
+     * Decodes a date.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param codePage Code page of the field
+     * @return Days since 1970-01-01, or {@link #EMPTY} if the field is made of spaces or zeroes
+     * @see #decode(byte[], int, int, CodePage)
+     */
+    int decode(final ByteBuffer buffer, final int bufferInit, final int bufferLen, final CodePage codePage) {
+        boolean empty = true;
+        for (int i = bufferInit; i < bufferInit + bufferLen && empty; i++) {
+            byte b = buffer.get(i);
+            empty = b == codePage.space || b == codePage.digitBytes[0];
+        }
+        if (empty) {
+            return EMPTY;
+        }
+        if (!this.fast) {
+            return this.parse(FieldCodec.decodeString(buffer, bufferInit, bufferLen, codePage));
+        }
+        if (bufferLen < this.pattern.length()) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+
+        int year = digits(buffer, bufferInit + this.yearPos, 4, codePage);
+        if (this.dayOfYearPos >= 0) {
+            return toEpochDay(year, digits(buffer, bufferInit + this.dayOfYearPos, 3, codePage));
+        }
+        return toEpochDay(year, digits(buffer, bufferInit + this.monthPos, 2, codePage),
+                digits(buffer, bufferInit + this.dayPos, 2, codePage));
+    }
+
+    /**
+     * Encodes a date.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param codePage Code page of the field
+     * @param epochDay Days since 1970-01-01
+     * @see #encode(byte[], int, int, CodePage, int)
+     */
+    void encode(final ByteBuffer buffer, final int bufferInit, final int bufferLen, final CodePage codePage,
+                final int epochDay) {
+        if (!this.fast) {
+            FieldCodec.encodeString(buffer, bufferInit, bufferLen, codePage, this.format(epochDay));
+            return;
+        }
+        if (bufferLen < this.pattern.length()) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+
+        int packedDate = fromEpochDay(epochDay);
+        int year = packedDate >>> 9;
+        int month = (packedDate >>> 5) & 0x0F;
+        int day = packedDate & 0x1F;
+        for (int i = 0; i < bufferLen; i++) {
+            buffer.put(bufferInit + i, i < this.pattern.length()
+                    ? codePage.toByte(this.pattern.charAt(i)) : codePage.space);
+        }
+        putDigits(buffer, bufferInit + this.yearPos, 4, year, codePage);
+        if (this.dayOfYearPos >= 0) {
+            putDigits(buffer, bufferInit + this.dayOfYearPos, 3, dayOfYear(year, month, day), codePage);
+        } else {
+            putDigits(buffer, bufferInit + this.monthPos, 2, month, codePage);
+            putDigits(buffer, bufferInit + this.dayPos, 2, day, codePage);
+        }
+    }
+
+    /**
+     * Parses a date with the formatter.
+     * @param value Value of the field
+     * @return Days since 1970-01-01, or {@link #EMPTY} if the value is blank
+     */
+    private int parse(final String value) {
+        String trimmed = value.trim();
+        if (trimmed.length() == 0) {
+            return EMPTY;
+        }
+        try {
+            return (int) LocalDate.parse(trimmed, this.formatter()).toEpochDay();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+    }
+
+    /**
+     * Formats a date with the formatter.
+     * @param epochDay Days since 1970-01-01
+     * @return the formatted date
+     */
+    private String format(final int epochDay) {
+        return LocalDate.ofEpochDay(epochDay).format(this.formatter());
+    }
+
+    /**
+     * Reads a number of digits.
+     * @param buffer Buffer holding the digits
+     * @param pos Position of the first digit
+     * @param count Number of digits
+     * @param codePage Code page of the field
+     * @return the number
+     */
+    private static int digits(final byte[] buffer, final int pos, final int count, final CodePage codePage) {
+        int ret = 0;
+        for (int i = pos; i < pos + count; i++) {
+            int digit = codePage.digitValues[buffer[i] & 0xFF];
+            if (digit < 0) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+            }
+            ret = ret * 10 + digit;
+        }
+        return ret;
+    }
+
+    /**
+     * Reads a number of digits.
+     * @param buffer Buffer holding the digits
+     * @param pos Position of the first digit
+     * @param count Number of digits
+     * @param codePage Code page of the field
+     * @return the number
+     */
+    private static int digits(final ByteBuffer buffer, final int pos, final int count, final CodePage codePage) {
+        int ret = 0;
+        for (int i = pos; i < pos + count; i++) {
+            int digit = codePage.digitValues[buffer.get(i) & 0xFF];
+            if (digit < 0) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+            }
+            ret = ret * 10 + digit;
+        }
+        return ret;
+    }
+
+    /**
+     * Writes a number with a fixed number of digits.
+     * @param buffer Buffer where the digits are written
+     * @param pos Position of the first digit
+     * @param count Number of digits
+     * @param value Number to be written
+     * @param codePage Code page of the field
+     */
+    private static void putDigits(final byte[] buffer, final int pos, final int count, final int value,
+                                  final CodePage codePage) {
+        int v = value;
+        for (int i = pos + count - 1; i >= pos; i--) {
+            buffer[i] = codePage.digitBytes[v % 10];
+            v /= 10;
+        }
+    }
+
+    /**
+     * Writes a number with a fixed number of digits.
+     * @param buffer Buffer where the digits are written
+     * @param pos Position of the first digit
+     * @param count Number of digits
+     * @param value Number to be written
+     * @param codePage Code page of the field
+     */
+    private static void putDigits(final ByteBuffer buffer, final int pos, final int count, final int value,
+                                  final CodePage codePage) {
+        int v = value;
+        for (int i = pos + count - 1; i >= pos; i--) {
+            buffer.put(i, codePage.digitBytes[v % 10]);
+            v /= 10;
+        }
+    }
+
+    /**
+     * Returns true for leap years.
+     * @param year Year
+     * @return true if the year has 366 days
+     */
+    private static boolean isLeap(final int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * Returns the day of the year of a date.
+     * @param year Year
+     * @param month Month, from 1 to 12
+     * @param day Day of the month
+     * @return Day of the year, from 1
+     */
+    private static int dayOfYear(final int year, final int month, final int day) {
+        return DAYS_BEFORE_MONTH[month - 1] + day + (month > 2 && isLeap(year) ? 1 : 0);
+    }
+
+    /**
+     * Converts a date to days since 1970-01-01.
+     * @param year Year
+     * @param month Month, from 1 to 12
+     * @param day Day of the month
+     * @return Days since 1970-01-01
+     */
+    static int toEpochDay(final int year, final int month, final int day) {
+        if (month < 1 || month > 12 || day < 1) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+        int monthLength = month == 12 ? 31 : DAYS_BEFORE_MONTH[month] - DAYS_BEFORE_MONTH[month - 1];
+        if (day > monthLength + (month == 2 && isLeap(year) ? 1 : 0)) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+
+        // Years starting on March 1st, so the leap day is the last one
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - DAYS_0000_03_01_TO_1970;
+    }
+
+    /**
+     * Converts a julian date to days since 1970-01-01.
+     * @param year Year
+     * @param dayOfYear Day of the year, from 1
+     * @return Days since 1970-01-01
+     */
+    static int toEpochDay(final int year, final int dayOfYear) {
+        if (dayOfYear < 1 || dayOfYear > (isLeap(year) ? 366 : 365)) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+        return toEpochDay(year, 1, 1) + dayOfYear - 1;
+    }
+
+    /**
+     * Converts days since 1970-01-01 to a date with a 4 digit year.
+     * @param epochDay Days since 1970-01-01
+     * @return the date packed as <code>year &lt;&lt; 9 | month &lt;&lt; 5 | day</code>
+     */
+    static int fromEpochDay(final int epochDay) {
+        long z = (long) epochDay + DAYS_0000_03_01_TO_1970;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long year = yearOfEra + era * 400;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        if (month <= 2) {
+            year++;
+        }
+        if (year < 0 || year > 9999) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+        return (int) year << 9 | month << 5 | day;
+    }
+
+    /**
+     * Keeps a single instance of every pattern after deserialization.
+     * @return the cached pattern
+     */
+    private Object readResolve() {
+        return of(this.pattern);
+    }
+}
@@ -0,0 +1,973 @@
+package com.conzebit.bufferdescriptor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Internal helper class used by BufferDescriptor to convert field values from and to the bytes of the buffer
+ * without intermediate objects. Every conversion is available for byte arrays and for ByteBuffers, the latter using
+ * absolute positions so the position of the ByteBuffer is never changed. Digits, signs and text are read and written
+ * in the code page of the field through its lookup tables.
+ */
+final class FieldCodec {
+
+    /**
+     * Powers of ten that fit into a long
+     */
+    static final long[] POW10 = new long[19];
+
+    /**
+     * Powers of ten that are exact as doubles
+     */
+    private static final double[] DOUBLE_POW10 = new double[23];
+
+    /**
+     * Value of the two digits of each byte of a packed decimal, or -1 if any of them is not a digit
+     */
+    private static final byte[] PACKED_PAIRS = new byte[256];
+
+    /**
+     * Whether the default charset encodes every ASCII char as its own byte, so ASCII text can be written directly
+     */
+    private static final boolean ASCII_DEFAULT_CHARSET = encodesAscii(Charset.defaultCharset());
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+        DOUBLE_POW10[0] = 1;
+        for (int i = 1; i < DOUBLE_POW10.length; i++) {
+            DOUBLE_POW10[i] = DOUBLE_POW10[i - 1] * 10;
+        }
+        for (int b = 0; b < PACKED_PAIRS.length; b++) {
+            int high = b >>> 4;
+            int low = b & 0x0F;
+            PACKED_PAIRS[b] = (byte) (high > 9 || low > 9 ? -1 : high * 10 + low);
+        }
+    }
+
+    private FieldCodec() {
+    }
+
+    /**
+     * Checks if a charset encodes and decodes every ASCII char as the byte of the same value.
+     * @param charset Charset
+     * @return true if ASCII text is the same in the charset
+     */
+    static boolean encodesAscii(final Charset charset) {
+        byte[] ascii = new byte[0x80];
+        char[] chars = new char[0x80];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+            chars[i] = (char) i;
+        }
+        String text = new String(chars);
+        return Arrays.equals(ascii, text.getBytes(charset)) && text.equals(new String(ascii, charset));
+    }
+
+    /**
+     * Returns a power of ten as a double, from a table for the usual exponents.
+     * @param exponent Exponent
+     * @return ten raised to the exponent
+     */
+    static double pow10(final int exponent) {
+        if (exponent >= 0 && exponent < DOUBLE_POW10.length) {
+            return DOUBLE_POW10[exponent];
+        }
+        return Math.pow(10, exponent);
+    }
+
+    /**
+     * Decodes a numeric field of any type.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param dd Descriptor of the field
+     * @return Value of the field
+     */
+    static long decodeNumber(final byte[] buffer, final int bufferInit, final int bufferLen,
+                             final DataDescriptor dd) {
+        switch (dd.type) {
+        case PACKED:
+            return decodePacked(buffer, bufferInit, bufferLen);
+        case BINARY:
+            return decodeBinary(buffer, bufferInit, bufferLen, dd.signed);
+        default:
+            if (dd.signed) {
+                return decodeZoned(buffer, bufferInit, bufferLen, dd);
+            }
+            return decodeLong(buffer, bufferInit, bufferLen, dd.codePage);
+        }
+    }
+
+    /**
+     * Encodes a numeric field of any type.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param dd Descriptor of the field
+     * @param value Value to be encoded
+     */
+    static void encodeNumber(final byte[] buffer, final int bufferInit, final int bufferLen, final DataDescriptor dd,
+                             final long value) {
+        switch (dd.type) {
+        case PACKED:
+            encodePacked(buffer, bufferInit, bufferLen, dd.digits, dd.signed, value);
+            break;
+        case BINARY:
+            encodeBinary(buffer, bufferInit, bufferLen, truncateBinary(dd, value));
+            break;
+        default:
+            if (dd.signed) {
+                encodeZoned(buffer, bufferInit, bufferLen, dd, value);
+            } else {
+                encodeLong(buffer, bufferInit, bufferLen, dd.codePage, value);
+            }
+            break;
+        }
+    }
+
+    /**
+     * Decodes a packed decimal (COMP-3): two digits per byte and the sign in the low nibble of the last byte, where
+     * 0xD and 0xB are negative and 0xA, 0xC, 0xE and 0xF are positive.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @return Value of the field, without any implied decimal point
+     */
+    static long decodePacked(final byte[] buffer, final int bufferInit, final int bufferLen) {
+        if (bufferLen == 0) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        final int last = bufferInit + bufferLen - 1;
+        int lastByte = buffer[last] & 0xFF;
+        int sign = lastByte & 0x0F;
+        int lastDigit = lastByte >>> 4;
+        if (sign < 0x0A || lastDigit > 9) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        boolean negative = sign == 0x0D || sign == 0x0B;
+
+        long ret = 0;
+        if (bufferLen <= 9) {
+            // Up to 17 digits, can't overflow
+            for (int pos = bufferInit; pos < last; pos++) {
+                int pair = PACKED_PAIRS[buffer[pos] & 0xFF];
+                if (pair < 0) {
+                    throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+                }
+                ret = ret * 100 + pair;
+            }
+            ret = ret * 10 + lastDigit;
+            return negative ? -ret : ret;
+        }
+
+        // Accumulated negatively so Long.MIN_VALUE can be decoded too
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        for (int pos = bufferInit; pos <= last; pos++) {
+            int b = buffer[pos] & 0xFF;
+            ret = accumulateDigit(ret, b >>> 4, limit);
+            if (pos < last) {
+                ret = accumulateDigit(ret, b & 0x0F, limit);
+            }
+        }
+        return negative ? ret : -ret;
+    }
+
+    /**
+     * Encodes a packed decimal (COMP-3). Signed fields get 0xC or 0xD as sign and unsigned fields get 0xF, storing
+     * the absolute value. As COBOL does, only the rightmost digits are kept if the value doesn't fit into the field.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param digits Number of digits of the field
+     * @param signed true if the field has a sign
+     * @param value Value to be encoded, without any implied decimal point
+     */
+    static void encodePacked(final byte[] buffer, final int bufferInit, final int bufferLen, final int digits,
+                             final boolean signed, final long value) {
+        if (bufferLen == 0) {
+            return;
+        }
+        // Works with the negative magnitude so Long.MIN_VALUE can be encoded too
+        long magnitude = value < 0 ? value : -value;
+        if (digits < POW10.length) {
+            magnitude %= POW10[digits];
+        }
+        int sign = signed ? (value < 0 && magnitude != 0 ? 0x0D : 0x0C) : 0x0F;
+
+        int pos = bufferInit + bufferLen - 1;
+        buffer[pos] = (byte) (((int) -(magnitude % 10) << 4) | sign);
+        magnitude /= 10;
+        while (--pos >= bufferInit) {
+            int pair = (int) -(magnitude % 100);
+            buffer[pos] = (byte) (((pair / 10) << 4) | (pair % 10));
+            magnitude /= 100;
+        }
+    }
+
+    /**
+     * Decodes a signed number written as digits (<code>S9</code> with DISPLAY usage). Unless the sign is separate,
+     * it is overpunched on the first or last digit: a C zone (<code>{ABCDEFGHI</code>) is positive, a D zone
+     * (<code>}JKLMNOPQR</code>) is negative and a plain digit is positive. A separate sign is <code>+</code> or
+     * <code>-</code>.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param dd Descriptor of the field
+     * @return Value of the field, without any implied decimal point
+     */
+    static long decodeZoned(final byte[] buffer, final int bufferInit, final int bufferLen, final DataDescriptor dd) {
+        final CodePage codePage = dd.codePage;
+        int first = bufferInit;
+        int end = bufferInit + bufferLen;
+        boolean negative = false;
+        int signPos = -1;
+        if (dd.signSeparate) {
+            byte sign = buffer[dd.signLeading ? first++ : --end];
+            if (sign == codePage.minus) {
+                negative = true;
+            } else if (sign != codePage.plus) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+            }
+        } else {
+            signPos = dd.signLeading ? first : end - 1;
+        }
+        if (first >= end) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+
+        final boolean checked = end - first >= POW10.length;
+        long ret = 0;
+        for (int pos = first; pos < end; pos++) {
+            int digit;
+            if (pos == signPos) {
+                digit = codePage.overpunchValues[buffer[pos] & 0xFF];
+                if (digit >= 10) {
+                    negative = true;
+                    digit -= 10;
+                }
+            } else {
+                digit = codePage.digitValues[buffer[pos] & 0xFF];
+            }
+            if (digit < 0 || (checked && ret > (Long.MAX_VALUE - digit) / 10)) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+            }
+            ret = ret * 10 + digit;
+        }
+        return negative ? -ret : ret;
+    }
+
+    /**
+     * Encodes a signed number written as digits (<code>S9</code> with DISPLAY usage), with its sign overpunched or
+     * separate. As COBOL does, only the rightmost digits are kept if the value doesn't fit into the field.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param dd Descriptor of the field
+     * @param value Value to be encoded, without any implied decimal point
+     * @see #decodeZoned(byte[], int, int, DataDescriptor)
+     */
+    static void encodeZoned(final byte[] buffer, final int bufferInit, final int bufferLen, final DataDescriptor dd,
+                            final long value) {
+        final CodePage codePage = dd.codePage;
+        int first = bufferInit;
+        int end = bufferInit + bufferLen;
+        int signPos = -1;
+        if (dd.signSeparate) {
+            signPos = dd.signLeading ? first++ : --end;
+        }
+
+        // Works with the negative magnitude so Long.MIN_VALUE can be encoded too
+        long magnitude = value < 0 ? value : -value;
+        if (end - first < POW10.length) {
+            magnitude %= POW10[Math.max(end - first, 0)];
+        }
+        boolean negative = value < 0 && magnitude != 0;
+        if (dd.signSeparate) {
+            buffer[signPos] = negative ? codePage.minus : codePage.plus;
+        } else {
+            signPos = dd.signLeading ? first : end - 1;
+        }
+
+        for (int pos = end - 1; pos >= first; pos--) {
+            int digit = (int) -(magnitude % 10);
+            magnitude /= 10;
+            buffer[pos] = pos == signPos ? codePage.overpunchBytes[negative ? digit + 10 : digit]
+                    : codePage.digitBytes[digit];
+        }
+    }
+
+    /**
+     * Decodes a big-endian binary integer (COMP, COMP-4, COMP-5) of 2, 4 or 8 bytes.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param signed true if the field has a sign
+     * @return Value of the field, without any implied decimal point
+     */
+    static long decodeBinary(final byte[] buffer, final int bufferInit, final int bufferLen, final boolean signed) {
+        long ret = signed ? buffer[bufferInit] : buffer[bufferInit] & 0xFF;
+        for (int pos = bufferInit + 1; pos < bufferInit + bufferLen; pos++) {
+            ret = (ret << 8) | (buffer[pos] & 0xFF);
+        }
+        return ret;
+    }
+
+    /**
+     * Encodes a big-endian binary integer (COMP, COMP-4, COMP-5) of 2, 4 or 8 bytes. The value must have been
+     * truncated before.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param value Value to be encoded, without any implied decimal point
+     * @see #truncateBinary(DataDescriptor, long)
+     */
+    static void encodeBinary(final byte[] buffer, final int bufferInit, final int bufferLen, final long value) {
+        long v = value;
+        for (int pos = bufferInit + bufferLen - 1; pos >= bufferInit; pos--) {
+            buffer[pos] = (byte) v;
+            v >>= 8;
+        }
+    }
+
+    /**
+     * Truncates a value to be written into a binary field. With {@link BinaryTruncation#DECIMAL} only the rightmost
+     * digits of the PIC are kept and unsigned fields get the absolute value, as COBOL does. Native fields keep the
+     * value as is, so it wraps around when it's written if it doesn't fit into the field.
+     * @param dd Descriptor of the field
+     * @param value Value to be written
+     * @return the truncated value
+     */
+    static long truncateBinary(final DataDescriptor dd, final long value) {
+        if (dd.nativeBinary) {
+            return value;
+        }
+        long ret = value % POW10[dd.digits];
+        return dd.signed || ret >= 0 ? ret : -ret;
+    }
+
+    /**
+     * Adds a digit to a number being decoded negatively, checking it's a digit and the number doesn't overflow.
+     * @param ret Number decoded so far, as a negative or zero value
+     * @param digit Digit to be added
+     * @param limit Lowest value allowed
+     * @return the number with the digit added
+     */
+    private static long accumulateDigit(final long ret, final int digit, final long limit) {
+        if (digit > 9 || ret < limit / 10) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        long next = ret * 10;
+        if (next < limit + digit) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        return next - digit;
+    }
+
+    /**
+     * Decodes a number written as digits. An optional leading sign is accepted, any other character makes the value
+     * invalid.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param codePage Code page of the field
+     * @return Value of the field
+     */
+    static long decodeLong(final byte[] buffer, final int bufferInit, final int bufferLen, final CodePage codePage) {
+        int pos = bufferInit;
+        final int end = bufferInit + bufferLen;
+        if (pos == end) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+
+        boolean negative = false;
+        long limit = -Long.MAX_VALUE;
+        byte b = buffer[pos];
+        if (b == codePage.minus || b == codePage.plus) {
+            if (b == codePage.minus) {
+                negative = true;
+                limit = Long.MIN_VALUE;
+            }
+            pos++;
+            if (pos == end) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+            }
+        }
+
+        // Accumulated negatively so Long.MIN_VALUE can be decoded too
+        final byte[] digitValues = codePage.digitValues;
+        final long multmin = limit / 10;
+        long ret = 0;
+        for (; pos < end; pos++) {
+            int digit = digitValues[buffer[pos] & 0xFF];
+            if (digit < 0 || ret < multmin) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+            }
+            ret *= 10;
+            if (ret < limit + digit) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+            }
+            ret -= digit;
+        }
+        return negative ? ret : -ret;
+    }
+
+    /**
+     * Encodes a number as digits, filling the field with leading zeroes. Negative values get a leading minus sign.
+     * If the value doesn't fit into the field only the leftmost digits are kept, as previous versions did.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param codePage Code page of the field
+     * @param value Value to be encoded
+     */
+    static void encodeLong(final byte[] buffer, final int bufferInit, final int bufferLen, final CodePage codePage,
+                           final long value) {
+        int pos = bufferInit;
+        final int end = bufferInit + bufferLen;
+        if (pos == end) {
+            return;
+        }
+
+        // Works with the negative magnitude so Long.MIN_VALUE can be encoded too
+        long magnitude = value;
+        if (value < 0) {
+            buffer[pos++] = codePage.minus;
+        } else {
+            magnitude = -value;
+        }
+
+        for (int digits = countDigits(magnitude); digits > end - pos; digits--) {
+            magnitude /= 10;
+        }
+        final byte[] digitBytes = codePage.digitBytes;
+        for (int i = end - 1; i >= pos; i--) {
+            buffer[i] = digitBytes[(int) -(magnitude % 10)];
+            magnitude /= 10;
+        }
+    }
+
+    /**
+     * Decodes a String through the table of the code page, or with the default charset for
+     * {@link CodePage#DEFAULT}.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param codePage Code page of the field
+     * @return Value of the field
+     */
+    static String decodeString(final byte[] buffer, final int bufferInit, final int bufferLen,
+                               final CodePage codePage) {
+        if (codePage.usesPlatformCharset()) {
+            return new String(buffer, bufferInit, bufferLen);
+        }
+        char[] chars = new char[bufferLen];
+        for (int i = 0; i < bufferLen; i++) {
+            chars[i] = codePage.toChar(buffer[bufferInit + i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Encodes a String, filling the field with trailing spaces or truncating it if it's longer than the field.
+     * With {@link CodePage#DEFAULT}, ASCII values are written directly if the default charset encodes ASCII as itself,
+     * and any other value is encoded with the default charset.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param codePage Code page of the field
+     * @param value Value to be encoded, null is encoded as spaces
+     */
+    static void encodeString(final byte[] buffer, final int bufferInit, final int bufferLen, final CodePage codePage,
+                             final String value) {
+        if (codePage.usesPlatformCharset() && !ASCII_DEFAULT_CHARSET) {
+            encodeStringWithCharset(buffer, bufferInit, bufferLen, value == null ? "" : value);
+            return;
+        }
+        int valueLen = 0;
+        if (value != null) {
+            valueLen = Math.min(value.length(), bufferLen);
+            if (codePage.usesPlatformCharset()) {
+                for (int i = 0; i < valueLen; i++) {
+                    char c = value.charAt(i);
+                    if (c >= 0x80) {
+                        encodeStringWithCharset(buffer, bufferInit, bufferLen, value);
+                        return;
+                    }
+                    buffer[bufferInit + i] = (byte) c;
+                }
+            } else {
+                for (int i = 0; i < valueLen; i++) {
+                    buffer[bufferInit + i] = codePage.toByte(value.charAt(i));
+                }
+            }
+        }
+        Arrays.fill(buffer, bufferInit + valueLen, bufferInit + bufferLen, codePage.space);
+    }
+
+    /**
+     * Encodes a String using the default charset.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param value Value to be encoded
+     */
+    private static void encodeStringWithCharset(final byte[] buffer, final int bufferInit, final int bufferLen,
+                                                final String value) {
+        String processedValue = value;
+        if (bufferLen < value.length()) {
+            processedValue = value.substring(0, bufferLen);
+        } else if (bufferLen > value.length()) {
+            char[] c = new char[bufferLen - value.length()];
+            Arrays.fill(c, ' ');
+            processedValue = value + String.valueOf(c);
+        }
+        System.arraycopy(processedValue.getBytes(), 0, buffer, bufferInit, bufferLen);
+    }
+
+    /**
+     * Encodes a String using the default charset.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param value Value to be encoded
+     */
+    private static void encodeStringWithCharset(final ByteBuffer buffer, final int bufferInit, final int bufferLen,
+                                                final String value) {
+        byte[] bytes = new byte[bufferLen];
+        encodeStringWithCharset(bytes, 0, bufferLen, value);
+        for (int i = 0; i < bufferLen; i++) {
+            buffer.put(bufferInit + i, bytes[i]);
+        }
+    }
+
+    /**
+     * Counts the digits of a number
+     * @param negativeValue Number to count, as a negative or zero value
+     * @return Number of digits
+     */
+    private static int countDigits(final long negativeValue) {
+        int digits = 1;
+        for (long v = negativeValue / 10; v != 0; v /= 10) {
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * Decodes a number written as digits. An optional leading sign is accepted, any other character makes the value
+     * invalid.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param codePage Code page of the field
+     * @return Value of the field
+     */
+    static long decodeLong(final ByteBuffer buffer, final int bufferInit, final int bufferLen,
+                           final CodePage codePage) {
+        int pos = bufferInit;
+        final int end = bufferInit + bufferLen;
+        if (pos == end) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+
+        boolean negative = false;
+        long limit = -Long.MAX_VALUE;
+        byte b = buffer.get(pos);
+        if (b == codePage.minus || b == codePage.plus) {
+            if (b == codePage.minus) {
+                negative = true;
+                limit = Long.MIN_VALUE;
+            }
+            pos++;
+            if (pos == end) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+            }
+        }
+
+        final byte[] digitValues = codePage.digitValues;
+        final long multmin = limit / 10;
+        long ret = 0;
+        for (; pos < end; pos++) {
+            int digit = digitValues[buffer.get(pos) & 0xFF];
+            if (digit < 0 || ret < multmin) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+            }
+            ret *= 10;
+            if (ret < limit + digit) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+            }
+            ret -= digit;
+        }
+        return negative ? ret : -ret;
+    }
+
+    /**
+     * Decodes a String through the table of the code page, or with the default charset for
+     * {@link CodePage#DEFAULT}.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param codePage Code page of the field
+     * @return Value of the field
+     */
+    static String decodeString(final ByteBuffer buffer, final int bufferInit, final int bufferLen,
+                               final CodePage codePage) {
+        if (codePage.usesPlatformCharset()) {
+            byte[] bytes = new byte[bufferLen];
+            for (int i = 0; i < bufferLen; i++) {
+                bytes[i] = buffer.get(bufferInit + i);
+            }
+            return new String(bytes);
+        }
+        char[] chars = new char[bufferLen];
+        for (int i = 0; i < bufferLen; i++) {
+            chars[i] = codePage.toChar(buffer.get(bufferInit + i));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Encodes a number as digits, filling the field with leading zeroes.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param codePage Code page of the field
+     * @param value Value to be encoded
+     * @see #encodeLong(byte[], int, int, CodePage, long)
+     */
+    static void encodeLong(final ByteBuffer buffer, final int bufferInit, final int bufferLen,
+                           final CodePage codePage, final long value) {
+        int pos = bufferInit;
+        final int end = bufferInit + bufferLen;
+        if (pos == end) {
+            return;
+        }
+
+        long magnitude = value;
+        if (value < 0) {
+            buffer.put(pos++, codePage.minus);
+        } else {
+            magnitude = -value;
+        }
+
+        for (int digits = countDigits(magnitude); digits > end - pos; digits--) {
+            magnitude /= 10;
+        }
+        final byte[] digitBytes = codePage.digitBytes;
+        for (int i = end - 1; i >= pos; i--) {
+            buffer.put(i, digitBytes[(int) -(magnitude % 10)]);
+            magnitude /= 10;
+        }
+    }
+
+    /**
+     * Encodes a String, filling the field with trailing spaces or truncating it if it's longer than the field.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param codePage Code page of the field
+     * @param value Value to be encoded, null is encoded as spaces
+     * @see #encodeString(byte[], int, int, CodePage, String)
+     */
+    static void encodeString(final ByteBuffer buffer, final int bufferInit, final int bufferLen,
+                             final CodePage codePage, final String value) {
+        if (codePage.usesPlatformCharset() && !ASCII_DEFAULT_CHARSET) {
+            encodeStringWithCharset(buffer, bufferInit, bufferLen, value == null ? "" : value);
+            return;
+        }
+        int valueLen = 0;
+        if (value != null) {
+            valueLen = Math.min(value.length(), bufferLen);
+            for (int i = 0; i < valueLen; i++) {
+                char c = value.charAt(i);
+                if (codePage.usesPlatformCharset() && c >= 0x80) {
+                    encodeStringWithCharset(buffer, bufferInit, bufferLen, value);
+                    return;
+                }
+                buffer.put(bufferInit + i, codePage.toByte(c));
+            }
+        }
+        for (int i = bufferInit + valueLen; i < bufferInit + bufferLen; i++) {
+            buffer.put(i, codePage.space);
+        }
+    }
+
+    /**
+     * Decodes a numeric field of any type.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param dd Descriptor of the field
+     * @return Value of the field
+     */
+    static long decodeNumber(final ByteBuffer buffer, final int bufferInit, final int bufferLen,
+                             final DataDescriptor dd) {
+        switch (dd.type) {
+        case PACKED:
+            return decodePacked(buffer, bufferInit, bufferLen);
+        case BINARY:
+            return decodeBinary(buffer, bufferInit, bufferLen, dd.signed);
+        default:
+            if (dd.signed) {
+                return decodeZoned(buffer, bufferInit, bufferLen, dd);
+            }
+            return decodeLong(buffer, bufferInit, bufferLen, dd.codePage);
+        }
+    }
+
+    /**
+     * Encodes a numeric field of any type.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param dd Descriptor of the field
+     * @param value Value to be encoded
+     */
+    static void encodeNumber(final ByteBuffer buffer, final int bufferInit, final int bufferLen,
+                             final DataDescriptor dd, final long value) {
+        switch (dd.type) {
+        case PACKED:
+            encodePacked(buffer, bufferInit, bufferLen, dd.digits, dd.signed, value);
+            break;
+        case BINARY:
+            encodeBinary(buffer, bufferInit, bufferLen, truncateBinary(dd, value));
+            break;
+        default:
+            if (dd.signed) {
+                encodeZoned(buffer, bufferInit, bufferLen, dd, value);
+            } else {
+                encodeLong(buffer, bufferInit, bufferLen, dd.codePage, value);
+            }
+            break;
+        }
+    }
+
+    /**
+     * Decodes a packed decimal (COMP-3).
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @return Value of the field, without any implied decimal point
+     * @see #decodePacked(byte[], int, int)
+     */
+    static long decodePacked(final ByteBuffer buffer, final int bufferInit, final int bufferLen) {
+        if (bufferLen == 0) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        final int last = bufferInit + bufferLen - 1;
+        int lastByte = buffer.get(last) & 0xFF;
+        int sign = lastByte & 0x0F;
+        int lastDigit = lastByte >>> 4;
+        if (sign < 0x0A || lastDigit > 9) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        boolean negative = sign == 0x0D || sign == 0x0B;
+
+        long ret = 0;
+        if (bufferLen <= 9) {
+            for (int pos = bufferInit; pos < last; pos++) {
+                int pair = PACKED_PAIRS[buffer.get(pos) & 0xFF];
+                if (pair < 0) {
+                    throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+                }
+                ret = ret * 100 + pair;
+            }
+            ret = ret * 10 + lastDigit;
+            return negative ? -ret : ret;
+        }
+
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        for (int pos = bufferInit; pos <= last; pos++) {
+            int b = buffer.get(pos) & 0xFF;
+            ret = accumulateDigit(ret, b >>> 4, limit);
+            if (pos < last) {
+                ret = accumulateDigit(ret, b & 0x0F, limit);
+            }
+        }
+        return negative ? ret : -ret;
+    }
+
+    /**
+     * Encodes a packed decimal (COMP-3).
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param digits Number of digits of the field
+     * @param signed true if the field has a sign
+     * @param value Value to be encoded, without any implied decimal point
+     * @see #encodePacked(byte[], int, int, int, boolean, long)
+     */
+    static void encodePacked(final ByteBuffer buffer, final int bufferInit, final int bufferLen, final int digits,
+                             final boolean signed, final long value) {
+        if (bufferLen == 0) {
+            return;
+        }
+        long magnitude = value < 0 ? value : -value;
+        if (digits < POW10.length) {
+            magnitude %= POW10[digits];
+        }
+        int sign = signed ? (value < 0 && magnitude != 0 ? 0x0D : 0x0C) : 0x0F;
+
+        int pos = bufferInit + bufferLen - 1;
+        buffer.put(pos, (byte) (((int) -(magnitude % 10) << 4) | sign));
+        magnitude /= 10;
+        while (--pos >= bufferInit) {
+            int pair = (int) -(magnitude % 100);
+            buffer.put(pos, (byte) (((pair / 10) << 4) | (pair % 10)));
+            magnitude /= 100;
+        }
+    }
+
+    /**
+     * Decodes a signed number written as digits (<code>S9</code> with DISPLAY usage).
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param dd Descriptor of the field
+     * @return Value of the field, without any implied decimal point
+     * @see #decodeZoned(byte[], int, int, DataDescriptor)
+     */
+    static long decodeZoned(final ByteBuffer buffer, final int bufferInit, final int bufferLen,
+                            final DataDescriptor dd) {
+        final CodePage codePage = dd.codePage;
+        int first = bufferInit;
+        int end = bufferInit + bufferLen;
+        boolean negative = false;
+        int signPos = -1;
+        if (dd.signSeparate) {
+            byte sign = buffer.get(dd.signLeading ? first++ : --end);
+            if (sign == codePage.minus) {
+                negative = true;
+            } else if (sign != codePage.plus) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+            }
+        } else {
+            signPos = dd.signLeading ? first : end - 1;
+        }
+        if (first >= end) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+
+        final boolean checked = end - first >= POW10.length;
+        long ret = 0;
+        for (int pos = first; pos < end; pos++) {
+            int digit;
+            if (pos == signPos) {
+                digit = codePage.overpunchValues[buffer.get(pos) & 0xFF];
+                if (digit >= 10) {
+                    negative = true;
+                    digit -= 10;
+                }
+            } else {
+                digit = codePage.digitValues[buffer.get(pos) & 0xFF];
+            }
+            if (digit < 0 || (checked && ret > (Long.MAX_VALUE - digit) / 10)) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+            }
+            ret = ret * 10 + digit;
+        }
+        return negative ? -ret : ret;
+    }
+
+    /**
+     * Encodes a signed number written as digits (<code>S9</code> with DISPLAY usage).
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param dd Descriptor of the field
+     * @param value Value to be encoded, without any implied decimal point
+     * @see #encodeZoned(byte[], int, int, DataDescriptor, long)
+     */
+    static void encodeZoned(final ByteBuffer buffer, final int bufferInit, final int bufferLen,
+                            final DataDescriptor dd, final long value) {
+        final CodePage codePage = dd.codePage;
+        int first = bufferInit;
+        int end = bufferInit + bufferLen;
+        int signPos = -1;
+        if (dd.signSeparate) {
+            signPos = dd.signLeading ? first++ : --end;
+        }
+
+        long magnitude = value < 0 ? value : -value;
+        if (end - first < POW10.length) {
+            magnitude %= POW10[Math.max(end - first, 0)];
+        }
+        boolean negative = value < 0 && magnitude != 0;
+        if (dd.signSeparate) {
+            buffer.put(signPos, negative ? codePage.minus : codePage.plus);
+        } else {
+            signPos = dd.signLeading ? first : end - 1;
+        }
+
+        for (int pos = end - 1; pos >= first; pos--) {
+            int digit = (int) -(magnitude % 10);
+            magnitude /= 10;
+            buffer.put(pos, pos == signPos ? codePage.overpunchBytes[negative ? digit + 10 : digit]
+                    : codePage.digitBytes[digit]);
+        }
+    }
+
+    /**
+     * Decodes a big-endian binary integer (COMP, COMP-4, COMP-5) of 2, 4 or 8 bytes with a single read. Buffers
+     * with little-endian order are read as big-endian too.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param signed true if the field has a sign
+     * @return Value of the field, without any implied decimal point
+     */
+    static long decodeBinary(final ByteBuffer buffer, final int bufferInit, final int bufferLen,
+                             final boolean signed) {
+        boolean swap = buffer.order() != ByteOrder.BIG_ENDIAN;
+        switch (bufferLen) {
+        case 2:
+            short s = buffer.getShort(bufferInit);
+            if (swap) {
+                s = Short.reverseBytes(s);
+            }
+            return signed ? s : s & 0xFFFF;
+        case 4:
+            int i = buffer.getInt(bufferInit);
+            if (swap) {
+                i = Integer.reverseBytes(i);
+            }
+            return signed ? i : i & 0xFFFFFFFFL;
+        case 8:
+            long l = buffer.getLong(bufferInit);
+            return swap ? Long.reverseBytes(l) : l;
+        default:
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+    }
+
+    /**
+     * Encodes a big-endian binary integer (COMP, COMP-4, COMP-5) of 2, 4 or 8 bytes with a single write. The value
+     * must have been truncated before.
+     * @param buffer Buffer holding the field
+     * @param bufferInit Starting position of the field
+     * @param bufferLen Length of the field
+     * @param value Value to be encoded, without any implied decimal point
+     * @see #truncateBinary(DataDescriptor, long)
+     */
+    static void encodeBinary(final ByteBuffer buffer, final int bufferInit, final int bufferLen, final long value) {
+        boolean swap = buffer.order() != ByteOrder.BIG_ENDIAN;
+        switch (bufferLen) {
+        case 2:
+            buffer.putShort(bufferInit, swap ? Short.reverseBytes((short) value) : (short) value);
+            break;
+        case 4:
+            buffer.putInt(bufferInit, swap ? Integer.reverseBytes((int) value) : (int) value);
+            break;
+        case 8:
+            buffer.putLong(bufferInit, swap ? Long.reverseBytes(value) : value);
+            break;
+        default:
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.conzebit.bufferdescriptor;
+
+import java.io.Serializable;
+
+/**
+ * A field already resolved against a BufferDescriptor structure.<br />
+ * <br />
+ * Name based access (<code>bd.getString("PHONE(2)")</code>) has to compose the indexed name and look it up on every
+ * call. A FieldHandle does that work once and keeps the position, length and type of the field, so it can be reused
+ * for any number of reads and writes:<br />
+ * <br />
+ * <b><code>
+ * FieldHandle phone = bd.field("PHONE", 2);<br />
+ * String value = bd.getString(phone);
+ * </code></b><br />
+ * <br />
+ * A FieldHandle is immutable and can be used with any record of the RecordLayout it was resolved from.
+ */
+public final class FieldHandle implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final RecordLayout layout;
+    final DataDescriptor descriptor;
+    final int bufferInit;
+    final int bufferLen;
+    private final String name;
+    private final int[] index;
+
+    FieldHandle(final RecordLayout layout, final String name, final int[] index, final DataDescriptor descriptor,
+                final int bufferInit, final int bufferLen) {
+        this.layout = layout;
+        this.descriptor = descriptor;
+        this.bufferInit = bufferInit;
+        this.bufferLen = bufferLen;
+        this.name = name;
+        this.index = index;
+    }
+
+    /**
+     * Returns the full name of the field, including indexes if any.
+     * @return Name of the field
+     */
+    public String getName() {
+        if (this.index.length == 0) {
+            return this.name;
+        }
+        StringBuilder sb = new StringBuilder(this.name);
+        for (int i : this.index) {
+            sb.append('(').append(i).append(')');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the position of the first byte of the field inside the record.
+     * @return Position of the field
+     */
+    public int getOffset() {
+        return this.bufferInit;
+    }
+
+    /**
+     * Returns the length in bytes of the field.
+     * @return Length of the field
+     */
+    public int getLength() {
+        return this.bufferLen;
+    }
+
+    /**
+     * Returns the number of digits after the implied decimal point, as in <code>9(7)V99</code>.
+     * @return Scale of the field
+     */
+    public int getScale() {
+        return this.descriptor.scale;
+    }
+
+    /**
+     * Returns the code page the field is encoded with.
+     * @return Code page of the field
+     */
+    public CodePage getCodePage() {
+        return this.descriptor.codePage;
+    }
+
+    @Override
+    public String toString() {
+        return this.getName() + '[' + this.bufferInit + ',' + this.bufferLen + ']';
+    }
+}
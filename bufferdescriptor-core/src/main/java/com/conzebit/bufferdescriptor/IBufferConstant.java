@@ -11,6 +11,22 @@ public interface IBufferConstant {
 	public static final String ERROR_BUFFER_SIZE = "Buffer with wrong size";
 	public static final String ERROR_NULL_FORMAT = "Format null";
 	public static final String ERROR_INVALID_VALUE = "Invalid value";
+	public static final String ERROR_NO_ARRAY = "The buffer is not backed by an accessible array";
+	public static final String ERROR_FILE_SIZE = "File size is not a multiple of the record length";
+	public static final String ERROR_TRUNCATED_RECORD = "Stream ended in the middle of a record";
+	public static final String ERROR_INVALID_RDW = "Invalid Record Descriptor Word";
+	public static final String ERROR_NO_RECORD = "There is no current record";
+	public static final String ERROR_FOREIGN_HANDLE = "The field handle belongs to a different descriptor";
+	public static final String ERROR_INVALID_CODE_PAGE = "Unknown code page";
+	public static final String ERROR_INVALID_DATE_FORMAT = "Incorrect date format";
+	public static final String ERROR_NO_DATE_FORMAT = "The field has no date format";
+	public static final String ERROR_INVALID_COPYBOOK = "Invalid copybook entry:";
+	public static final String ERROR_INVALID_SNAPSHOT = "Invalid layout snapshot";
+	public static final String ERROR_INVALID_ACCESSOR = "Method can't be bound to a field: ";
+	public static final String ERROR_INVALID_MAPPING = "Java field can't be mapped to a record field: ";
+	public static final String ERROR_FOREIGN_RECORD = "The record belongs to a different layout";
+	public static final String ERROR_FOREIGN_BATCH = "The batch belongs to a different extractor";
+	public static final String ERROR_INVALID_REDEFINES = "REDEFINES must name the previous field of the same level: ";
 	public static final String ERROR_ILLEGAL_INSERTION =
             "Trying to insert a Descriptor inside a descriptor with length greater than zero";
 }
@@ -0,0 +1,248 @@
+package com.conzebit.bufferdescriptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Internal helper class used by RecordLayout to write and read layout snapshots.<br />
+ * <br />
+ * A snapshot is a compact binary image of a layout: a header, the code pages in use and then every field in
+ * declaration order with its number of children, so the tree, the positions and the name map are rebuilt in a single
+ * pass without parsing PICs or walking the tree again:<br />
+ * <br />
+ * <code>
+ * magic "BDLS", version, record length, field count, code pages<br />
+ * field: level, name, type, length, occurs, digits, scale, flags, code page, position, length of an occurrence,
+ * [date pattern], [value], [redefined field], children
+ * </code><br />
+ * <br />
+ * Snapshots of version 1, written before REDEFINES was supported, are still read.
+ */
+final class LayoutSnapshot {
+
+    private static final int MAGIC = 0x42444C53;
+    private static final int VERSION = 2;
+    private static final DataDescriptor.Type[] TYPES = DataDescriptor.Type.values();
+
+    private static final int SIGNED = 0x01;
+    private static final int SIGN_LEADING = 0x02;
+    private static final int SIGN_SEPARATE = 0x04;
+    private static final int NATIVE_BINARY = 0x08;
+    private static final int DATE = 0x10;
+    private static final int VALUE = 0x20;
+    private static final int REDEFINES = 0x40;
+
+    private LayoutSnapshot() {
+    }
+
+    /**
+     * Writes the snapshot of a layout.
+     * @param layout Layout to be written
+     * @param fields Fields of the layout
+     * @return the snapshot
+     */
+    static byte[] write(final RecordLayout layout, final int fields) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + fields * 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(layout.recordLength);
+            out.writeInt(fields);
+
+            List<CodePage> codePages = new ArrayList<CodePage>();
+            collectCodePages(layout.rootDataDescriptor, codePages);
+            out.writeByte(codePages.size());
+            for (CodePage codePage : codePages) {
+                out.writeUTF(codePage.getName());
+            }
+
+            List<DataDescriptor> pending = new ArrayList<DataDescriptor>();
+            pending.add(layout.rootDataDescriptor);
+            while (!pending.isEmpty()) {
+                DataDescriptor dd = pending.remove(pending.size() - 1);
+                writeField(out, dd, codePages.indexOf(dd.codePage));
+                for (int i = dd.children.size() - 1; i >= 0; i--) {
+                    pending.add(dd.children.get(i));
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Never thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Collects the code pages used by a field and its children.
+     * @param dd Field
+     * @param codePages Code pages found so far
+     */
+    private static void collectCodePages(final DataDescriptor dd, final List<CodePage> codePages) {
+        if (!codePages.contains(dd.codePage)) {
+            codePages.add(dd.codePage);
+        }
+        for (DataDescriptor child : dd.children) {
+            collectCodePages(child, codePages);
+        }
+    }
+
+    /**
+     * Writes a field.
+     * @param out Output of the snapshot
+     * @param dd Field to be written
+     * @param codePage Index of the code page of the field
+     * @throws IOException never, the output is an array
+     */
+    private static void writeField(final DataOutputStream out, final DataDescriptor dd, final int codePage)
+            throws IOException {
+        int flags = (dd.signed ? SIGNED : 0) | (dd.signLeading ? SIGN_LEADING : 0)
+                | (dd.signSeparate ? SIGN_SEPARATE : 0) | (dd.nativeBinary ? NATIVE_BINARY : 0)
+                | (dd.datePattern != null ? DATE : 0) | (dd.value != null ? VALUE : 0)
+                | (dd.redefines != null ? REDEFINES : 0);
+        out.writeByte(dd.levelNumber);
+        out.writeUTF(dd.name);
+        out.writeByte(dd.type.ordinal());
+        out.writeInt(dd.length);
+        out.writeInt(dd.occurs);
+        out.writeShort(dd.digits);
+        out.writeShort(dd.scale);
+        out.writeByte(flags);
+        out.writeByte(codePage);
+        out.writeInt(dd.bufferInit);
+        out.writeInt(dd.bufferLen);
+        if (dd.datePattern != null) {
+            out.writeUTF(dd.datePattern.getPattern());
+        }
+        if (dd.value != null) {
+            out.writeUTF(dd.value);
+            out.writeLong(dd.unscaledValue);
+        }
+        if (dd.redefines != null) {
+            out.writeUTF(dd.redefines);
+        }
+        out.writeInt(dd.children.size());
+    }
+
+    /**
+     * Reads a layout from its snapshot.
+     * @param snapshot Snapshot written by {@link #write(RecordLayout, int)}
+     * @return the layout
+     */
+    static RecordLayout read(final byte[] snapshot) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_SNAPSHOT);
+            }
+            short version = in.readShort();
+            if (version < 1 || version > VERSION) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_SNAPSHOT);
+            }
+            int recordLength = in.readInt();
+            int fields = in.readInt();
+            if (recordLength < 0 || fields <= 0 || fields > snapshot.length) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_SNAPSHOT);
+            }
+            CodePage[] codePages = new CodePage[in.readUnsignedByte()];
+            for (int i = 0; i < codePages.length; i++) {
+                codePages[i] = CodePage.forName(in.readUTF());
+            }
+
+            Map<String, DataDescriptor> hash = new HashMap<String, DataDescriptor>(fields * 4 / 3 + 1);
+            DataDescriptor[] parents = new DataDescriptor[fields];
+            int[] pendingChildren = new int[fields];
+            int depth = 0;
+            DataDescriptor root = null;
+            for (int i = 0; i < fields; i++) {
+                while (depth > 0 && pendingChildren[depth - 1] == 0) {
+                    depth--;
+                }
+                if (i > 0 && depth == 0) {
+                    throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_SNAPSHOT);
+                }
+                DataDescriptor parent = depth == 0 ? null : parents[depth - 1];
+                DataDescriptor dd = readField(in, parent, codePages);
+                if (parent == null) {
+                    root = dd;
+                } else {
+                    pendingChildren[depth - 1]--;
+                    parent.children.add(dd);
+                }
+                if (dd.bufferInit < 0 || dd.bufferLen < 0 || (long) dd.bufferInit + dd.bufferLen > recordLength
+                        || hash.put(dd.name, dd) != null) {
+                    throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_SNAPSHOT);
+                }
+
+                int children = in.readInt();
+                if (children < 0 || children > fields) {
+                    throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_SNAPSHOT);
+                }
+                if (children > 0) {
+                    parents[depth] = dd;
+                    pendingChildren[depth] = children;
+                    depth++;
+                }
+            }
+            while (depth > 0 && pendingChildren[depth - 1] == 0) {
+                depth--;
+            }
+            if (depth > 0 || in.available() > 0) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_SNAPSHOT);
+            }
+            return new RecordLayout(root, recordLength, hash);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_SNAPSHOT);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_SNAPSHOT);
+        }
+    }
+
+    /**
+     * Reads a field, with its dimensions set from the ones of its parent.
+     * @param in Input of the snapshot
+     * @param parent Parent of the field, null for the root
+     * @param codePages Code pages of the snapshot
+     * @return the field, without children
+     * @throws IOException if the snapshot is truncated
+     */
+    private static DataDescriptor readField(final DataInputStream in, final DataDescriptor parent,
+                                            final CodePage[] codePages) throws IOException {
+        int levelNumber = in.readUnsignedByte();
+        String name = in.readUTF();
+        DataDescriptor.Type type = TYPES[in.readUnsignedByte()];
+        DataDescriptor dd = new DataDescriptor(levelNumber, name, in.readInt(), in.readInt(), type);
+        dd.digits = in.readShort();
+        dd.scale = in.readShort();
+        int flags = in.readUnsignedByte();
+        dd.signed = (flags & SIGNED) != 0;
+        dd.signLeading = (flags & SIGN_LEADING) != 0;
+        dd.signSeparate = (flags & SIGN_SEPARATE) != 0;
+        dd.nativeBinary = (flags & NATIVE_BINARY) != 0;
+        dd.codePage = codePages[in.readUnsignedByte()];
+        dd.bufferInit = in.readInt();
+        dd.bufferLen = in.readInt();
+        if ((flags & DATE) != 0) {
+            dd.datePattern = DatePattern.of(in.readUTF());
+        }
+        if ((flags & VALUE) != 0) {
+            dd.value = in.readUTF();
+            dd.unscaledValue = in.readLong();
+        }
+        if ((flags & REDEFINES) != 0) {
+            dd.redefines = in.readUTF();
+        }
+
+        dd.parent = parent;
+        dd.inheritDimensions();
+        return dd;
+    }
+}
@@ -0,0 +1,233 @@
+package com.conzebit.bufferdescriptor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file of fixed length records by mapping it into memory.<br />
+ * <br />
+ * Each record is read in place from the mapped pages through a single BufferDescriptor that is moved from record
+ * to record, so nothing is copied nor allocated while reading:<br />
+ * <br />
+ * <code>
+ * MappedRecordReader reader = new MappedRecordReader(layout, new File("clients.dat"));<br />
+ * try {<br />
+ * &nbsp;while (reader.next()) {<br />
+ * &nbsp;&nbsp;BufferDescriptor record = reader.getRecord();<br />
+ * &nbsp;&nbsp;long max = record.getLong("MAX_PURCHASE_ALLOWED");<br />
+ * &nbsp;}<br />
+ * } finally {<br />
+ * &nbsp;reader.close();<br />
+ * }
+ * </code><br />
+ * <br />
+ * Files bigger than 2 GB are mapped as consecutive regions, each one holding a whole number of records so no record
+ * is split between two of them. The BufferDescriptor returned by {@link #getRecord()} is reused, so it must not be
+ * kept after calling {@link #next()} again. Mapped records are read only.
+ */
+public final class MappedRecordReader implements Closeable {
+
+    private final RecordLayout layout;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] regions;
+    private final int recordsPerRegion;
+    private final long recordCount;
+
+    private final long opened = RecordMetrics.active == null ? 0 : System.nanoTime();
+    private RecordFilter filter = null;
+    private BufferDescriptor record = null;
+    private long recordNumber = -1;
+    private int region = 0;
+    private int regionRecord = -1;
+    private long recordsRead = 0;
+    private boolean closed = false;
+
+    /**
+     * Maps a file of records.
+     * @param layout Layout of the records
+     * @param file File to be read. Its size must be a multiple of the record length.
+     * @throws IOException if the file can't be mapped
+     */
+    public MappedRecordReader(final RecordLayout layout, final File file) throws IOException {
+        this(layout, file, Integer.MAX_VALUE / Math.max(layout.getRecordLength(), 1));
+    }
+
+    /**
+     * Maps a file of records using regions of the given number of records.
+     * @param layout Layout of the records
+     * @param file File to be read
+     * @param recordsPerRegion Maximum number of records of a mapped region
+     * @throws IOException if the file can't be mapped
+     */
+    MappedRecordReader(final RecordLayout layout, final File file, final int recordsPerRegion) throws IOException {
+        int recordLength = layout.getRecordLength();
+        if (recordLength <= 0) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+        this.layout = layout;
+        this.recordsPerRegion = recordsPerRegion;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+        try {
+            long size = this.channel.size();
+            if (size % recordLength != 0) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_FILE_SIZE);
+            }
+            this.recordCount = size / recordLength;
+
+            long regionSize = (long) recordsPerRegion * recordLength;
+            this.regions = new MappedByteBuffer[(int) ((size + regionSize - 1) / regionSize)];
+            for (int i = 0; i < this.regions.length; i++) {
+                long start = i * regionSize;
+                this.regions[i] = this.channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(regionSize, size - start));
+            }
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        } catch (RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the layout of the records.
+     * @return the layout
+     */
+    public RecordLayout getLayout() {
+        return this.layout;
+    }
+
+    /**
+     * Returns the number of records of the file.
+     * @return number of records
+     */
+    public long getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * Returns the number of the current record, starting from zero, or -1 if there is no current record yet.
+     * @return number of the current record
+     */
+    public long getRecordNumber() {
+        return this.recordNumber;
+    }
+
+    /**
+     * Sets a filter so {@link #next()} skips the records it doesn't accept. Skipped records are checked on the mapped
+     * bytes and never reach the BufferDescriptor returned by {@link #getRecord()}.
+     * @param filter Filter of the layout of this reader, or null to read every record
+     */
+    public void setFilter(final RecordFilter filter) {
+        if (filter != null && filter.getLayout() != this.layout) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_FOREIGN_RECORD);
+        }
+        this.filter = filter;
+    }
+
+    /**
+     * Moves to the next record accepted by the filter, if any.
+     * @return true if there is a next record, false at the end of the file
+     */
+    public boolean next() {
+        do {
+            if (this.recordNumber + 1 >= this.recordCount) {
+                return false;
+            }
+            this.recordNumber++;
+            this.recordsRead++;
+            this.regionRecord++;
+            if (this.regionRecord == this.recordsPerRegion) {
+                this.region++;
+                this.regionRecord = 0;
+            }
+        } while (this.filter != null
+                && !this.filter.accept(this.regions[this.region], this.regionRecord * this.layout.recordLength));
+        this.moveRecord();
+        return true;
+    }
+
+    /**
+     * Moves to the given record, so the following call to {@link #next()} moves to the record after it.
+     * @param number Number of the record, starting from zero
+     */
+    public void seek(final long number) {
+        if (number < 0 || number >= this.recordCount) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+        this.recordNumber = number;
+        this.region = (int) (number / this.recordsPerRegion);
+        this.regionRecord = (int) (number % this.recordsPerRegion);
+        this.moveRecord();
+    }
+
+    /**
+     * Returns the current record. The same BufferDescriptor is returned for every record.
+     * @return the current record
+     */
+    public BufferDescriptor getRecord() {
+        if (this.record == null) {
+            throw new IllegalStateException(IBufferConstant.ERROR_NO_RECORD);
+        }
+        return this.record;
+    }
+
+    /**
+     * Closes the file. Mapped regions are released by the garbage collector.
+     * @throws IOException if the file can't be closed
+     */
+    public void close() throws IOException {
+        this.channel.close();
+        this.reportRecordsRead();
+    }
+
+    /**
+     * Sends the number of records read and the time since this reader was opened to the metrics, if enabled. Only
+     * the first call sends them, so a reader closed twice is reported once.
+     */
+    private void reportRecordsRead() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        RecordMetrics metrics = RecordMetrics.active;
+        if (metrics != null && this.opened != 0) {
+            metrics.recordsRead(this.layout, this.recordsRead, System.nanoTime() - this.opened);
+        }
+    }
+
+    /**
+     * Returns the mapped regions of the file.
+     * @return mapped regions
+     */
+    MappedByteBuffer[] getRegions() {
+        return this.regions;
+    }
+
+    /**
+     * Returns the number of records of every mapped region but the last one.
+     * @return records per region
+     */
+    int getRecordsPerRegion() {
+        return this.recordsPerRegion;
+    }
+
+    /**
+     * Points the record view to the current record.
+     */
+    private void moveRecord() {
+        int index = this.regionRecord * this.layout.recordLength;
+        if (this.record == null) {
+            this.record = this.layout.wrap(this.regions[this.region], index);
+        } else {
+            this.record.setBuffer(this.regions[this.region], index);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.conzebit.bufferdescriptor;
+
+/**
+ * Receives the metrics collected by {@link RecordMetrics}.<br />
+ * <br />
+ * Layout builds, failed accesses and reader throughput are sent as they happen, from the thread that caused them.
+ * Field counters are kept in {@link RecordMetrics} and sent when {@link RecordMetrics#report()} is called, usually
+ * from a scheduled task, so a sink never sees a call per field access. Implementations must be thread safe.<br />
+ * <br />
+ * <code>JfrMetricsSink</code>, in the <code>bufferdescriptor-jfr</code> module, publishes everything as Flight Recorder
+ * events.
+ */
+public interface MetricsSink {
+
+    /**
+     * A layout has been built, by BufferBuilder, CopybookParser or from a snapshot.
+     * @param layout Layout built
+     * @param nanos Time taken, from the creation of the builder or the start of loading the snapshot
+     */
+    void layoutBuilt(RecordLayout layout, long nanos);
+
+    /**
+     * Counters of a field, sent by {@link RecordMetrics#report()}. Counters are totals since metrics were enabled or
+     * reset, not since the previous report.
+     * @param layout Layout of the field
+     * @param field Declared name of the field
+     * @param reads Number of reads of any occurrence of the field
+     * @param writes Number of writes of any occurrence of the field
+     */
+    void fieldAccessed(RecordLayout layout, String field, long reads, long writes);
+
+    /**
+     * An access to a field has failed: the field doesn't exist or its value can't be decoded or encoded.
+     * @param layout Layout of the record
+     * @param field Name of the field, as given by the caller
+     * @param error Message of the exception thrown to the caller
+     */
+    void accessFailed(RecordLayout layout, String field, String error);
+
+    /**
+     * A reader has been closed.
+     * @param layout Layout of the records
+     * @param records Number of records read, including the ones skipped by a filter
+     * @param nanos Time since the reader was opened
+     */
+    void recordsRead(RecordLayout layout, long records, long nanos);
+}
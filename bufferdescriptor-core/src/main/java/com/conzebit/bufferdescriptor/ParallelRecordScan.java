@@ -0,0 +1,148 @@
+package com.conzebit.bufferdescriptor;
+
+import java.nio.ByteBuffer;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Processes the records of a file or a memory region in parallel.<br />
+ * <br />
+ * As every record has the length of the layout, the records are split in chunks by arithmetic and each chunk is
+ * read by a different thread through its own BufferDescriptor. Records can be processed on a ForkJoinPool:<br />
+ * <br />
+ * <code>
+ * final LongAdder total = new LongAdder();<br />
+ * ParallelRecordScan.forEach(ForkJoinPool.commonPool(), reader, new Consumer&lt;BufferDescriptor&gt;() {<br />
+ * &nbsp;public void accept(BufferDescriptor record) {<br />
+ * &nbsp;&nbsp;total.add(record.getLong("MAX_PURCHASE_ALLOWED"));<br />
+ * &nbsp;}<br />
+ * });
+ * </code><br />
+ * <br />
+ * or as a parallel stream:<br />
+ * <br />
+ * <code>
+ * long total = ParallelRecordScan.stream(reader).mapToLong(r -&gt; r.getLong("MAX_PURCHASE_ALLOWED")).sum();
+ * </code><br />
+ * <br />
+ * The BufferDescriptor passed for each record is reused for the following records of the same chunk, so it must
+ * not be kept. Records are read only.
+ */
+public final class ParallelRecordScan {
+
+    private static final int TASKS_PER_THREAD = 8;
+    private static final int MIN_TASK_RECORDS = 1024;
+
+    private ParallelRecordScan() {
+    }
+
+    /**
+     * Returns a spliterator over all the records of a mapped file. It doesn't change the current record of the
+     * reader.
+     * @param reader Mapped file
+     * @return a spliterator over the records
+     */
+    public static Spliterator<BufferDescriptor> spliterator(final MappedRecordReader reader) {
+        return new RecordSpliterator(reader.getLayout(), reader.getRegions(), reader.getRecordsPerRegion(), 0,
+                reader.getRecordCount());
+    }
+
+    /**
+     * Returns a spliterator over the records held by a ByteBuffer, from its position to its limit.
+     * @param layout Layout of the records
+     * @param region Buffer holding the records. The bytes between its position and its limit must be a multiple of
+     *               the record length.
+     * @return a spliterator over the records
+     */
+    public static Spliterator<BufferDescriptor> spliterator(final RecordLayout layout, final ByteBuffer region) {
+        int recordLength = layout.getRecordLength();
+        if (recordLength <= 0 || region.remaining() % recordLength != 0) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+        int count = region.remaining() / recordLength;
+        return new RecordSpliterator(layout, new ByteBuffer[] {region.slice()}, Math.max(count, 1), 0, count);
+    }
+
+    /**
+     * Returns a parallel stream over all the records of a mapped file.
+     * @param reader Mapped file
+     * @return a parallel stream of records
+     */
+    public static Stream<BufferDescriptor> stream(final MappedRecordReader reader) {
+        return StreamSupport.stream(spliterator(reader), true);
+    }
+
+    /**
+     * Returns a parallel stream over the records held by a ByteBuffer, from its position to its limit.
+     * @param layout Layout of the records
+     * @param region Buffer holding the records
+     * @return a parallel stream of records
+     */
+    public static Stream<BufferDescriptor> stream(final RecordLayout layout, final ByteBuffer region) {
+        return StreamSupport.stream(spliterator(layout, region), true);
+    }
+
+    /**
+     * Processes all the records of a mapped file on a ForkJoinPool, waiting until all of them are processed.
+     * @param pool Pool where records are processed
+     * @param reader Mapped file
+     * @param action Action to be applied to every record. It's called from several threads at the same time.
+     */
+    public static void forEach(final ForkJoinPool pool, final MappedRecordReader reader,
+                               final Consumer<? super BufferDescriptor> action) {
+        forEach(pool, spliterator(reader), action);
+    }
+
+    /**
+     * Processes the records held by a ByteBuffer on a ForkJoinPool, waiting until all of them are processed.
+     * @param pool Pool where records are processed
+     * @param layout Layout of the records
+     * @param region Buffer holding the records, from its position to its limit
+     * @param action Action to be applied to every record. It's called from several threads at the same time.
+     */
+    public static void forEach(final ForkJoinPool pool, final RecordLayout layout, final ByteBuffer region,
+                               final Consumer<? super BufferDescriptor> action) {
+        forEach(pool, spliterator(layout, region), action);
+    }
+
+    private static void forEach(final ForkJoinPool pool, final Spliterator<BufferDescriptor> records,
+                                final Consumer<? super BufferDescriptor> action) {
+        long threshold = Math.max(MIN_TASK_RECORDS,
+                records.estimateSize() / ((long) pool.getParallelism() * TASKS_PER_THREAD));
+        pool.invoke(new ScanTask(records, action, threshold));
+    }
+
+    /**
+     * Splits its records until there are few enough to be processed by a single task.
+     */
+    private static final class ScanTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Spliterator<BufferDescriptor> records;
+        private final Consumer<? super BufferDescriptor> action;
+        private final long threshold;
+
+        ScanTask(final Spliterator<BufferDescriptor> records, final Consumer<? super BufferDescriptor> action,
+                 final long threshold) {
+            this.records = records;
+            this.action = action;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            Spliterator<BufferDescriptor> prefix;
+            if (this.records.estimateSize() > this.threshold && (prefix = this.records.trySplit()) != null) {
+                invokeAll(new ScanTask(prefix, this.action, this.threshold),
+                        new ScanTask(this.records, this.action, this.threshold));
+            } else {
+                this.records.forEachRemaining(this.action);
+            }
+        }
+    }
+}
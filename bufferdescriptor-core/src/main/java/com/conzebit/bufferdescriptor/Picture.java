@@ -0,0 +1,211 @@
+package com.conzebit.bufferdescriptor;
+
+import java.util.Locale;
+
+/**
+ * Internal helper class used by BufferBuilder to parse the PIC of a field, its usage and its sign.<br />
+ * <br />
+ * The following forms are accepted, with or without a leading <code>PIC</code>:<br />
+ * <br />
+ * <code>
+ * X(10)&nbsp;&nbsp;XXX&nbsp;&nbsp;A(5)<br />
+ * 9(4)&nbsp;&nbsp;999&nbsp;&nbsp;9(7)V99&nbsp;&nbsp;S9(5)V99&nbsp;&nbsp;S9(5) SIGN LEADING SEPARATE<br />
+ * S9(13)V99 COMP-3&nbsp;&nbsp;9(5) PACKED-DECIMAL<br />
+ * S9(9) COMP&nbsp;&nbsp;9(4) BINARY&nbsp;&nbsp;S9(18) COMP-5
+ * </code>
+ */
+final class Picture {
+
+    private static final int MAX_LENGTH = 0x7FFFFFF;
+
+    DataDescriptor.Type type = DataDescriptor.Type.NUMBER;
+    int length;
+    int digits;
+    int scale;
+    boolean signed;
+    boolean signLeading;
+    boolean signSeparate;
+    boolean nativeBinary;
+
+    private Picture() {
+    }
+
+    /**
+     * Parses a PIC.
+     * @param pic PIC of the field, null for group fields
+     * @return the parsed PIC
+     */
+    static Picture parse(final String pic) {
+        Picture picture = new Picture();
+        if (pic == null) {
+            picture.type = DataDescriptor.Type.STRING;
+            return picture;
+        }
+
+        String clause = pic.trim();
+        if (clause.endsWith(".")) {
+            clause = clause.substring(0, clause.length() - 1);
+        }
+        String[] tokens = clause.toUpperCase(Locale.ENGLISH).split("\\s+");
+        int t = 0;
+        if (t < tokens.length && ("PIC".equals(tokens[t]) || "PICTURE".equals(tokens[t]))) {
+            t = skipIs(tokens, t + 1);
+        }
+        if (t >= tokens.length) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
+        }
+        String symbols = tokens[t++];
+
+        boolean signClause = false;
+        while (t < tokens.length) {
+            String token = tokens[t++];
+            if ("USAGE".equals(token) || "SIGN".equals(token)) {
+                t = skipIs(tokens, t);
+                if (t >= tokens.length) {
+                    throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
+                }
+                token = tokens[t++];
+            }
+
+            if ("LEADING".equals(token) || "TRAILING".equals(token)) {
+                signClause = true;
+                picture.signLeading = "LEADING".equals(token);
+                if (t < tokens.length && "SEPARATE".equals(tokens[t])) {
+                    picture.signSeparate = true;
+                    t++;
+                    if (t < tokens.length && "CHARACTER".equals(tokens[t])) {
+                        t++;
+                    }
+                }
+            } else {
+                picture.nativeBinary = "COMP-5".equals(token) || "COMPUTATIONAL-5".equals(token);
+                picture.type = parseUsage(token);
+            }
+        }
+
+        parseSymbols(picture, symbols);
+        if (signClause && (!picture.signed || picture.type != DataDescriptor.Type.NUMBER)) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
+        }
+        return picture;
+    }
+
+    /**
+     * Skips an optional <code>IS</code>.
+     * @param tokens Tokens of the PIC
+     * @param t Position of the next token
+     * @return Position of the next token after <code>IS</code>
+     */
+    private static int skipIs(final String[] tokens, final int t) {
+        return t < tokens.length && "IS".equals(tokens[t]) ? t + 1 : t;
+    }
+
+    /**
+     * Parses the usage clause of a numeric field.
+     * @param usage Usage of the field
+     * @return the type of the field
+     */
+    private static DataDescriptor.Type parseUsage(final String usage) {
+        if ("DISPLAY".equals(usage)) {
+            return DataDescriptor.Type.NUMBER;
+        }
+        if ("COMP-3".equals(usage) || "COMPUTATIONAL-3".equals(usage) || "PACKED-DECIMAL".equals(usage)) {
+            return DataDescriptor.Type.PACKED;
+        }
+        if ("COMP".equals(usage) || "COMP-4".equals(usage) || "COMP-5".equals(usage) || "BINARY".equals(usage)
+                || "COMPUTATIONAL".equals(usage) || "COMPUTATIONAL-4".equals(usage)
+                || "COMPUTATIONAL-5".equals(usage)) {
+            return DataDescriptor.Type.BINARY;
+        }
+        throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
+    }
+
+    /**
+     * Parses the symbols of a PIC, as in <code>S9(7)V99</code>, and sets the length of the field.
+     * @param picture PIC with its usage already parsed
+     * @param symbols Symbols of the PIC
+     */
+    private static void parseSymbols(final Picture picture, final String symbols) {
+        boolean text = false;
+        boolean point = false;
+        int chars = 0;
+
+        int pos = 0;
+        if (symbols.length() > 0 && symbols.charAt(0) == 'S') {
+            picture.signed = true;
+            pos++;
+        }
+        while (pos < symbols.length()) {
+            char c = symbols.charAt(pos++);
+            if (c == 'V') {
+                if (point) {
+                    throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
+                }
+                point = true;
+                continue;
+            }
+            if (c != '9' && c != 'X' && c != 'A') {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
+            }
+
+            int count = 1;
+            if (pos < symbols.length() && symbols.charAt(pos) == '(') {
+                int close = symbols.indexOf(')', pos);
+                if (close < 0) {
+                    throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
+                }
+                try {
+                    count = Integer.parseInt(symbols.substring(pos + 1, close));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
+                }
+                if (count <= 0 || count > MAX_LENGTH) {
+                    throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
+                }
+                pos = close + 1;
+            }
+
+            if (c == '9') {
+                picture.digits += count;
+                if (point) {
+                    picture.scale += count;
+                }
+            } else {
+                text = true;
+            }
+            chars += count;
+            if (chars > MAX_LENGTH) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
+            }
+        }
+
+        if (text) {
+            if (picture.signed || point || picture.type != DataDescriptor.Type.NUMBER) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
+            }
+            picture.type = DataDescriptor.Type.STRING;
+            picture.length = chars;
+            picture.digits = 0;
+            return;
+        }
+        if (picture.digits == 0) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
+        }
+
+        switch (picture.type) {
+        case PACKED:
+            picture.length = picture.digits / 2 + 1;
+            break;
+        case BINARY:
+            // Halfword, fullword or doubleword
+            if (picture.digits > 18) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_PIC);
+            }
+            picture.length = picture.digits <= 4 ? 2 : picture.digits <= 9 ? 4 : 8;
+            break;
+        default:
+            picture.length = picture.digits + (picture.signSeparate ? 1 : 0);
+            break;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.conzebit.bufferdescriptor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Base class of the accessors generated by {@link AccessorFactory}.<br />
+ * <br />
+ * Every accessor implements an interface with one method per field and reads and writes a record held in a byte[],
+ * which can be changed with {@link #setBuffer(byte[], int)} to move the same accessor from record to record:<br />
+ * <br />
+ * <code>
+ * Client client = factory.wrap(block, 0);<br />
+ * for (int offset = 0; offset &lt; block.length; offset += length) {<br />
+ * &nbsp;((RecordAccessor) client).setBuffer(block, offset);<br />
+ * &nbsp;total += client.getMaxPurchaseAllowed();<br />
+ * }
+ * </code><br />
+ * <br />
+ * The static methods of this class are the codecs called by the generated code, already specialized by the type of the
+ * field, so generated methods don't dispatch on the type at run time.
+ */
+public abstract class RecordAccessor {
+
+    private static final ConcurrentMap<String, DataDescriptor[]> PENDING_FIELDS =
+            new ConcurrentHashMap<String, DataDescriptor[]>();
+
+    private final RecordLayout layout;
+    protected byte[] buffer;
+    protected int offset;
+
+    protected RecordAccessor(final RecordLayout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Returns the layout of the record.
+     * @return the layout
+     */
+    public final RecordLayout getLayout() {
+        return this.layout;
+    }
+
+    /**
+     * Returns the buffer holding the record.
+     * @return the buffer
+     */
+    public final byte[] getBuffer() {
+        return this.buffer;
+    }
+
+    /**
+     * Returns the position of the record inside the buffer.
+     * @return Position of the first byte of the record
+     */
+    public final int getBufferOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Moves the accessor to a record, read and written in place.
+     * @param buffer Buffer holding the record
+     * @param offset Position of the first byte of the record
+     */
+    public final void setBuffer(final byte[] buffer, final int offset) {
+        this.layout.checkBounds(buffer.length, offset);
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    /**
+     * Returns a BufferDescriptor over the same record, to access it by field name.
+     * @return a BufferDescriptor backed by the same buffer
+     */
+    public final BufferDescriptor toBufferDescriptor() {
+        return this.layout.wrap(this.buffer, this.offset);
+    }
+
+    /**
+     * Keeps the fields of a generated class until it's initialized.
+     * @param className Name of the generated class
+     * @param fields Fields used by the class
+     */
+    static void register(final String className, final DataDescriptor[] fields) {
+        PENDING_FIELDS.put(className, fields);
+    }
+
+    /**
+     * Returns the fields of a generated class. Called once, when the class is initialized.
+     * @param className Name of the generated class
+     * @return the fields used by the class
+     */
+    protected static DataDescriptor[] fields(final String className) {
+        return PENDING_FIELDS.remove(className);
+    }
+
+    /**
+     * Checks an index of a field with OCCURS.
+     * @param index Index, from 1
+     * @param occurs Number of occurrences
+     * @return the index from 0
+     */
+    protected static int index(final int index, final int occurs) {
+        if (index < 1 || index > occurs) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_NAME_DOESNT_EXIST);
+        }
+        return index - 1;
+    }
+
+    /**
+     * Converts the value of a field to an int.
+     * @param value Value of the field
+     * @return the value as an int
+     */
+    protected static int toInt(final long value) {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Converts a decimal value to the unscaled value of a field.
+     * @param value Decimal value
+     * @param scale Decimal positions of the field
+     * @return Unscaled value
+     */
+    protected static long unscale(final BigDecimal value, final int scale) {
+        return BufferDescriptor.unscale(value, scale);
+    }
+
+    /**
+     * Reads a text field.
+     * @param buffer Buffer holding the record
+     * @param pos Position of the field
+     * @param len Length of the field
+     * @param dd Field
+     * @return Value of the field
+     */
+    protected static String getString(final byte[] buffer, final int pos, final int len, final DataDescriptor dd) {
+        return FieldCodec.decodeString(buffer, pos, len, dd.codePage);
+    }
+
+    /**
+     * Writes a text field.
+     * @param buffer Buffer holding the record
+     * @param pos Position of the field
+     * @param len Length of the field
+     * @param dd Field
+     * @param value Value to be written
+     */
+    protected static void setString(final byte[] buffer, final int pos, final int len, final DataDescriptor dd,
+                                    final String value) {
+        FieldCodec.encodeString(buffer, pos, len, dd.codePage, value);
+    }
+
+    /**
+     * Reads an unsigned display numeric field.
+     * @param buffer Buffer holding the record
+     * @param pos Position of the field
+     * @param len Length of the field
+     * @param dd Field
+     * @return Value of the field
+     */
+    protected static long getDisplay(final byte[] buffer, final int pos, final int len, final DataDescriptor dd) {
+        return FieldCodec.decodeLong(buffer, pos, len, dd.codePage);
+    }
+
+    /**
+     * Writes an unsigned display numeric field.
+     * @param buffer Buffer holding the record
+     * @param pos Position of the field
+     * @param len Length of the field
+     * @param dd Field
+     * @param value Value to be written
+     */
+    protected static void setDisplay(final byte[] buffer, final int pos, final int len, final DataDescriptor dd,
+                                     final long value) {
+        FieldCodec.encodeLong(buffer, pos, len, dd.codePage, value);
+    }
+
+    /**
+     * Reads a signed display numeric field.
+     * @param buffer Buffer holding the record
+     * @param pos Position of the field
+     * @param len Length of the field
+     * @param dd Field
+     * @return Value of the field
+     */
+    protected static long getZoned(final byte[] buffer, final int pos, final int len, final DataDescriptor dd) {
+        return FieldCodec.decodeZoned(buffer, pos, len, dd);
+    }
+
+    /**
+     * Writes a signed display numeric field.
+     * @param buffer Buffer holding the record
+     * @param pos Position of the field
+     * @param len Length of the field
+     * @param dd Field
+     * @param value Value to be written
+     */
+    protected static void setZoned(final byte[] buffer, final int pos, final int len, final DataDescriptor dd,
+                                   final long value) {
+        FieldCodec.encodeZoned(buffer, pos, len, dd, value);
+    }
+
+    /**
+     * Reads a packed decimal field.
+     * @param buffer Buffer holding the record
+     * @param pos Position of the field
+     * @param len Length of the field
+     * @param dd Field
+     * @return Value of the field
+     */
+    protected static long getPacked(final byte[] buffer, final int pos, final int len, final DataDescriptor dd) {
+        return FieldCodec.decodePacked(buffer, pos, len);
+    }
+
+    /**
+     * Writes a packed decimal field.
+     * @param buffer Buffer holding the record
+     * @param pos Position of the field
+     * @param len Length of the field
+     * @param dd Field
+     * @param value Value to be written
+     */
+    protected static void setPacked(final byte[] buffer, final int pos, final int len, final DataDescriptor dd,
+                                    final long value) {
+        FieldCodec.encodePacked(buffer, pos, len, dd.digits, dd.signed, value);
+    }
+
+    /**
+     * Reads a binary field.
+     * @param buffer Buffer holding the record
+     * @param pos Position of the field
+     * @param len Length of the field
+     * @param dd Field
+     * @return Value of the field
+     */
+    protected static long getBinary(final byte[] buffer, final int pos, final int len, final DataDescriptor dd) {
+        return FieldCodec.decodeBinary(buffer, pos, len, dd.signed);
+    }
+
+    /**
+     * Writes a binary field.
+     * @param buffer Buffer holding the record
+     * @param pos Position of the field
+     * @param len Length of the field
+     * @param dd Field
+     * @param value Value to be written
+     */
+    protected static void setBinary(final byte[] buffer, final int pos, final int len, final DataDescriptor dd,
+                                    final long value) {
+        FieldCodec.encodeBinary(buffer, pos, len, FieldCodec.truncateBinary(dd, value));
+    }
+
+    /**
+     * Reads a date field.
+     * @param buffer Buffer holding the record
+     * @param pos Position of the field
+     * @param len Length of the field
+     * @param dd Field
+     * @return Value of the field
+     */
+    protected static LocalDate getLocalDate(final byte[] buffer, final int pos, final int len,
+                                            final DataDescriptor dd) {
+        int epochDay = dd.datePattern.decode(buffer, pos, len, dd.codePage);
+        return epochDay == DatePattern.EMPTY ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * Writes a date field, initializing it if the value is null.
+     * @param buffer Buffer holding the record
+     * @param pos Position of the field
+     * @param len Length of the field
+     * @param dd Field
+     * @param value Value to be written
+     */
+    protected static void setLocalDate(final byte[] buffer, final int pos, final int len, final DataDescriptor dd,
+                                       final LocalDate value) {
+        if (value == null) {
+            byte empty = dd.type == DataDescriptor.Type.STRING ? dd.codePage.space : dd.codePage.digitBytes[0];
+            for (int i = pos; i < pos + len; i++) {
+                buffer[i] = empty;
+            }
+            return;
+        }
+        long epochDay = value.toEpochDay();
+        if (epochDay <= DatePattern.EMPTY || epochDay > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+        dd.datePattern.encode(buffer, pos, len, dd.codePage, (int) epochDay);
+    }
+}
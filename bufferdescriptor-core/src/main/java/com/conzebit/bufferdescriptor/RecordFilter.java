@@ -0,0 +1,397 @@
+package com.conzebit.bufferdescriptor;
+
+import java.nio.ByteBuffer;
+import java.util.function.Predicate;
+
+/**
+ * Condition on the fields of a record, checked on the encoded bytes of the record.<br />
+ * <br />
+ * Values are encoded once, when the filter is created, in the code page and the format of their field, so checking a
+ * record compares bytes at the position of the field without decoding anything:<br />
+ * <br />
+ * <code>
+ * RecordFilter spanish = RecordFilter.equalTo(layout.field("COUNTRY"), "ES")<br />
+ * &nbsp;.and(RecordFilter.between(layout.field("MAX_PURCHASE_ALLOWED"), 1000, 5000));<br />
+ * reader.setFilter(spanish);<br />
+ * while (reader.next()) {<br />
+ * &nbsp;...<br />
+ * }
+ * </code><br />
+ * <br />
+ * Text values, including the ones given for unsigned display numbers, are compared byte by byte. Ranges of text
+ * fields follow the collating sequence of their code page, as COBOL does. Numeric values, whose sign can be encoded in
+ * more than one way, are compared by decoding only the field being checked.<br />
+ * <br />
+ * Filters are immutable and can be shared by any number of threads. As a Predicate they can also filter streams of
+ * records, such as the ones of {@link ParallelRecordScan}.
+ */
+public abstract class RecordFilter implements Predicate<BufferDescriptor> {
+
+    private final RecordLayout layout;
+
+    RecordFilter(final RecordLayout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Returns the layout of the records checked by this filter.
+     * @return the layout
+     */
+    public final RecordLayout getLayout() {
+        return this.layout;
+    }
+
+    /**
+     * Checks a record held by a byte[].
+     * @param buffer Buffer holding the record
+     * @param offset Position of the first byte of the record
+     * @return true if the record meets the condition
+     */
+    public abstract boolean accept(byte[] buffer, int offset);
+
+    /**
+     * Checks a record held by a ByteBuffer.
+     * @param buffer Buffer holding the record
+     * @param index Position of the first byte of the record
+     * @return true if the record meets the condition
+     */
+    public abstract boolean accept(ByteBuffer buffer, int index);
+
+    /**
+     * Checks a record.
+     * @param record Record of the layout of this filter
+     * @return true if the record meets the condition
+     */
+    public final boolean test(final BufferDescriptor record) {
+        if (record.getLayout() != this.layout) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_FOREIGN_RECORD);
+        }
+        return record.matches(this);
+    }
+
+    /**
+     * Returns a filter that accepts the records accepted by this filter and another one.
+     * @param other Other filter
+     * @return the combined filter
+     */
+    public final RecordFilter and(final RecordFilter other) {
+        return allOf(this, other);
+    }
+
+    /**
+     * Returns a filter that accepts the records accepted by this filter or another one.
+     * @param other Other filter
+     * @return the combined filter
+     */
+    public final RecordFilter or(final RecordFilter other) {
+        return anyOf(this, other);
+    }
+
+    /**
+     * Returns a filter that accepts the records accepted by all the given filters.
+     * @param filters Filters of the same layout
+     * @return the combined filter
+     */
+    public static RecordFilter allOf(final RecordFilter... filters) {
+        return new Combined(checkLayout(filters), filters.clone(), true);
+    }
+
+    /**
+     * Returns a filter that accepts the records accepted by any of the given filters.
+     * @param filters Filters of the same layout
+     * @return the combined filter
+     */
+    public static RecordFilter anyOf(final RecordFilter... filters) {
+        return new Combined(checkLayout(filters), filters.clone(), false);
+    }
+
+    /**
+     * Returns a filter that accepts the records where a text or unsigned display field has a value. The value is
+     * padded with spaces to the length of the field, as <code>setString</code> does.
+     * @param field Resolved field
+     * @param value Value of the field
+     * @return the filter
+     */
+    public static RecordFilter equalTo(final FieldHandle field, final String value) {
+        checkText(field);
+        if (value == null || value.length() > field.bufferLen) {
+            return new Constant(field.layout, false);
+        }
+        byte[] bytes = encode(field, value, field.bufferLen);
+        return new Bytes(field.layout, field.bufferInit, bytes, bytes);
+    }
+
+    /**
+     * Returns a filter that accepts the records where a numeric field has a value.
+     * @param field Resolved numeric field
+     * @param value Unscaled value of the field, as returned by <code>getLong</code>
+     * @return the filter
+     */
+    public static RecordFilter equalTo(final FieldHandle field, final long value) {
+        return between(field, value, value);
+    }
+
+    /**
+     * Returns a filter that accepts the records where a text or unsigned display field is in a range, comparing the
+     * bytes of the field in the collating sequence of its code page. Limits are padded with spaces to the length of
+     * the field.
+     * @param field Resolved field
+     * @param min Minimum value, included, or null if there is no minimum
+     * @param max Maximum value, included, or null if there is no maximum
+     * @return the filter
+     */
+    public static RecordFilter between(final FieldHandle field, final String min, final String max) {
+        checkText(field);
+        if (min == null && max == null) {
+            return new Constant(field.layout, true);
+        }
+        byte[] minBytes = min == null ? null : encode(field, min, field.bufferLen);
+        byte[] maxBytes = max == null ? null : encode(field, max, field.bufferLen);
+        return new Bytes(field.layout, field.bufferInit, minBytes, maxBytes);
+    }
+
+    /**
+     * Returns a filter that accepts the records where a numeric field is in a range. The field is decoded as
+     * <code>getLong</code> does, as unsigned display numbers may also hold a leading sign.
+     * @param field Resolved numeric field
+     * @param min Minimum unscaled value, included
+     * @param max Maximum unscaled value, included
+     * @return the filter
+     */
+    public static RecordFilter between(final FieldHandle field, final long min, final long max) {
+        DataDescriptor dd = field.descriptor;
+        if (dd.type == DataDescriptor.Type.STRING || !dd.children.isEmpty() || field.bufferLen != dd.bufferLen) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        return min > max ? new Constant(field.layout, false) : new Decoded(field, min, max);
+    }
+
+    /**
+     * Returns a filter that accepts the records where a text or unsigned display field starts with a value.
+     * @param field Resolved field
+     * @param prefix First characters of the field
+     * @return the filter
+     */
+    public static RecordFilter startsWith(final FieldHandle field, final String prefix) {
+        checkText(field);
+        if (prefix.length() > field.bufferLen) {
+            return new Constant(field.layout, false);
+        }
+        byte[] bytes = encode(field, prefix, prefix.length());
+        return new Bytes(field.layout, field.bufferInit, bytes, bytes);
+    }
+
+    /**
+     * Checks that a field is compared as text.
+     * @param field Resolved field
+     */
+    private static void checkText(final FieldHandle field) {
+        DataDescriptor dd = field.descriptor;
+        if (dd.type != DataDescriptor.Type.STRING && (dd.type != DataDescriptor.Type.NUMBER || dd.signed)) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+    }
+
+    /**
+     * Checks that all the filters have the same layout.
+     * @param filters Filters
+     * @return their layout
+     */
+    private static RecordLayout checkLayout(final RecordFilter[] filters) {
+        if (filters.length == 0) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+        RecordLayout layout = filters[0].layout;
+        for (RecordFilter filter : filters) {
+            if (filter.layout != layout) {
+                throw new IllegalArgumentException(IBufferConstant.ERROR_FOREIGN_HANDLE);
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Encodes a value in the code page of a field.
+     * @param field Resolved field
+     * @param value Value to be encoded
+     * @param length Length of the encoded value, padded with spaces
+     * @return the encoded value
+     */
+    private static byte[] encode(final FieldHandle field, final String value, final int length) {
+        byte[] ret = new byte[length];
+        FieldCodec.encodeString(ret, 0, length, field.descriptor.codePage, value);
+        return ret;
+    }
+
+    /**
+     * Compares the bytes of a field with the ones of a range, in unsigned order.
+     */
+    private static final class Bytes extends RecordFilter {
+
+        private final int bufferInit;
+        private final byte[] min;
+        private final byte[] max;
+
+        Bytes(final RecordLayout layout, final int bufferInit, final byte[] min, final byte[] max) {
+            super(layout);
+            this.bufferInit = bufferInit;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public boolean accept(final byte[] buffer, final int offset) {
+            int pos = offset + this.bufferInit;
+            if (this.min == this.max) {
+                for (int i = 0; i < this.min.length; i++) {
+                    if (buffer[pos + i] != this.min[i]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return (this.min == null || compare(buffer, pos, this.min) >= 0)
+                    && (this.max == null || compare(buffer, pos, this.max) <= 0);
+        }
+
+        @Override
+        public boolean accept(final ByteBuffer buffer, final int index) {
+            int pos = index + this.bufferInit;
+            if (this.min == this.max) {
+                for (int i = 0; i < this.min.length; i++) {
+                    if (buffer.get(pos + i) != this.min[i]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return (this.min == null || compare(buffer, pos, this.min) >= 0)
+                    && (this.max == null || compare(buffer, pos, this.max) <= 0);
+        }
+
+        /**
+         * Compares the bytes of a field with a limit.
+         * @param buffer Buffer holding the field
+         * @param pos Position of the field
+         * @param limit Limit
+         * @return a negative number, zero or a positive number if the field is lower, equal or greater
+         */
+        private static int compare(final byte[] buffer, final int pos, final byte[] limit) {
+            for (int i = 0; i < limit.length; i++) {
+                int diff = (buffer[pos + i] & 0xFF) - (limit[i] & 0xFF);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Compares the bytes of a field with a limit.
+         * @param buffer Buffer holding the field
+         * @param pos Position of the field
+         * @param limit Limit
+         * @return a negative number, zero or a positive number if the field is lower, equal or greater
+         */
+        private static int compare(final ByteBuffer buffer, final int pos, final byte[] limit) {
+            for (int i = 0; i < limit.length; i++) {
+                int diff = (buffer.get(pos + i) & 0xFF) - (limit[i] & 0xFF);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Decodes a numeric field and compares it with a range.
+     */
+    private static final class Decoded extends RecordFilter {
+
+        private final DataDescriptor dd;
+        private final int bufferInit;
+        private final int bufferLen;
+        private final long min;
+        private final long max;
+
+        Decoded(final FieldHandle field, final long min, final long max) {
+            super(field.layout);
+            this.dd = field.descriptor;
+            this.bufferInit = field.bufferInit;
+            this.bufferLen = field.bufferLen;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public boolean accept(final byte[] buffer, final int offset) {
+            long value = FieldCodec.decodeNumber(buffer, offset + this.bufferInit, this.bufferLen, this.dd);
+            return value >= this.min && value <= this.max;
+        }
+
+        @Override
+        public boolean accept(final ByteBuffer buffer, final int index) {
+            long value = FieldCodec.decodeNumber(buffer, index + this.bufferInit, this.bufferLen, this.dd);
+            return value >= this.min && value <= this.max;
+        }
+    }
+
+    /**
+     * Combines filters with AND or OR, checking them in order until the result is known.
+     */
+    private static final class Combined extends RecordFilter {
+
+        private final RecordFilter[] filters;
+        private final boolean all;
+
+        Combined(final RecordLayout layout, final RecordFilter[] filters, final boolean all) {
+            super(layout);
+            this.filters = filters;
+            this.all = all;
+        }
+
+        @Override
+        public boolean accept(final byte[] buffer, final int offset) {
+            for (RecordFilter filter : this.filters) {
+                if (filter.accept(buffer, offset) != this.all) {
+                    return !this.all;
+                }
+            }
+            return this.all;
+        }
+
+        @Override
+        public boolean accept(final ByteBuffer buffer, final int index) {
+            for (RecordFilter filter : this.filters) {
+                if (filter.accept(buffer, index) != this.all) {
+                    return !this.all;
+                }
+            }
+            return this.all;
+        }
+    }
+
+    /**
+     * Filter whose result doesn't depend on the record, for values that can't be held by the field.
+     */
+    private static final class Constant extends RecordFilter {
+
+        private final boolean result;
+
+        Constant(final RecordLayout layout, final boolean result) {
+            super(layout);
+            this.result = result;
+        }
+
+        @Override
+        public boolean accept(final byte[] buffer, final int offset) {
+            return this.result;
+        }
+
+        @Override
+        public boolean accept(final ByteBuffer buffer, final int index) {
+            return this.result;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.conzebit.bufferdescriptor;
+
+/**
+ * How records are delimited in a stream read by RecordReader or written by RecordWriter.
+ */
+public enum RecordFraming {
+
+    /**
+     * Records follow each other with no delimiter, each one with the length of the layout.
+     */
+    FIXED,
+
+    /**
+     * Each record is preceded by a 4 bytes Record Descriptor Word, as in mainframe variable length files. The first
+     * two bytes hold the big endian length of the record including the RDW itself, the other two are zero.
+     */
+    RDW,
+
+    /**
+     * Each record is followed by a line terminator, either <code>\n</code> or <code>\r\n</code>.
+     */
+    LINE
+}
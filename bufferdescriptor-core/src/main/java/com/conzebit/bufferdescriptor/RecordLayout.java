@@ -0,0 +1,334 @@
+package com.conzebit.bufferdescriptor;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable structure of a Buffer as defined by BufferBuilder.<br />
+ * <br />
+ * A RecordLayout holds no data, so a single instance can be shared by any number of threads. Records are accessed
+ * through BufferDescriptor views created by the layout, each one with its own buffer or wrapping an existing one:
+ * <br /><br />
+ * <code>
+ * RecordLayout layout = new BufferBuilder()<br />
+ * &nbsp;.addDataDescription(1, "CLIENT")<br />
+ * &nbsp;.addDataDescription(5, "NAME", "X(50)")<br />
+ * &nbsp;.endLayoutDescription();<br />
+ * <br />
+ * BufferDescriptor record = layout.wrap(message, headerLength);<br />
+ * String name = record.getString("NAME");
+ * </code>
+ */
+public final class RecordLayout implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int[] NO_INDEX = new int[0];
+    private static final int MAX_CACHED_NAMES = 4096;
+
+    final DataDescriptor rootDataDescriptor;
+    final int recordLength;
+    private final Map<String, DataDescriptor> descriptorHash;
+    private final transient ConcurrentMap<String, FieldHandle> resolvedNames;
+    final transient ConcurrentMap<Class<?>, AccessorFactory<?>> accessorFactories;
+    final transient ConcurrentMap<Class<?>, RecordMapper<?>> recordMappers;
+    final transient byte[] template;
+
+    RecordLayout(final DataDescriptor rootDataDescriptor, final int recordLength,
+                 final Map<String, DataDescriptor> descriptorHash) {
+        this.rootDataDescriptor = rootDataDescriptor;
+        this.recordLength = recordLength;
+        this.descriptorHash = Collections.unmodifiableMap(new HashMap<String, DataDescriptor>(descriptorHash));
+        this.resolvedNames = new ConcurrentHashMap<String, FieldHandle>();
+        this.accessorFactories = new ConcurrentHashMap<Class<?>, AccessorFactory<?>>();
+        this.recordMappers = new ConcurrentHashMap<Class<?>, RecordMapper<?>>();
+
+        // Image of a blank record, copied to clear or create records instead of initializing field by field
+        this.template = new byte[recordLength];
+        new BufferDescriptor(this, this.template, 0).initialize(rootDataDescriptor, rootDataDescriptor.bufferInit);
+    }
+
+    /**
+     * Rebuilds the blank record and the caches of resolved names, accessors and mappers after deserialization.
+     * A deserialized layout is a new instance, even in the JVM that serialized it, so the FieldHandles, filters,
+     * pools and mappers of the original layout must be resolved again on it.
+     * @return an equivalent layout
+     */
+    private Object readResolve() {
+        return new RecordLayout(this.rootDataDescriptor, this.recordLength, this.descriptorHash);
+    }
+
+    /**
+     * Returns the name of the layout, which is the name of its level 01 field.
+     * @return Name of the root field
+     */
+    public String getName() {
+        return this.rootDataDescriptor.getName();
+    }
+
+    /**
+     * Returns the length in bytes of a record.
+     * @return Length of a record
+     */
+    public int getRecordLength() {
+        return this.recordLength;
+    }
+
+    /**
+     * Returns every field of this layout.
+     * @return the fields, in no particular order
+     */
+    Collection<DataDescriptor> descriptors() {
+        return this.descriptorHash.values();
+    }
+
+    /**
+     * Returns a field of this layout by its declared name.
+     * @param name Name of the field
+     * @return the field, or null if there is no field with that name
+     */
+    DataDescriptor descriptor(final String name) {
+        return this.descriptorHash.get(name);
+    }
+
+    /**
+     * Returns a compact binary snapshot of this layout. Snapshots can be stored or shipped with an application and
+     * loaded with {@link #fromSnapshot(byte[])} much faster than building the layout or parsing its copybook again.
+     * @return the snapshot
+     */
+    public byte[] toSnapshot() {
+        return LayoutSnapshot.write(this, this.descriptorHash.size());
+    }
+
+    /**
+     * Loads a layout from a snapshot returned by {@link #toSnapshot()}.
+     * @param snapshot Snapshot of a layout
+     * @return the layout
+     */
+    public static RecordLayout fromSnapshot(final byte[] snapshot) {
+        if (snapshot == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_SNAPSHOT);
+        }
+        RecordMetrics metrics = RecordMetrics.active;
+        if (metrics == null) {
+            return LayoutSnapshot.read(snapshot);
+        }
+        long started = System.nanoTime();
+        RecordLayout ret = LayoutSnapshot.read(snapshot);
+        metrics.layoutBuilt(ret, System.nanoTime() - started);
+        return ret;
+    }
+
+    /**
+     * Resolves a field so it can be accessed without looking it up by name again on any record of this layout.
+     * @param name Name of the field
+     * @param index optional parameters with indexes of the field name
+     * @return a FieldHandle for the field
+     */
+    public FieldHandle field(final String name, final int... index) {
+        FieldHandle handle = this.resolve(name, index == null ? null : index.clone());
+        if (handle == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_NAME_DOESNT_EXIST);
+        }
+        return handle;
+    }
+
+    /**
+     * Creates a record with its own buffer. All fields are initialized to their default value.
+     * @return a new record
+     */
+    public BufferDescriptor newRecord() {
+        return new BufferDescriptor(this, this.template.clone(), 0);
+    }
+
+    /**
+     * Creates a buffer for consecutive records, with all their fields initialized to their default value. Records are
+     * accessed with {@link #wrap(byte[], int)}, at multiples of the record length.
+     * @param count Number of records
+     * @return a buffer holding the records
+     */
+    public byte[] newRecords(final int count) {
+        if (count < 0 || (long) count * this.recordLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+        byte[] buffer = new byte[count * this.recordLength];
+        this.clearRecords(buffer, 0, count);
+        return buffer;
+    }
+
+    /**
+     * Initializes consecutive records held by a buffer, setting all their fields to their default value.
+     * @param buffer Buffer holding the records
+     * @param offset Position of the first record
+     * @param count Number of records
+     */
+    public void clearRecords(final byte[] buffer, final int offset, final int count) {
+        if (count < 0 || offset < 0 || buffer.length - offset < (long) count * this.recordLength) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+        if (count == 0) {
+            return;
+        }
+
+        // The first record is copied from the template, and then the records already cleared are doubled
+        System.arraycopy(this.template, 0, buffer, offset, this.recordLength);
+        int total = count * this.recordLength;
+        for (int done = this.recordLength; done < total; done *= 2) {
+            System.arraycopy(buffer, offset, buffer, offset + done, Math.min(done, total - done));
+        }
+    }
+
+    /**
+     * Creates a record that reads and writes directly over the given buffer, which must have the length of a record.
+     * @param buffer Buffer holding the record
+     * @return a record backed by the buffer
+     */
+    public BufferDescriptor wrap(final byte[] buffer) {
+        if (buffer.length != this.recordLength) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+        return new BufferDescriptor(this, buffer, 0);
+    }
+
+    /**
+     * Creates a record that reads and writes directly over the given buffer, starting at the given position. The
+     * buffer may hold other data before and after the record.
+     * @param buffer Buffer holding the record
+     * @param offset Position of the first byte of the record
+     * @return a record backed by the buffer
+     */
+    public BufferDescriptor wrap(final byte[] buffer, final int offset) {
+        checkBounds(buffer.length, offset);
+        return new BufferDescriptor(this, buffer, offset);
+    }
+
+    /**
+     * Creates a record that reads and writes directly over a ByteBuffer, starting at its current position. Direct
+     * buffers are supported, so records can be accessed off heap without copying them.
+     * @param buffer Buffer holding the record
+     * @return a record backed by the buffer
+     */
+    public BufferDescriptor wrap(final ByteBuffer buffer) {
+        return new BufferDescriptor(this, buffer, buffer.position());
+    }
+
+    /**
+     * Creates a record that reads and writes directly over a ByteBuffer, starting at the given absolute position.
+     * @param buffer Buffer holding the record
+     * @param index Absolute position of the first byte of the record
+     * @return a record backed by the buffer
+     */
+    public BufferDescriptor wrap(final ByteBuffer buffer, final int index) {
+        return new BufferDescriptor(this, buffer, index);
+    }
+
+    /**
+     * Checks that a record fits in a buffer
+     * @param bufferLength Length of the buffer
+     * @param offset Position of the first byte of the record
+     */
+    void checkBounds(final int bufferLength, final int offset) {
+        if (offset < 0 || bufferLength - offset < this.recordLength) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Resolves the position of a field. Names without indexes are cached, so looking them up again doesn't
+     * allocate.
+     * @param name Name of the field, may include indexes as in <code>"PHONE(2)"</code>
+     * @param index Optional index or indexes for that field
+     * @return the resolved field, or null if it doesn't exist
+     */
+    FieldHandle resolve(final String name, final int... index) {
+        if (index != null && index.length > 0) {
+            return this.locate(name, index);
+        }
+        FieldHandle handle = this.resolvedNames.get(name);
+        if (handle == null) {
+            handle = this.locate(name, NO_INDEX);
+            if (handle != null && this.resolvedNames.size() < MAX_CACHED_NAMES) {
+                this.resolvedNames.putIfAbsent(name, handle);
+            }
+        }
+        return handle;
+    }
+
+    /**
+     * Locates a field by arithmetic on the position of its first occurrence.
+     * @param name Name of the field, may include indexes as in <code>"PHONE(2)"</code>
+     * @param index Index or indexes for that field, following the ones included in the name
+     * @return the resolved field, or null if it doesn't exist
+     */
+    private FieldHandle locate(final String name, final int[] index) {
+        String declaredName = name;
+        int[] allIndexes = index;
+        DataDescriptor dd = this.descriptorHash.get(name);
+        if (dd == null) {
+            int open = name.indexOf('(');
+            if (open <= 0 || name.charAt(name.length() - 1) != ')') {
+                return null;
+            }
+            declaredName = name.substring(0, open);
+            dd = this.descriptorHash.get(declaredName);
+            allIndexes = parseIndexes(name, open, index);
+            if (dd == null || allIndexes == null) {
+                return null;
+            }
+        }
+
+        int position = dd.position(allIndexes);
+        if (position < 0) {
+            return null;
+        }
+        return new FieldHandle(this, declaredName, allIndexes, dd, position, dd.length(allIndexes.length));
+    }
+
+    /**
+     * Parses the indexes included in a field name, as in <code>"D(3)(4)"</code>.
+     * @param name Name of the field
+     * @param open Position of the first parenthesis
+     * @param index Indexes to be added after the ones in the name
+     * @return all the indexes, or null if the name is malformed
+     */
+    private static int[] parseIndexes(final String name, final int open, final int[] index) {
+        int count = 0;
+        for (int i = open; i < name.length(); i++) {
+            if (name.charAt(i) == '(') {
+                count++;
+            }
+        }
+
+        int[] ret = new int[count + index.length];
+        int pos = open;
+        for (int i = 0; i < count; i++) {
+            if (name.charAt(pos) != '(') {
+                return null;
+            }
+            pos++;
+            int value = 0;
+            int digits = 0;
+            while (pos < name.length() && name.charAt(pos) >= '0' && name.charAt(pos) <= '9' && digits < 9) {
+                value = value * 10 + (name.charAt(pos) - '0');
+                digits++;
+                pos++;
+            }
+            if (digits == 0 || pos >= name.length() || name.charAt(pos) != ')') {
+                return null;
+            }
+            pos++;
+            ret[i] = value;
+        }
+        if (pos != name.length()) {
+            return null;
+        }
+        System.arraycopy(index, 0, ret, count, index.length);
+        return ret;
+    }
+}
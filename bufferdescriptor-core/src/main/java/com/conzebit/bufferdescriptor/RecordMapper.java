@@ -0,0 +1,459 @@
+package com.conzebit.bufferdescriptor;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Fills Java objects from records and records from Java objects, binding the fields of a class annotated with
+ * {@link CobolField} to the fields of a layout.<br />
+ * <br />
+ * <code>
+ * RecordMapper&lt;Client&gt; mapper = RecordMapper.bind(layout, Client.class);<br />
+ * Client client = mapper.read(record);<br />
+ * mapper.write(client, layout.newRecord());
+ * </code><br />
+ * <br />
+ * Bindings are resolved once, when the mapper is created, and kept ordered by position, so an object is filled or
+ * extracted in a single pass over the record with no name lookup at all. Mappers are cached by the layout, so binding
+ * a class costs the same no matter how many times it's requested.<br />
+ * <br />
+ * Java fields can be String (any record field); int, long, Integer, Long or BigDecimal (numeric fields); LocalDate
+ * (date fields); or another class with annotated fields, bound to a group. Fields with OCCURS are bound to arrays or
+ * Lists of those types, so a group with OCCURS becomes an array or a List of objects whose annotated fields are bound
+ * to the children of the group.
+ *
+ * @param <T> Class of the mapped objects
+ */
+public final class RecordMapper<T> {
+
+    private static final int STRING = 0;
+    private static final int INT = 1;
+    private static final int LONG = 2;
+    private static final int DECIMAL = 3;
+    private static final int DATE = 4;
+    private static final int GROUP = 5;
+
+    private static final Comparator<Binding> BY_POSITION = new Comparator<Binding>() {
+        @Override
+        public int compare(final Binding b1, final Binding b2) {
+            return Integer.compare(b1.dd.bufferInit, b2.dd.bufferInit);
+        }
+    };
+
+    private final RecordLayout layout;
+    private final Class<T> type;
+    private final Constructor<T> constructor;
+    private final Binding[] bindings;
+
+    /**
+     * Creates a mapper for the fields of a group.
+     * @param layout Layout of the records
+     * @param type Class of the mapped objects
+     * @param group Group whose children are mapped, null for the whole record
+     */
+    private RecordMapper(final RecordLayout layout, final Class<T> type, final DataDescriptor group) {
+        this.layout = layout;
+        this.type = type;
+        try {
+            this.constructor = type.getDeclaredConstructor();
+            this.constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_MAPPING + type.getName());
+        }
+
+        List<Binding> bound = new ArrayList<Binding>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                CobolField annotation = field.getAnnotation(CobolField.class);
+                if (annotation != null && !Modifier.isStatic(field.getModifiers())) {
+                    bound.add(this.bind(field, annotation.value(), group));
+                }
+            }
+        }
+        this.bindings = bound.toArray(new Binding[bound.size()]);
+        Arrays.sort(this.bindings, BY_POSITION);
+    }
+
+    /**
+     * Returns the mapper of a class for the records of a layout, binding it the first time.
+     * @param layout Layout of the records
+     * @param type Class with fields annotated with {@link CobolField} and a constructor without arguments
+     * @param <T> Class of the mapped objects
+     * @return the mapper
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> RecordMapper<T> bind(final RecordLayout layout, final Class<T> type) {
+        RecordMapper<?> mapper = layout.recordMappers.get(type);
+        if (mapper == null) {
+            mapper = new RecordMapper<T>(layout, type, null);
+            RecordMapper<?> cached = layout.recordMappers.putIfAbsent(type, mapper);
+            if (cached != null) {
+                mapper = cached;
+            }
+        }
+        return (RecordMapper<T>) mapper;
+    }
+
+    /**
+     * Returns the class of the mapped objects.
+     * @return the class
+     */
+    public Class<T> getType() {
+        return this.type;
+    }
+
+    /**
+     * Creates an object filled from a record.
+     * @param record Record of the layout of this mapper
+     * @return the object
+     */
+    public T read(final BufferDescriptor record) {
+        T target = this.newInstance();
+        this.read(record, target);
+        return target;
+    }
+
+    /**
+     * Fills an existing object from a record.
+     * @param record Record of the layout of this mapper
+     * @param target Object to be filled
+     */
+    public void read(final BufferDescriptor record, final T target) {
+        this.checkLayout(record);
+        this.read(record, target, 0);
+    }
+
+    /**
+     * Writes an object to a record. Null values, and the occurrences beyond the end of arrays and Lists, are
+     * initialized to the default value of their fields.
+     * @param source Object to be written
+     * @param record Record of the layout of this mapper
+     */
+    public void write(final T source, final BufferDescriptor record) {
+        this.checkLayout(record);
+        this.write(source, record, 0);
+    }
+
+    /**
+     * Checks that a record has the layout of this mapper.
+     * @param record Record
+     */
+    private void checkLayout(final BufferDescriptor record) {
+        if (record.getLayout() != this.layout) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_FOREIGN_RECORD);
+        }
+    }
+
+    /**
+     * Binds a Java field to a field of the record.
+     * @param field Java field
+     * @param name Name of the field of the record
+     * @param group Group being mapped, null for the whole record
+     * @return the binding
+     */
+    private Binding bind(final Field field, final String name, final DataDescriptor group) {
+        DataDescriptor dd = this.layout.descriptor(name);
+        if (dd == null || !isInside(dd, group)
+                || dd.getParentDimensions() != (group == null ? 0 : group.dimensions.length)) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_MAPPING + field.getName());
+        }
+
+        Class<?> valueType = field.getType();
+        boolean array = valueType.isArray();
+        boolean list = valueType == List.class;
+        if (array) {
+            valueType = valueType.getComponentType();
+        } else if (list) {
+            Type generic = field.getGenericType();
+            Type argument = generic instanceof ParameterizedType
+                    ? ((ParameterizedType) generic).getActualTypeArguments()[0] : null;
+            valueType = argument instanceof Class ? (Class<?>) argument : null;
+        }
+        int kind = valueType == null ? -1 : kind(dd, valueType);
+        if (kind < 0 || (array || list) != (dd.occurs > 1)) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_MAPPING + field.getName());
+        }
+
+        field.setAccessible(true);
+        RecordMapper<?> element = kind == GROUP ? new RecordMapper<Object>(this.layout, cast(valueType), dd) : null;
+        return new Binding(field, dd, kind, valueType, array, list, element);
+    }
+
+    /**
+     * Returns how a field of the record is mapped to a Java type.
+     * @param dd Field of the record
+     * @param valueType Java type
+     * @return the kind of mapping, or -1 if the field can't be mapped to that type
+     */
+    private static int kind(final DataDescriptor dd, final Class<?> valueType) {
+        boolean numeric = dd.children.isEmpty() && dd.type != DataDescriptor.Type.STRING;
+        if (valueType == String.class) {
+            return STRING;
+        }
+        if (valueType == int.class || valueType == Integer.class) {
+            return numeric ? INT : -1;
+        }
+        if (valueType == long.class || valueType == Long.class) {
+            return numeric ? LONG : -1;
+        }
+        if (valueType == BigDecimal.class) {
+            return numeric ? DECIMAL : -1;
+        }
+        if (valueType == LocalDate.class) {
+            return dd.datePattern != null ? DATE : -1;
+        }
+        return dd.children.isEmpty() || valueType.isPrimitive() ? -1 : GROUP;
+    }
+
+    /**
+     * Checks if a field is a group or is inside it.
+     * @param dd Field
+     * @param group Group, null for the whole record
+     * @return true if the field is inside the group
+     */
+    private static boolean isInside(final DataDescriptor dd, final DataDescriptor group) {
+        if (group == null) {
+            return true;
+        }
+        for (DataDescriptor parent = dd.parent; parent != null; parent = parent.parent) {
+            if (parent == group) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Casts the class of the objects bound to a group, which are handled as Objects.
+     * @param type Class of the objects
+     * @return the same class
+     */
+    @SuppressWarnings("unchecked")
+    private static Class<Object> cast(final Class<?> type) {
+        return (Class<Object>) type;
+    }
+
+    /**
+     * Creates an empty object.
+     * @return the object
+     */
+    private T newInstance() {
+        try {
+            return this.constructor.newInstance();
+        } catch (InstantiationException e) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_MAPPING + this.type.getName());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Fills an object from an occurrence of the mapped group.
+     * @param record Record
+     * @param target Object to be filled
+     * @param delta Distance from the first occurrence of the group to the mapped one
+     */
+    private void read(final BufferDescriptor record, final T target, final int delta) {
+        try {
+            for (Binding b : this.bindings) {
+                DataDescriptor dd = b.dd;
+                int pos = dd.bufferInit + delta;
+                if (!b.array && !b.list) {
+                    if (b.valueType == int.class) {
+                        b.field.setInt(target, toInt(record.readLong(dd, pos, dd.bufferLen)));
+                    } else if (b.valueType == long.class) {
+                        b.field.setLong(target, record.readLong(dd, pos, dd.bufferLen));
+                    } else {
+                        b.field.set(target, b.read(record, pos));
+                    }
+                } else if (b.valueType == int.class) {
+                    int[] values = new int[dd.occurs];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = toInt(record.readLong(dd, pos + i * dd.bufferLen, dd.bufferLen));
+                    }
+                    b.field.set(target, values);
+                } else if (b.valueType == long.class) {
+                    long[] values = new long[dd.occurs];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = record.readLong(dd, pos + i * dd.bufferLen, dd.bufferLen);
+                    }
+                    b.field.set(target, values);
+                } else if (b.array) {
+                    Object[] values = (Object[]) Array.newInstance(b.valueType, dd.occurs);
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = b.read(record, pos + i * dd.bufferLen);
+                    }
+                    b.field.set(target, values);
+                } else {
+                    List<Object> values = new ArrayList<Object>(dd.occurs);
+                    for (int i = 0; i < dd.occurs; i++) {
+                        values.add(b.read(record, pos + i * dd.bufferLen));
+                    }
+                    b.field.set(target, values);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes an object to an occurrence of the mapped group.
+     * @param source Object to be written
+     * @param record Record
+     * @param delta Distance from the first occurrence of the group to the mapped one
+     */
+    private void write(final T source, final BufferDescriptor record, final int delta) {
+        try {
+            for (Binding b : this.bindings) {
+                DataDescriptor dd = b.dd;
+                int pos = dd.bufferInit + delta;
+                if (!b.array && !b.list) {
+                    if (b.valueType == int.class) {
+                        record.writeLong(dd, pos, dd.bufferLen, b.field.getInt(source));
+                    } else if (b.valueType == long.class) {
+                        record.writeLong(dd, pos, dd.bufferLen, b.field.getLong(source));
+                    } else {
+                        b.write(record, pos, b.field.get(source));
+                    }
+                    continue;
+                }
+
+                Object values = b.field.get(source);
+                int count = values == null ? 0
+                        : b.list ? ((List<?>) values).size() : Array.getLength(values);
+                if (count > dd.occurs) {
+                    throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+                }
+                for (int i = 0; i < count; i++) {
+                    int occurrence = pos + i * dd.bufferLen;
+                    if (b.valueType == int.class) {
+                        record.writeLong(dd, occurrence, dd.bufferLen, ((int[]) values)[i]);
+                    } else if (b.valueType == long.class) {
+                        record.writeLong(dd, occurrence, dd.bufferLen, ((long[]) values)[i]);
+                    } else {
+                        b.write(record, occurrence, b.list ? ((List<?>) values).get(i) : ((Object[]) values)[i]);
+                    }
+                }
+                for (int i = count; i < dd.occurs; i++) {
+                    record.initialize(dd, pos + i * dd.bufferLen);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Converts the value of a field to an int.
+     * @param value Value of the field
+     * @return the value as an int
+     */
+    private static int toInt(final long value) {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_TYPE_INVALID);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Binding of a Java field to a field of the record.
+     */
+    private static final class Binding {
+
+        private final Field field;
+        private final DataDescriptor dd;
+        private final int kind;
+        private final Class<?> valueType;
+        private final boolean array;
+        private final boolean list;
+        private final RecordMapper<Object> element;
+
+        @SuppressWarnings("unchecked")
+        Binding(final Field field, final DataDescriptor dd, final int kind, final Class<?> valueType,
+                final boolean array, final boolean list, final RecordMapper<?> element) {
+            this.field = field;
+            this.dd = dd;
+            this.kind = kind;
+            this.valueType = valueType;
+            this.array = array;
+            this.list = list;
+            this.element = (RecordMapper<Object>) element;
+        }
+
+        /**
+         * Reads an occurrence of the field as an object.
+         * @param record Record
+         * @param pos Position of the occurrence
+         * @return the value
+         */
+        Object read(final BufferDescriptor record, final int pos) {
+            switch (this.kind) {
+            case STRING:
+                return record.readString(this.dd, pos, this.dd.bufferLen);
+            case INT:
+                return toInt(record.readLong(this.dd, pos, this.dd.bufferLen));
+            case LONG:
+                return record.readLong(this.dd, pos, this.dd.bufferLen);
+            case DECIMAL:
+                return BigDecimal.valueOf(record.readLong(this.dd, pos, this.dd.bufferLen), this.dd.scale);
+            case DATE:
+                int epochDay = record.readEpochDay(this.dd, pos, this.dd.bufferLen);
+                return epochDay == DatePattern.EMPTY ? null : LocalDate.ofEpochDay(epochDay);
+            default:
+                Object value = this.element.newInstance();
+                this.element.read(record, value, pos - this.dd.bufferInit);
+                return value;
+            }
+        }
+
+        /**
+         * Writes an object to an occurrence of the field. Null values initialize the occurrence.
+         * @param record Record
+         * @param pos Position of the occurrence
+         * @param value Value to be written
+         */
+        void write(final BufferDescriptor record, final int pos, final Object value) {
+            if (value == null) {
+                record.initialize(this.dd, pos);
+                return;
+            }
+            switch (this.kind) {
+            case STRING:
+                record.writeString(this.dd, pos, this.dd.bufferLen, (String) value);
+                break;
+            case INT:
+            case LONG:
+                record.writeLong(this.dd, pos, this.dd.bufferLen, ((Number) value).longValue());
+                break;
+            case DECIMAL:
+                record.writeLong(this.dd, pos, this.dd.bufferLen,
+                        BufferDescriptor.unscale((BigDecimal) value, this.dd.scale));
+                break;
+            case DATE:
+                long epochDay = ((LocalDate) value).toEpochDay();
+                if (epochDay <= DatePattern.EMPTY || epochDay > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+                }
+                record.writeEpochDay(this.dd, pos, this.dd.bufferLen, (int) epochDay);
+                break;
+            default:
+                this.element.write(value, record, pos - this.dd.bufferInit);
+                break;
+            }
+        }
+    }
+}
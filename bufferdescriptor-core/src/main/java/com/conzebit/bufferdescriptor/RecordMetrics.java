@@ -0,0 +1,263 @@
+package com.conzebit.bufferdescriptor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in counters of field accesses and failures, per layout and per field.<br />
+ * <br />
+ * Metrics are disabled by default, and while disabled the only cost of an access is checking a static field for
+ * null. Once enabled, every read and write through a BufferDescriptor is counted in LongAdder cells, which threads
+ * update without contention:<br />
+ * <br />
+ * <code>
+ * RecordMetrics metrics = RecordMetrics.enable(new JfrMetricsSink());<br />
+ * ...<br />
+ * long reads = metrics.getReads(layout, "NAME");<br />
+ * metrics.report(); // sends the counters of every field to the sink
+ * </code><br />
+ * <br />
+ * Failed accesses, layout build times and reader throughput are sent to the {@link MetricsSink} as they happen.
+ * Fields accessed through generated accessors, record mappers or column extractors are not counted.<br />
+ * <br />
+ * Counters keep a reference to the layouts they count, so with many short lived layouts {@link #reset()} should be
+ * called from time to time.
+ */
+public final class RecordMetrics {
+
+    static volatile RecordMetrics active = null;
+
+    private final MetricsSink sink;
+    private final ConcurrentMap<RecordLayout, LayoutCounters> layouts =
+            new ConcurrentHashMap<RecordLayout, LayoutCounters>();
+    private final ConcurrentMap<DataDescriptor, FieldCounters> fields =
+            new ConcurrentHashMap<DataDescriptor, FieldCounters>();
+
+    private RecordMetrics(final MetricsSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Enables metrics, replacing the ones enabled before if any.
+     * @param sink Sink of the metrics, or null to keep counters only
+     * @return the new metrics
+     */
+    public static RecordMetrics enable(final MetricsSink sink) {
+        RecordMetrics ret = new RecordMetrics(sink);
+        active = ret;
+        return ret;
+    }
+
+    /**
+     * Disables metrics. Counters of the current metrics can still be read.
+     */
+    public static void disable() {
+        active = null;
+    }
+
+    /**
+     * Returns the enabled metrics.
+     * @return the metrics, or null if disabled
+     */
+    public static RecordMetrics current() {
+        return active;
+    }
+
+    /**
+     * Returns the number of accesses to the fields of a layout.
+     * @param layout Layout
+     * @return reads and writes of all its fields
+     */
+    public long getAccesses(final RecordLayout layout) {
+        LayoutCounters counters = this.layouts.get(layout);
+        return counters == null ? 0 : counters.accesses.sum();
+    }
+
+    /**
+     * Returns the number of failed accesses to the fields of a layout.
+     * @param layout Layout
+     * @return accesses to unknown fields and values that couldn't be decoded or encoded
+     */
+    public long getFailures(final RecordLayout layout) {
+        LayoutCounters counters = this.layouts.get(layout);
+        return counters == null ? 0 : counters.failures.sum();
+    }
+
+    /**
+     * Returns the number of reads of a field.
+     * @param layout Layout of the field
+     * @param name Declared name of the field
+     * @return reads of any occurrence of the field
+     */
+    public long getReads(final RecordLayout layout, final String name) {
+        FieldCounters counters = this.fieldCounters(layout, name);
+        return counters == null ? 0 : counters.reads.sum();
+    }
+
+    /**
+     * Returns the number of writes of a field.
+     * @param layout Layout of the field
+     * @param name Declared name of the field
+     * @return writes of any occurrence of the field
+     */
+    public long getWrites(final RecordLayout layout, final String name) {
+        FieldCounters counters = this.fieldCounters(layout, name);
+        return counters == null ? 0 : counters.writes.sum();
+    }
+
+    /**
+     * Sends the counters of every field accessed to the sink.
+     */
+    public void report() {
+        if (this.sink == null) {
+            return;
+        }
+        for (Map.Entry<DataDescriptor, FieldCounters> entry : this.fields.entrySet()) {
+            FieldCounters counters = entry.getValue();
+            this.sink.fieldAccessed(counters.layout.layout, entry.getKey().getName(), counters.reads.sum(),
+                    counters.writes.sum());
+        }
+    }
+
+    /**
+     * Removes every counter.
+     */
+    public void reset() {
+        this.fields.clear();
+        this.layouts.clear();
+    }
+
+    /**
+     * Counts a read of a field.
+     * @param field Resolved field
+     */
+    void read(final FieldHandle field) {
+        FieldCounters counters = this.counters(field);
+        counters.reads.increment();
+        counters.layout.accesses.increment();
+    }
+
+    /**
+     * Counts a write of a field.
+     * @param field Resolved field
+     */
+    void write(final FieldHandle field) {
+        FieldCounters counters = this.counters(field);
+        counters.writes.increment();
+        counters.layout.accesses.increment();
+    }
+
+    /**
+     * Counts a failed access and sends it to the sink.
+     * @param layout Layout of the record
+     * @param name Name of the field
+     * @param error Message of the exception
+     */
+    void failed(final RecordLayout layout, final String name, final String error) {
+        this.layoutCounters(layout).failures.increment();
+        if (this.sink != null) {
+            this.sink.accessFailed(layout, name, error);
+        }
+    }
+
+    /**
+     * Sends the build time of a layout to the sink.
+     * @param layout Layout built
+     * @param nanos Time taken
+     */
+    void layoutBuilt(final RecordLayout layout, final long nanos) {
+        if (this.sink != null) {
+            this.sink.layoutBuilt(layout, nanos);
+        }
+    }
+
+    /**
+     * Sends the throughput of a reader to the sink.
+     * @param layout Layout of the records
+     * @param records Number of records read
+     * @param nanos Time since the reader was opened
+     */
+    void recordsRead(final RecordLayout layout, final long records, final long nanos) {
+        if (this.sink != null) {
+            this.sink.recordsRead(layout, records, nanos);
+        }
+    }
+
+    /**
+     * Returns the counters of a field, creating them the first time.
+     * @param field Resolved field
+     * @return the counters
+     */
+    private FieldCounters counters(final FieldHandle field) {
+        FieldCounters ret = this.fields.get(field.descriptor);
+        if (ret == null) {
+            ret = new FieldCounters(this.layoutCounters(field.layout));
+            FieldCounters previous = this.fields.putIfAbsent(field.descriptor, ret);
+            if (previous != null) {
+                ret = previous;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the counters of a field by name.
+     * @param layout Layout of the field
+     * @param name Declared name of the field
+     * @return the counters, or null if the field has not been accessed
+     */
+    private FieldCounters fieldCounters(final RecordLayout layout, final String name) {
+        DataDescriptor dd = layout.descriptor(name);
+        if (dd == null) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_NAME_DOESNT_EXIST);
+        }
+        return this.fields.get(dd);
+    }
+
+    /**
+     * Returns the counters of a layout, creating them the first time.
+     * @param layout Layout
+     * @return the counters
+     */
+    private LayoutCounters layoutCounters(final RecordLayout layout) {
+        LayoutCounters ret = this.layouts.get(layout);
+        if (ret == null) {
+            ret = new LayoutCounters(layout);
+            LayoutCounters previous = this.layouts.putIfAbsent(layout, ret);
+            if (previous != null) {
+                ret = previous;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Counters of a layout.
+     */
+    private static final class LayoutCounters {
+
+        final RecordLayout layout;
+        final LongAdder accesses = new LongAdder();
+        final LongAdder failures = new LongAdder();
+
+        LayoutCounters(final RecordLayout layout) {
+            this.layout = layout;
+        }
+    }
+
+    /**
+     * Counters of a field, linked to the ones of its layout.
+     */
+    private static final class FieldCounters {
+
+        final LayoutCounters layout;
+        final LongAdder reads = new LongAdder();
+        final LongAdder writes = new LongAdder();
+
+        FieldCounters(final LayoutCounters layout) {
+            this.layout = layout;
+        }
+    }
+}
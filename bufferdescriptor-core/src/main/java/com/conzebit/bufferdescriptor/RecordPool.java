@@ -0,0 +1,166 @@
+package com.conzebit.bufferdescriptor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of blank records of a layout, each one with its own buffer, so handlers of many messages don't
+ * allocate a record per message:<br />
+ * <br />
+ * <code>
+ * RecordPool pool = new RecordPool(layout, 256);<br />
+ * ...<br />
+ * BufferDescriptor record = pool.acquire();<br />
+ * try {<br />
+ * &nbsp;record.setString("NAME", name);<br />
+ * &nbsp;out.write(record.getBuffer());<br />
+ * } finally {<br />
+ * &nbsp;pool.release(record);<br />
+ * }
+ * </code><br />
+ * <br />
+ * Released records are cleared with a copy of the blank record of the layout, so acquired records always have their
+ * fields initialized. Every thread keeps the last few records it released and takes them back without any
+ * synchronization; the rest go to a lock-free stack shared by all threads, holding up to the capacity of the pool.
+ * Records released when the stack is full are left to the garbage collector. A record must not be used after it's
+ * released, and must be released once.
+ */
+public final class RecordPool {
+
+    private static final int LOCAL_CAPACITY = 4;
+
+    private final RecordLayout layout;
+    private final int capacity;
+    private final AtomicReference<Node> top = new AtomicReference<Node>();
+    private final AtomicInteger shared = new AtomicInteger();
+    private final ThreadLocal<BufferDescriptor[]> local;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates an empty pool. Records are created as they are needed, and kept once released.
+     * @param layout Layout of the records
+     * @param capacity Maximum number of records kept by the shared stack
+     */
+    public RecordPool(final RecordLayout layout, final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+        this.layout = layout;
+        this.capacity = capacity;
+        this.local = new ThreadLocal<BufferDescriptor[]>() {
+            @Override
+            protected BufferDescriptor[] initialValue() {
+                return new BufferDescriptor[Math.min(LOCAL_CAPACITY, capacity)];
+            }
+        };
+    }
+
+    /**
+     * Returns the layout of the records.
+     * @return the layout
+     */
+    public RecordLayout getLayout() {
+        return this.layout;
+    }
+
+    /**
+     * Returns a blank record, taken from the pool or created if the pool is empty.
+     * @return a record with all its fields initialized to their default value
+     */
+    public BufferDescriptor acquire() {
+        BufferDescriptor[] cache = this.local.get();
+        for (int i = cache.length - 1; i >= 0; i--) {
+            BufferDescriptor ret = cache[i];
+            if (ret != null) {
+                cache[i] = null;
+                this.hits.increment();
+                return ret;
+            }
+        }
+
+        Node node;
+        do {
+            node = this.top.get();
+        } while (node != null && !this.top.compareAndSet(node, node.next));
+        if (node != null) {
+            this.shared.decrementAndGet();
+            this.hits.increment();
+            return node.record;
+        }
+        this.misses.increment();
+        return this.layout.newRecord();
+    }
+
+    /**
+     * Clears a record and returns it to the pool. Records whose buffer has been replaced by one that isn't a
+     * single record, such as a wrapped ByteBuffer, are not kept.
+     * @param record Record acquired from this pool
+     */
+    public void release(final BufferDescriptor record) {
+        if (record.getLayout() != this.layout) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_FOREIGN_RECORD);
+        }
+        if (!record.isStandalone()) {
+            return;
+        }
+        record.clearBuffer();
+
+        BufferDescriptor[] cache = this.local.get();
+        for (int i = 0; i < cache.length; i++) {
+            if (cache[i] == null) {
+                cache[i] = record;
+                return;
+            }
+        }
+
+        // A place is reserved before pushing, so the stack never holds more records than the capacity
+        if (this.shared.incrementAndGet() > this.capacity) {
+            this.shared.decrementAndGet();
+            return;
+        }
+        Node node = new Node(record);
+        do {
+            node.next = this.top.get();
+        } while (!this.top.compareAndSet(node.next, node));
+    }
+
+    /**
+     * Returns the number of records taken from the pool.
+     * @return acquisitions that didn't create a record
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Returns the number of records created because the pool was empty.
+     * @return acquisitions that created a record
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Returns the number of records held by the shared stack, not counting the ones cached by each thread.
+     * @return records in the shared stack
+     */
+    public int getSharedSize() {
+        return this.shared.get();
+    }
+
+    /**
+     * Entry of the shared stack. A new one is created every time a record is pushed, so an entry is never in the
+     * stack twice and a pop can't succeed on a stale top.
+     */
+    private static final class Node {
+
+        final BufferDescriptor record;
+        Node next;
+
+        Node(final BufferDescriptor record) {
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.conzebit.bufferdescriptor;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads records from an InputStream or a channel, such as a pipe, a socket or a decompressing stream.<br />
+ * <br />
+ * Data is read in big blocks into a buffer that is reused for the whole stream, and each record is read in place
+ * from that buffer through a single BufferDescriptor, so no memory is allocated per record:<br />
+ * <br />
+ * <code>
+ * RecordReader reader = new RecordReader(layout, new GZIPInputStream(in), RecordFraming.RDW);<br />
+ * try {<br />
+ * &nbsp;while (reader.next()) {<br />
+ * &nbsp;&nbsp;String name = reader.getRecord().getString("NAME");<br />
+ * &nbsp;}<br />
+ * } finally {<br />
+ * &nbsp;reader.close();<br />
+ * }
+ * </code><br />
+ * <br />
+ * With RDW and LINE framing, records shorter than the layout are completed with the default value of the missing
+ * fields and the bytes of longer records that don't fit in the layout are skipped. The BufferDescriptor returned by
+ * {@link #getRecord()} is reused, so it must not be kept after calling {@link #next()} again.
+ */
+public final class RecordReader implements Closeable {
+
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int RDW_LENGTH = 4;
+
+    private final RecordLayout layout;
+    private final RecordFraming framing;
+    private final InputStream in;
+    private final ReadableByteChannel channel;
+    private final byte[] block;
+    private final ByteBuffer blockBuffer;
+
+    private int start = 0;
+    private int end = 0;
+    private boolean skipLine = false;
+    private final long opened = RecordMetrics.active == null ? 0 : System.nanoTime();
+    private RecordFilter filter = null;
+    private BufferDescriptor record = null;
+    private BufferDescriptor shortRecord = null;
+    private long recordNumber = -1;
+    private long recordsRead = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates a reader of records with no delimiters.
+     * @param layout Layout of the records
+     * @param in Stream to be read
+     */
+    public RecordReader(final RecordLayout layout, final InputStream in) {
+        this(layout, in, null, RecordFraming.FIXED);
+    }
+
+    /**
+     * Creates a reader of records.
+     * @param layout Layout of the records
+     * @param in Stream to be read
+     * @param framing How records are delimited
+     */
+    public RecordReader(final RecordLayout layout, final InputStream in, final RecordFraming framing) {
+        this(layout, in, null, framing);
+    }
+
+    /**
+     * Creates a reader of records with no delimiters.
+     * @param layout Layout of the records
+     * @param channel Channel to be read
+     */
+    public RecordReader(final RecordLayout layout, final ReadableByteChannel channel) {
+        this(layout, null, channel, RecordFraming.FIXED);
+    }
+
+    /**
+     * Creates a reader of records.
+     * @param layout Layout of the records
+     * @param channel Channel to be read
+     * @param framing How records are delimited
+     */
+    public RecordReader(final RecordLayout layout, final ReadableByteChannel channel, final RecordFraming framing) {
+        this(layout, null, channel, framing);
+    }
+
+    private RecordReader(final RecordLayout layout, final InputStream in, final ReadableByteChannel channel,
+                         final RecordFraming framing) {
+        if (layout.getRecordLength() <= 0) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+        this.layout = layout;
+        this.framing = framing;
+        this.in = in;
+        this.channel = channel;
+        this.block = new byte[Math.max(BLOCK_SIZE, 2 * (layout.getRecordLength() + RDW_LENGTH))];
+        this.blockBuffer = channel == null ? null : ByteBuffer.wrap(this.block);
+    }
+
+    /**
+     * Returns the layout of the records.
+     * @return the layout
+     */
+    public RecordLayout getLayout() {
+        return this.layout;
+    }
+
+    /**
+     * Returns the number of the current record, starting from zero, or -1 if there is no current record yet.
+     * @return number of the current record
+     */
+    public long getRecordNumber() {
+        return this.recordNumber;
+    }
+
+    /**
+     * Sets a filter so {@link #next()} skips the records it doesn't accept. Skipped records are checked on the bytes
+     * of the block, with no field decoded. Record numbers still count the skipped records.
+     * @param filter Filter of the layout of this reader, or null to read every record
+     */
+    public void setFilter(final RecordFilter filter) {
+        if (filter != null && filter.getLayout() != this.layout) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_FOREIGN_RECORD);
+        }
+        this.filter = filter;
+    }
+
+    /**
+     * Moves to the next record accepted by the filter, if any.
+     * @return true if there is a next record, false at the end of the stream
+     * @throws IOException if the stream can't be read or it ends in the middle of a record
+     */
+    public boolean next() throws IOException {
+        boolean found;
+        do {
+            switch (this.framing) {
+            case RDW:
+                found = this.nextRdw();
+                break;
+            case LINE:
+                found = this.nextLine();
+                break;
+            default:
+                found = this.nextFixed();
+                break;
+            }
+            if (found) {
+                this.recordNumber++;
+                this.recordsRead++;
+            }
+        } while (found && this.filter != null && !this.record.matches(this.filter));
+        return found;
+    }
+
+    /**
+     * Returns the current record. The same BufferDescriptor is returned for every record.
+     * @return the current record
+     */
+    public BufferDescriptor getRecord() {
+        if (this.record == null || this.recordNumber < 0) {
+            throw new IllegalStateException(IBufferConstant.ERROR_NO_RECORD);
+        }
+        return this.record;
+    }
+
+    /**
+     * Closes the underlying stream or channel.
+     * @throws IOException if it can't be closed
+     */
+    public void close() throws IOException {
+        if (this.in != null) {
+            this.in.close();
+        } else {
+            this.channel.close();
+        }
+        this.reportRecordsRead();
+    }
+
+    /**
+     * Sends the number of records read and the time since this reader was opened to the metrics, if enabled. Only
+     * the first call sends them, so a reader closed twice is reported once.
+     */
+    private void reportRecordsRead() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        RecordMetrics metrics = RecordMetrics.active;
+        if (metrics != null && this.opened != 0) {
+            metrics.recordsRead(this.layout, this.recordsRead, System.nanoTime() - this.opened);
+        }
+    }
+
+    /**
+     * Moves to the next record with no delimiters.
+     * @return true if there is a next record
+     * @throws IOException if the stream can't be read
+     */
+    private boolean nextFixed() throws IOException {
+        int recordLength = this.layout.recordLength;
+        if (!this.fill(recordLength)) {
+            return this.endOfStream();
+        }
+        this.setRecord(this.start, recordLength);
+        this.start += recordLength;
+        return true;
+    }
+
+    /**
+     * Moves to the next record preceded by a Record Descriptor Word.
+     * @return true if there is a next record
+     * @throws IOException if the stream can't be read
+     */
+    private boolean nextRdw() throws IOException {
+        if (!this.fill(RDW_LENGTH)) {
+            return this.endOfStream();
+        }
+        int length = (((this.block[this.start] & 0xFF) << 8) | (this.block[this.start + 1] & 0xFF)) - RDW_LENGTH;
+        if (length < 0) {
+            throw new IOException(IBufferConstant.ERROR_INVALID_RDW);
+        }
+        this.start += RDW_LENGTH;
+        if (!this.fill(length)) {
+            throw new EOFException(IBufferConstant.ERROR_TRUNCATED_RECORD);
+        }
+        this.setRecord(this.start, length);
+        this.start += length;
+        return true;
+    }
+
+    /**
+     * Moves to the next record followed by a line terminator.
+     * @return true if there is a next record
+     * @throws IOException if the stream can't be read
+     */
+    private boolean nextLine() throws IOException {
+        if (this.skipLine) {
+            this.skipLine = false;
+            int newLine = this.findNewLine(0);
+            while (newLine < 0) {
+                this.start = this.end;
+                if (!this.fill(1)) {
+                    return false;
+                }
+                newLine = this.findNewLine(0);
+            }
+            this.start = newLine + 1;
+        }
+
+        int scanned = 0;
+        int lineEnd = this.findNewLine(scanned);
+        while (lineEnd < 0) {
+            scanned = this.end - this.start;
+            if (scanned == this.block.length) {
+                // Line longer than the block, the rest of it is skipped on the next call
+                this.setRecord(this.start, this.layout.recordLength);
+                this.start += this.layout.recordLength;
+                this.skipLine = true;
+                return true;
+            }
+            if (!this.fill(scanned + 1)) {
+                if (scanned == 0) {
+                    return false;
+                }
+                lineEnd = this.end;
+                break;
+            }
+            lineEnd = this.findNewLine(scanned);
+        }
+
+        int length = lineEnd - this.start;
+        if (length > 0 && this.block[lineEnd - 1] == '\r') {
+            length--;
+        }
+        this.setRecord(this.start, length);
+        this.start = Math.min(lineEnd + 1, this.end);
+        return true;
+    }
+
+    /**
+     * Looks for the next line terminator in the data already read.
+     * @param from Number of bytes after the start that have already been scanned
+     * @return the position of the terminator, or -1 if it hasn't been read yet
+     */
+    private int findNewLine(final int from) {
+        for (int i = this.start + from; i < this.end; i++) {
+            if (this.block[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Points the record view to a record in the block. Records shorter than the layout are copied into a separate
+     * buffer holding the default values of the missing fields.
+     * @param pos Position of the record in the block
+     * @param length Length of the record
+     */
+    private void setRecord(final int pos, final int length) {
+        if (length >= this.layout.recordLength) {
+            if (this.record == null) {
+                this.record = this.layout.wrap(this.block, pos);
+            } else {
+                this.record.setBuffer(this.block, pos);
+            }
+            return;
+        }
+
+        if (this.shortRecord == null) {
+            this.shortRecord = this.layout.newRecord();
+        } else {
+            this.shortRecord.clearBuffer();
+        }
+        System.arraycopy(this.block, pos, this.shortRecord.getBuffer(), 0, length);
+        if (this.record == null) {
+            this.record = this.layout.wrap(this.shortRecord.getBuffer());
+        } else {
+            this.record.setBuffer(this.shortRecord.getBuffer(), 0);
+        }
+    }
+
+    /**
+     * Checks the end of the stream is not in the middle of a record.
+     * @return always false
+     * @throws EOFException if there are bytes left
+     */
+    private boolean endOfStream() throws EOFException {
+        if (this.end > this.start) {
+            throw new EOFException(IBufferConstant.ERROR_TRUNCATED_RECORD);
+        }
+        return false;
+    }
+
+    /**
+     * Reads from the stream until the given number of bytes are available after the start.
+     * @param needed Number of bytes needed
+     * @return true if they are available, false if the stream ended before
+     * @throws IOException if the stream can't be read
+     */
+    private boolean fill(final int needed) throws IOException {
+        while (this.end - this.start < needed) {
+            if (this.block.length - this.start < needed) {
+                System.arraycopy(this.block, this.start, this.block, 0, this.end - this.start);
+                this.end -= this.start;
+                this.start = 0;
+            }
+            int read;
+            if (this.in != null) {
+                read = this.in.read(this.block, this.end, this.block.length - this.end);
+            } else {
+                this.blockBuffer.limit(this.block.length);
+                this.blockBuffer.position(this.end);
+                read = this.channel.read(this.blockBuffer);
+            }
+            if (read < 0) {
+                return false;
+            }
+            this.end += read;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,95 @@
+package com.conzebit.bufferdescriptor;
+
+import java.nio.ByteBuffer;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Internal helper class used by ParallelRecordScan. Traverses a range of fixed length records held by one or more
+ * regions, each region holding the same number of records but the last one.<br />
+ * <br />
+ * Every spliterator has its own BufferDescriptor, created by the thread that traverses it and moved from record to
+ * record, so splits can be processed by different threads without sharing any state.
+ */
+final class RecordSpliterator implements Spliterator<BufferDescriptor> {
+
+    private static final int MIN_SPLIT = 64;
+
+    private final RecordLayout layout;
+    private final ByteBuffer[] regions;
+    private final int recordsPerRegion;
+    private long next;
+    private final long end;
+    private BufferDescriptor record = null;
+
+    RecordSpliterator(final RecordLayout layout, final ByteBuffer[] regions, final int recordsPerRegion,
+                      final long from, final long to) {
+        this.layout = layout;
+        this.regions = regions;
+        this.recordsPerRegion = recordsPerRegion;
+        this.next = from;
+        this.end = to;
+    }
+
+    public boolean tryAdvance(final Consumer<? super BufferDescriptor> action) {
+        if (this.next >= this.end) {
+            return false;
+        }
+        this.moveRecord((int) (this.next / this.recordsPerRegion), (int) (this.next % this.recordsPerRegion));
+        this.next++;
+        action.accept(this.record);
+        return true;
+    }
+
+    public void forEachRemaining(final Consumer<? super BufferDescriptor> action) {
+        if (this.next >= this.end) {
+            return;
+        }
+        int region = (int) (this.next / this.recordsPerRegion);
+        int regionRecord = (int) (this.next % this.recordsPerRegion);
+        for (long i = this.next; i < this.end; i++) {
+            this.moveRecord(region, regionRecord);
+            action.accept(this.record);
+            regionRecord++;
+            if (regionRecord == this.recordsPerRegion) {
+                region++;
+                regionRecord = 0;
+            }
+        }
+        this.next = this.end;
+    }
+
+    public Spliterator<BufferDescriptor> trySplit() {
+        long remaining = this.end - this.next;
+        if (remaining < 2 * MIN_SPLIT) {
+            return null;
+        }
+        long middle = this.next + remaining / 2;
+        RecordSpliterator prefix = new RecordSpliterator(this.layout, this.regions, this.recordsPerRegion,
+                this.next, middle);
+        this.next = middle;
+        return prefix;
+    }
+
+    public long estimateSize() {
+        return this.end - this.next;
+    }
+
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * Points the record view to a record.
+     * @param region Region holding the record
+     * @param regionRecord Number of the record inside the region
+     */
+    private void moveRecord(final int region, final int regionRecord) {
+        int index = regionRecord * this.layout.recordLength;
+        if (this.record == null) {
+            this.record = this.layout.wrap(this.regions[region], index);
+        } else {
+            this.record.setBuffer(this.regions[region], index);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.conzebit.bufferdescriptor;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes records to an OutputStream or a channel.<br />
+ * <br />
+ * Records are gathered in a reusable block and written with a single call when the block is full, so writing many
+ * small records costs a few big writes. Records can be built directly inside the block, avoiding any copy:<br />
+ * <br />
+ * <code>
+ * RecordWriter writer = new RecordWriter(layout, out);<br />
+ * try {<br />
+ * &nbsp;for (Client client : clients) {<br />
+ * &nbsp;&nbsp;BufferDescriptor record = writer.nextRecord();<br />
+ * &nbsp;&nbsp;record.setString("NAME", client.getName());<br />
+ * &nbsp;}<br />
+ * } finally {<br />
+ * &nbsp;writer.close();<br />
+ * }
+ * </code><br />
+ * <br />
+ * The BufferDescriptor returned by {@link #nextRecord()} is reused, so it must not be kept after calling any other
+ * method of the writer.
+ */
+public final class RecordWriter implements Closeable, Flushable {
+
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int RDW_LENGTH = 4;
+
+    private final RecordLayout layout;
+    private final RecordFraming framing;
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final byte[] block;
+    private final ByteBuffer blockBuffer;
+
+    private int end = 0;
+    private BufferDescriptor record = null;
+
+    /**
+     * Creates a writer of records with no delimiters.
+     * @param layout Layout of the records
+     * @param out Stream to be written
+     */
+    public RecordWriter(final RecordLayout layout, final OutputStream out) {
+        this(layout, out, null, RecordFraming.FIXED);
+    }
+
+    /**
+     * Creates a writer of records.
+     * @param layout Layout of the records
+     * @param out Stream to be written
+     * @param framing How records are delimited
+     */
+    public RecordWriter(final RecordLayout layout, final OutputStream out, final RecordFraming framing) {
+        this(layout, out, null, framing);
+    }
+
+    /**
+     * Creates a writer of records with no delimiters.
+     * @param layout Layout of the records
+     * @param channel Channel to be written
+     */
+    public RecordWriter(final RecordLayout layout, final WritableByteChannel channel) {
+        this(layout, null, channel, RecordFraming.FIXED);
+    }
+
+    /**
+     * Creates a writer of records.
+     * @param layout Layout of the records
+     * @param channel Channel to be written
+     * @param framing How records are delimited
+     */
+    public RecordWriter(final RecordLayout layout, final WritableByteChannel channel, final RecordFraming framing) {
+        this(layout, null, channel, framing);
+    }
+
+    private RecordWriter(final RecordLayout layout, final OutputStream out, final WritableByteChannel channel,
+                         final RecordFraming framing) {
+        if (layout.getRecordLength() <= 0) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+        if (framing == RecordFraming.RDW && layout.getRecordLength() + RDW_LENGTH > 0xFFFF) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_RDW);
+        }
+        this.layout = layout;
+        this.framing = framing;
+        this.out = out;
+        this.channel = channel;
+        this.block = new byte[Math.max(BLOCK_SIZE, layout.getRecordLength() + RDW_LENGTH)];
+        this.blockBuffer = channel == null ? null : ByteBuffer.wrap(this.block);
+    }
+
+    /**
+     * Returns the layout of the records.
+     * @return the layout
+     */
+    public RecordLayout getLayout() {
+        return this.layout;
+    }
+
+    /**
+     * Adds a new record, with every field initialized to its default value, and returns it so its fields can be
+     * set. The record is built in place inside the block of the writer.
+     * @return the new record
+     * @throws IOException if the block is full and can't be written
+     */
+    public BufferDescriptor nextRecord() throws IOException {
+        int pos = this.startRecord();
+        if (this.record == null) {
+            this.record = this.layout.wrap(this.block, pos);
+        } else {
+            this.record.setBuffer(this.block, pos);
+        }
+        this.record.clearBuffer();
+        this.endRecord();
+        return this.record;
+    }
+
+    /**
+     * Adds a copy of a record.
+     * @param source Record to be written, it must have the layout of this writer
+     * @throws IOException if the block is full and can't be written
+     */
+    public void write(final BufferDescriptor source) throws IOException {
+        if (source.getLayout().getRecordLength() != this.layout.recordLength) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+        int pos = this.startRecord();
+        source.copyTo(this.block, pos);
+        this.endRecord();
+    }
+
+    /**
+     * Writes the pending records and flushes the underlying stream.
+     * @throws IOException if they can't be written
+     */
+    public void flush() throws IOException {
+        this.writeBlock();
+        if (this.out != null) {
+            this.out.flush();
+        }
+    }
+
+    /**
+     * Writes the pending records and closes the underlying stream or channel.
+     * @throws IOException if they can't be written
+     */
+    public void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            if (this.out != null) {
+                this.out.close();
+            } else {
+                this.channel.close();
+            }
+        }
+    }
+
+    /**
+     * Makes room for a new record and writes its header if any.
+     * @return position of the record in the block
+     * @throws IOException if the block is full and can't be written
+     */
+    private int startRecord() throws IOException {
+        int recordLength = this.layout.recordLength;
+        if (this.block.length - this.end < recordLength + RDW_LENGTH) {
+            this.writeBlock();
+        }
+        if (this.framing == RecordFraming.RDW) {
+            int length = recordLength + RDW_LENGTH;
+            this.block[this.end] = (byte) (length >>> 8);
+            this.block[this.end + 1] = (byte) length;
+            this.block[this.end + 2] = 0;
+            this.block[this.end + 3] = 0;
+            this.end += RDW_LENGTH;
+        }
+        int pos = this.end;
+        this.end += recordLength;
+        return pos;
+    }
+
+    /**
+     * Writes the trailer of the record if any.
+     */
+    private void endRecord() {
+        if (this.framing == RecordFraming.LINE) {
+            this.block[this.end++] = '\n';
+        }
+    }
+
+    /**
+     * Writes the block with a single call to the stream or channel.
+     * @throws IOException if it can't be written
+     */
+    private void writeBlock() throws IOException {
+        if (this.end == 0) {
+            return;
+        }
+        if (this.out != null) {
+            this.out.write(this.block, 0, this.end);
+        } else {
+            this.blockBuffer.clear();
+            this.blockBuffer.limit(this.end);
+            while (this.blockBuffer.hasRemaining()) {
+                this.channel.write(this.blockBuffer);
+            }
+        }
+        this.end = 0;
+    }
+}
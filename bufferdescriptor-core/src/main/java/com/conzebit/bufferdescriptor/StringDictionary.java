@@ -0,0 +1,192 @@
+package com.conzebit.bufferdescriptor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Dictionary of the values of a text column extracted by {@link ColumnExtractor}.<br />
+ * <br />
+ * Every distinct value of the field gets a code, from 0 in order of appearance, and the column holds the codes in an
+ * int[]. Values are looked up by their raw bytes, so a value is decoded to a String only the first time it's found:
+ * <br /><br />
+ * <code>
+ * int[] countries = batch.getInts(2);<br />
+ * StringDictionary dictionary = batch.getDictionary(2);<br />
+ * int spain = dictionary.indexOf("ES");<br />
+ * for (int i = 0; i &lt; batch.size(); i++) {<br />
+ * &nbsp;if (countries[i] == spain) {<br />
+ * &nbsp;&nbsp;...<br />
+ * }
+ * </code><br />
+ * <br />
+ * A dictionary is not thread safe. It keeps growing while its batch is reused, so codes stay the same from one
+ * extraction to the next.
+ */
+public final class StringDictionary {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int keyLength;
+    private final CodePage codePage;
+    private final byte[] scratch;
+    private byte[] keys;
+    private String[] values;
+    private int[] table;
+    private int size = 0;
+
+    /**
+     * Creates an empty dictionary.
+     * @param keyLength Length of the field
+     * @param codePage Code page of the field
+     */
+    StringDictionary(final int keyLength, final CodePage codePage) {
+        this.keyLength = keyLength;
+        this.codePage = codePage;
+        this.scratch = new byte[keyLength];
+        this.keys = new byte[INITIAL_CAPACITY * keyLength];
+        this.values = new String[INITIAL_CAPACITY];
+        this.table = new int[INITIAL_CAPACITY * 2];
+    }
+
+    /**
+     * Returns the number of distinct values.
+     * @return Number of values, which is also the next code to be assigned
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the value of a code.
+     * @param code Code found in the column
+     * @return the value, as it would be returned by <code>getString</code>
+     */
+    public String get(final int code) {
+        if (code < 0 || code >= this.size) {
+            throw new IllegalArgumentException(IBufferConstant.ERROR_INVALID_VALUE);
+        }
+        return this.values[code];
+    }
+
+    /**
+     * Returns the code of a value, without adding it. The value is padded with spaces to the length of the field, as
+     * it would be written by <code>setString</code>.
+     * @param value Value to be found
+     * @return the code, or -1 if the value has not been found in the column
+     */
+    public int indexOf(final String value) {
+        FieldCodec.encodeString(this.scratch, 0, this.keyLength, this.codePage, value);
+        int slot = this.find(this.scratch, 0, hash(this.scratch, 0, this.keyLength));
+        return this.table[slot] - 1;
+    }
+
+    /**
+     * Returns the code of the value of a field, adding it if it's new.
+     * @param buffer Buffer holding the field
+     * @param pos Position of the field
+     * @return the code
+     */
+    int encode(final byte[] buffer, final int pos) {
+        int hash = hash(buffer, pos, this.keyLength);
+        int slot = this.find(buffer, pos, hash);
+        int code = this.table[slot] - 1;
+        if (code < 0) {
+            code = this.add(buffer, pos, slot);
+        }
+        return code;
+    }
+
+    /**
+     * Returns the code of the value of a field, adding it if it's new.
+     * @param buffer Buffer holding the field
+     * @param pos Position of the field
+     * @return the code
+     */
+    int encode(final ByteBuffer buffer, final int pos) {
+        for (int i = 0; i < this.keyLength; i++) {
+            this.scratch[i] = buffer.get(pos + i);
+        }
+        return this.encode(this.scratch, 0);
+    }
+
+    /**
+     * Finds the slot of a value in the hash table.
+     * @param buffer Buffer holding the value
+     * @param pos Position of the value
+     * @param hash Hash of the value
+     * @return the slot holding the value, or the empty slot where it should be added
+     */
+    private int find(final byte[] buffer, final int pos, final int hash) {
+        int mask = this.table.length - 1;
+        int slot = hash & mask;
+        while (this.table[slot] != 0 && !this.matches(this.table[slot] - 1, buffer, pos)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Compares a value with the one of a code.
+     * @param code Code
+     * @param buffer Buffer holding the value
+     * @param pos Position of the value
+     * @return true if both are the same bytes
+     */
+    private boolean matches(final int code, final byte[] buffer, final int pos) {
+        int keyPos = code * this.keyLength;
+        for (int i = 0; i < this.keyLength; i++) {
+            if (this.keys[keyPos + i] != buffer[pos + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a value.
+     * @param buffer Buffer holding the value
+     * @param pos Position of the value
+     * @param slot Empty slot of the hash table where the value goes
+     * @return the code of the value
+     */
+    private int add(final byte[] buffer, final int pos, final int slot) {
+        int code = this.size++;
+        if (code == this.values.length) {
+            this.keys = Arrays.copyOf(this.keys, this.keys.length * 2);
+            this.values = Arrays.copyOf(this.values, this.values.length * 2);
+        }
+        System.arraycopy(buffer, pos, this.keys, code * this.keyLength, this.keyLength);
+        this.values[code] = FieldCodec.decodeString(buffer, pos, this.keyLength, this.codePage);
+        this.table[slot] = code + 1;
+        if (this.size * 2 > this.table.length) {
+            this.rehash();
+        }
+        return code;
+    }
+
+    /**
+     * Doubles the hash table.
+     */
+    private void rehash() {
+        this.table = new int[this.table.length * 2];
+        for (int code = 0; code < this.size; code++) {
+            int keyPos = code * this.keyLength;
+            this.table[this.find(this.keys, keyPos, hash(this.keys, keyPos, this.keyLength))] = code + 1;
+        }
+    }
+
+    /**
+     * Hashes the bytes of a value.
+     * @param buffer Buffer holding the value
+     * @param pos Position of the value
+     * @param len Length of the value
+     * @return the hash
+     */
+    private static int hash(final byte[] buffer, final int pos, final int len) {
+        int h = 1;
+        for (int i = pos; i < pos + len; i++) {
+            h = 31 * h + buffer[i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
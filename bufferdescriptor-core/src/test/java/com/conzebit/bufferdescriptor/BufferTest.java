@@ -1,10 +1,24 @@
 package com.conzebit.bufferdescriptor;
 
 import junit.framework.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Locale;
 
 public class BufferTest {
@@ -154,4 +168,1015 @@ public class BufferTest {
         Assert.assertEquals(new String(bufferCloned), new String(bd.getBuffer()));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFieldHandle() {
+
+        FieldHandle e11 = bd.field("FIELD_E11", 2, 1);
+        Assert.assertEquals("FIELD_E11(2)(1)", e11.getName());
+        bd.setString(e11, "c");
+        Assert.assertEquals("c", bd.getString("FIELD_E11(2)(1)"));
+        Assert.assertEquals("c", bd.getString(e11));
+
+        FieldHandle c1 = bd.field("FIELD_C1(3)");
+        bd.setLong(c1, 1234);
+        Assert.assertEquals(1234, bd.getLong("FIELD_C1", 3));
+        Assert.assertEquals(1234, bd.getInt(c1));
+
+        try {
+            bd.field("FIELD_C1", 4);
+            Assert.assertFalse(true); // never reached, previous line will throw an exception
+        } catch (Exception e) {
+            Assert.assertEquals(e.getMessage(), IBufferConstant.ERROR_NAME_DOESNT_EXIST);
+        }
+
+        BufferDescriptor other = new BufferBuilder()
+                .addDataDescription(1, "BASE")
+                .addDataDescription(5, "FIELD_C1", "9(4)")
+                .endDataDescription();
+        try {
+            other.getInt(c1);
+            Assert.assertFalse(true); // never reached, previous line will throw an exception
+        } catch (Exception e) {
+            Assert.assertEquals(e.getMessage(), IBufferConstant.ERROR_FOREIGN_HANDLE);
+        }
+    }
+
+    @Test
+    public void testNumberDecoding() {
+
+        BufferDescriptor numbers = new BufferBuilder()
+                .addDataDescription(1, "BASE")
+                .addDataDescription(5, "AMOUNT", "9(14)")
+                .addDataDescription(5, "HUGE", "9(20)")
+                .endDataDescription();
+
+        numbers.setLong("AMOUNT", 123456789012L);
+        Assert.assertEquals(123456789012L, numbers.getLong("AMOUNT"));
+        Assert.assertEquals(1234567890.12, numbers.getDouble("AMOUNT", 2));
+        try {
+            numbers.getInt("AMOUNT");
+            Assert.assertFalse(true); // never reached, previous line will throw an exception
+        } catch (Exception e) {
+            Assert.assertEquals(e.getMessage(), IBufferConstant.ERROR_TYPE_INVALID);
+        }
+
+        numbers.setString("HUGE", "99999999999999999999");
+        try {
+            numbers.getLong("HUGE");
+            Assert.assertFalse(true); // never reached, previous line will throw an exception
+        } catch (Exception e) {
+            Assert.assertEquals(e.getMessage(), IBufferConstant.ERROR_TYPE_INVALID);
+        }
+
+        numbers.setString("AMOUNT", "00000000001A34");
+        try {
+            numbers.getLong("AMOUNT");
+            Assert.assertFalse(true); // never reached, previous line will throw an exception
+        } catch (Exception e) {
+            Assert.assertEquals(e.getMessage(), IBufferConstant.ERROR_TYPE_INVALID);
+        }
+    }
+
+    @Test
+    public void testNumberEncoding() {
+
+        bd.setInt("FIELD_B1", -5);
+        Assert.assertEquals("-005", bd.getString("FIELD_B1"));
+        Assert.assertEquals(-5, bd.getInt("FIELD_B1"));
+
+        bd.setLong("FIELD_B1", 123456);
+        Assert.assertEquals("1234", bd.getString("FIELD_B1"));
+
+        bd.setLong("FIELD_B1", 0);
+        Assert.assertEquals("0000", bd.getString("FIELD_B1"));
+
+        bd.setString("FIELD_B2", null);
+        Assert.assertEquals("  ", bd.getString("FIELD_B2"));
+    }
+
+    @Test
+    public void testSettersDoNotAllocate() {
+
+        java.lang.management.ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(mxBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) mxBean;
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        FieldHandle b1 = bd.field("FIELD_B1");
+        FieldHandle c1 = bd.field("FIELD_C1", 2);
+        FieldHandle d = bd.field("FIELD_D", 1);
+        long threadId = Thread.currentThread().getId();
+
+        this.writeFields(b1, c1, d, 20000);
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        long checksum = this.writeFields(b1, c1, d, 100000);
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        Assert.assertTrue(checksum > 0);
+        Assert.assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private long writeFields(final FieldHandle b1, final FieldHandle c1, final FieldHandle d, final int times) {
+        long checksum = 0;
+        for (int i = 0; i < times; i++) {
+            bd.setInt(b1, i % 10000);
+            bd.setLong(c1, i % 1000);
+            bd.setString(d, "field_d");
+            checksum += bd.getInt(b1) + bd.getLong(c1);
+        }
+        return checksum;
+    }
+
+    @Test
+    public void testSharedLayout() {
+
+        RecordLayout layout = bd.getLayout();
+        int length = layout.getRecordLength();
+        byte[] frame = new byte[3 + length * 2];
+
+        BufferDescriptor first = layout.wrap(frame, 3);
+        BufferDescriptor second = layout.wrap(frame, 3 + length);
+        first.clearBuffer();
+        second.clearBuffer();
+
+        FieldHandle a = layout.field("FIELD_A");
+        first.setString(a, "first");
+        second.setString(a, "second");
+        second.setInt("FIELD_C1", 77, 2);
+
+        Assert.assertEquals("first      ", first.getString(a));
+        Assert.assertEquals("second     ", second.getString("FIELD_A"));
+        Assert.assertEquals(0, first.getInt("FIELD_C1", 2));
+        Assert.assertEquals(77, second.getInt("FIELD_C1", 2));
+        Assert.assertEquals("first", new String(frame, 3, 5));
+        Assert.assertEquals(0, frame[0]);
+
+        BufferDescriptor fresh = layout.newRecord();
+        Assert.assertEquals("           ", fresh.getString(a));
+        Assert.assertEquals(0, fresh.getInt("FIELD_B1"));
+
+        try {
+            layout.wrap(frame, 4 + length);
+            Assert.assertFalse(true); // never reached, previous line will throw an exception
+        } catch (Exception e) {
+            Assert.assertEquals(e.getMessage(), IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+    }
+
+    @Test
+    public void testSerializedLayout() {
+
+        RecordLayout layout = bd.getLayout();
+        FieldHandle a = layout.field("FIELD_A");
+        BufferDescriptor record = layout.newRecord();
+        record.setString(a, "serialized");
+
+        // A deserialized layout is a new instance, so handles must be resolved again on it
+        BufferDescriptor copy = (BufferDescriptor) deserialize(serialize(record));
+        Assert.assertNotSame(layout, copy.getLayout());
+        Assert.assertEquals(layout.getRecordLength(), copy.getLayout().getRecordLength());
+        Assert.assertEquals("serialized ", copy.getString("FIELD_A"));
+        Assert.assertEquals("serialized ", copy.getString(copy.getLayout().field("FIELD_A")));
+        Assert.assertEquals(0, copy.getLayout().newRecord().getInt("FIELD_B1"));
+        try {
+            copy.getString(a);
+            Assert.assertFalse(true); // never reached, previous line will throw an exception
+        } catch (Exception e) {
+            Assert.assertEquals(e.getMessage(), IBufferConstant.ERROR_FOREIGN_HANDLE);
+        }
+    }
+
+    @Test
+    public void testLargeOccurs() {
+
+        RecordLayout layout = new BufferBuilder()
+                .addDataDescription(1, "ROOT")
+                .addDataDescription(5, "A", 100)
+                    .addDataDescription(10, "B", 50)
+                        .addDataDescription(15, "C", 20)
+                            .addDataDescription(20, "D", "X(1)")
+                            .addDataDescription(20, "N", "9(2)")
+                .endLayoutDescription();
+        Assert.assertEquals(100 * 50 * 20 * 3, layout.getRecordLength());
+
+        BufferDescriptor record = layout.newRecord();
+        record.setString("D", "x", 100, 50, 20);
+        record.setInt("N(37)(2)(5)", 42);
+        Assert.assertEquals("x", record.getString("D(100)(50)(20)"));
+        Assert.assertEquals(42, record.getInt("N", 37, 2, 5));
+        Assert.assertEquals(0, record.getInt("N", 37, 2, 6));
+        Assert.assertEquals(layout.getRecordLength() - 3, layout.field("D", 100, 50, 20).getOffset());
+        Assert.assertEquals(60, layout.field("C(1)(1)").getLength());
+
+        try {
+            record.getString("D", 101, 1, 1);
+            Assert.assertFalse(true); // never reached, previous line will throw an exception
+        } catch (Exception e) {
+            Assert.assertEquals(e.getMessage(), IBufferConstant.ERROR_NAME_DOESNT_EXIST);
+        }
+        try {
+            record.getString("D(1)(1)");
+            Assert.assertFalse(true); // never reached, previous line will throw an exception
+        } catch (Exception e) {
+            Assert.assertEquals(e.getMessage(), IBufferConstant.ERROR_NAME_DOESNT_EXIST);
+        }
+    }
+
+    @Test
+    public void testByteBuffers() {
+
+        RecordLayout layout = bd.getLayout();
+        int length = layout.getRecordLength();
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(8 + length);
+        direct.position(8);
+        BufferDescriptor record = layout.wrap(direct);
+        record.clearBuffer();
+        record.setString("FIELD_A", "direct");
+        record.setInt("FIELD_C1", 31, 3);
+        record.setString("FIELD_E11", "z", 2, 2);
+        Assert.assertEquals("direct     ", record.getString("FIELD_A"));
+        Assert.assertEquals(31, record.getInt("FIELD_C1", 3));
+        Assert.assertEquals("z", record.getString("FIELD_E11(2)(2)"));
+        Assert.assertEquals(8, direct.position());
+        Assert.assertEquals((byte) 'd', direct.get(8));
+
+        // Serialized records over a ByteBuffer get their own buffer when deserialized
+        BufferDescriptor copy = (BufferDescriptor) deserialize(serialize(record));
+        Assert.assertEquals("direct     ", copy.getString("FIELD_A"));
+        Assert.assertEquals("z", copy.getString("FIELD_E11", 2, 2));
+        Assert.assertEquals(length, copy.getBuffer().length);
+        Assert.assertEquals(0, copy.getBufferOffset());
+        try {
+            record.getBuffer();
+            Assert.assertFalse(true); // never reached, previous line will throw an exception
+        } catch (Exception e) {
+            Assert.assertEquals(e.getMessage(), IBufferConstant.ERROR_NO_ARRAY);
+        }
+
+        byte[] frame = new byte[4 + length];
+        ByteBuffer heap = ByteBuffer.wrap(frame);
+        heap.position(2);
+        ByteBuffer slice = heap.slice();
+        bd.setBuffer(slice, 2);
+        bd.clearBuffer();
+        bd.setString("FIELD_A", "heap");
+        Assert.assertEquals("heap", new String(frame, 4, 4));
+        Assert.assertSame(frame, bd.getBuffer());
+        Assert.assertEquals(4, bd.getBufferOffset());
+
+        try {
+            bd.setBuffer(frame, 5);
+            Assert.assertFalse(true); // never reached, previous line will throw an exception
+        } catch (Exception e) {
+            Assert.assertEquals(e.getMessage(), IBufferConstant.ERROR_BUFFER_SIZE);
+        }
+    }
+
+    @Test
+    public void testCodePages() {
+
+        // ASCII text is written directly with the default code page only if the default charset is ASCII compatible
+        Assert.assertTrue(FieldCodec.encodesAscii(Charset.forName("UTF-8")));
+        Assert.assertTrue(FieldCodec.encodesAscii(Charset.forName("ISO-8859-1")));
+        Assert.assertFalse(FieldCodec.encodesAscii(Charset.forName("IBM037")));
+
+        // Tables match the JDK charsets, except for 0x15 that is kept apart from 0x25 as NEL
+        byte[] all = new byte[256];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = (byte) i;
+        }
+        CodePage[] codePages = {CodePage.CP037, CodePage.CP1140, CodePage.CP284, CodePage.CP500};
+        for (CodePage codePage : codePages) {
+            String expected = new String(all, Charset.forName(codePage.getName()));
+            for (int i = 0; i < all.length; i++) {
+                char c = codePage.toChar((byte) i);
+                if (i != 0x15) {
+                    Assert.assertEquals(expected.charAt(i), c);
+                }
+                Assert.assertEquals((byte) i, codePage.toByte(c));
+            }
+        }
+        Assert.assertSame(CodePage.CP1140, CodePage.forName("Cp1140"));
+        Assert.assertSame(CodePage.CP037, CodePage.forName("IBM-037"));
+        Assert.assertSame(CodePage.CP284, CodePage.forName("284"));
+
+        RecordLayout layout = new BufferBuilder()
+                .setCodePage(CodePage.CP1140)
+                .addDataDescription(1, "BASE")
+                .addDataDescription(5, "NAME", "X(6)")
+                .addDataDescription(5, "AMOUNT", "9(4)")
+                .setCodePage(CodePage.ISO_8859_1)
+                .addDataDescription(5, "NOTE", "X(3)")
+                .endLayoutDescription();
+        BufferDescriptor record = layout.newRecord();
+        Assert.assertEquals("\u0040\u0040\u0040\u0040\u0040\u0040\u00f0\u00f0\u00f0\u00f0   ",
+                new String(record.getBuffer(), Charset.forName("ISO-8859-1")));
+
+        record.setString("NAME", "Ab 1\u20ac");
+        record.setInt("AMOUNT", -12);
+        record.setString("NOTE", "\u00e9");
+        byte[] expected = {(byte) 0xC1, (byte) 0x82, 0x40, (byte) 0xF1, (byte) 0x9F, 0x40,
+                0x60, (byte) 0xF0, (byte) 0xF1, (byte) 0xF2, (byte) 0xE9, 0x20, 0x20};
+        Assert.assertTrue(Arrays.equals(expected, record.getBuffer()));
+        Assert.assertEquals("Ab 1\u20ac ", record.getString("NAME"));
+        Assert.assertEquals(-12, record.getInt("AMOUNT"));
+        Assert.assertEquals(CodePage.ISO_8859_1, layout.field("NOTE").getCodePage());
+
+        // Chars missing in the code page are written as '?'
+        record.setString("NAME", "\u00a4");
+        Assert.assertEquals("?     ", record.getString("NAME"));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(layout.getRecordLength());
+        direct.put(expected).flip();
+        BufferDescriptor view = layout.wrap(direct);
+        Assert.assertEquals("Ab 1\u20ac ", view.getString("NAME"));
+        Assert.assertEquals(-12, view.getLong("AMOUNT"));
+        view.setString("NAME", "z");
+        Assert.assertEquals((byte) 0xA9, direct.get(0));
+        Assert.assertEquals((byte) 0x40, direct.get(5));
+    }
+
+    @Test
+    public void testPackedDecimal() {
+
+        RecordLayout layout = new BufferBuilder()
+                .addDataDescription(1, "BASE")
+                .addDataDescription(5, "AMOUNT", "S9(13)V99 COMP-3")
+                .addDataDescription(5, "COUNT", "PIC 9(4) PACKED-DECIMAL")
+                .addDataDescription(5, "DELTA", "S9(5) COMP-3", 2)
+                .addDataDescription(5, "BIG", "S9(19) COMP-3")
+                .endLayoutDescription();
+        Assert.assertEquals(8, layout.field("AMOUNT").getLength());
+        Assert.assertEquals(3, layout.field("COUNT").getLength());
+        Assert.assertEquals(3, layout.field("DELTA", 2).getLength());
+        Assert.assertEquals(10, layout.field("BIG").getLength());
+        Assert.assertEquals(27, layout.getRecordLength());
+
+        BufferDescriptor record = layout.newRecord();
+        byte[] buffer = record.getBuffer();
+        Assert.assertEquals(0x0C, buffer[7]);
+        Assert.assertEquals(0x0F, buffer[10]);
+        Assert.assertEquals(0, record.getLong("AMOUNT"));
+
+        record.setInt("DELTA", -12345, 2);
+        Assert.assertEquals(0x12, buffer[14]);
+        Assert.assertEquals(0x34, buffer[15]);
+        Assert.assertEquals(0x5D, buffer[16]);
+        Assert.assertEquals(-12345, record.getInt("DELTA(2)"));
+
+        // Unsigned fields keep the absolute value and, as in COBOL, only the rightmost digits
+        record.setInt("COUNT", -12345);
+        Assert.assertEquals(0x02, buffer[8]);
+        Assert.assertEquals(0x34, buffer[9]);
+        Assert.assertEquals(0x5F, buffer[10]);
+        Assert.assertEquals(2345, record.getInt("COUNT"));
+
+        record.setLong("AMOUNT", 123456789012345L);
+        Assert.assertEquals(123456789012345L, record.getLong("AMOUNT"));
+        Assert.assertEquals(1234567890123.45, record.getDouble("AMOUNT", 2), 0.001);
+
+        record.setLong("BIG", Long.MIN_VALUE);
+        Assert.assertEquals(Long.MIN_VALUE, record.getLong("BIG"));
+        record.setLong("BIG", Long.MAX_VALUE);
+        Assert.assertEquals(Long.MAX_VALUE, record.getLong("BIG"));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(layout.getRecordLength());
+        direct.put(buffer).flip();
+        BufferDescriptor view = layout.wrap(direct);
+        Assert.assertEquals(-12345, view.getInt("DELTA", 2));
+        Assert.assertEquals(Long.MAX_VALUE, view.getLong("BIG"));
+        view.setLong("AMOUNT", -5);
+        Assert.assertEquals(0x5D, direct.get(7));
+        Assert.assertEquals(-5, view.getLong("AMOUNT"));
+
+        // 19 nines don't fit into a long
+        for (int i = 17; i < 26; i++) {
+            buffer[i] = (byte) 0x99;
+        }
+        buffer[26] = (byte) 0x9C;
+        try {
+            record.getLong("BIG");
+            Assert.assertFalse(true); // never reached, the value overflows
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_TYPE_INVALID, e.getMessage());
+        }
+
+        buffer[8] = (byte) 0x1A;
+        try {
+            record.getInt("COUNT");
+            Assert.assertFalse(true); // never reached, 0xA is not a digit
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_TYPE_INVALID, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testBinary() {
+
+        RecordLayout layout = new BufferBuilder()
+                .addDataDescription(1, "BASE")
+                .addDataDescription(5, "SMALL", "9(4) COMP")
+                .addDataDescription(5, "COUNTER", "S9(9) COMP-4")
+                .addDataDescription(5, "KEY", "S9(18) COMP-5")
+                .setBinaryTruncation(BinaryTruncation.NATIVE)
+                .addDataDescription(5, "NATIVE", "9(4) BINARY")
+                .endLayoutDescription();
+        Assert.assertEquals(2, layout.field("SMALL").getLength());
+        Assert.assertEquals(4, layout.field("COUNTER").getLength());
+        Assert.assertEquals(8, layout.field("KEY").getLength());
+        Assert.assertEquals(16, layout.getRecordLength());
+
+        byte[] buffer = new byte[20];
+        Arrays.fill(buffer, (byte) 0x55);
+        BufferDescriptor record = layout.wrap(buffer, 2);
+        record.clearBuffer();
+        Assert.assertEquals(0, record.getLong("KEY"));
+
+        record.setInt("COUNTER", -2);
+        Assert.assertEquals((byte) 0xFF, buffer[4]);
+        Assert.assertEquals((byte) 0xFE, buffer[7]);
+        Assert.assertEquals(-2, record.getInt("COUNTER"));
+
+        record.setLong("KEY", Long.MIN_VALUE);
+        Assert.assertEquals((byte) 0x80, buffer[8]);
+        Assert.assertEquals(Long.MIN_VALUE, record.getLong("KEY"));
+
+        // Decimal truncation keeps the rightmost digits of the PIC, native truncation wraps around at 2 bytes
+        record.setInt("SMALL", 65432);
+        Assert.assertEquals(5432, record.getInt("SMALL"));
+        record.setInt("SMALL", -7);
+        Assert.assertEquals(7, record.getInt("SMALL"));
+        record.setInt("NATIVE", 65432);
+        Assert.assertEquals(65432, record.getInt("NATIVE"));
+        Assert.assertEquals((byte) 0xFF, buffer[16]);
+        Assert.assertEquals((byte) 0x98, buffer[17]);
+        record.setInt("NATIVE", 65537);
+        Assert.assertEquals(1, record.getInt("NATIVE"));
+        Assert.assertEquals(0x55, buffer[18]);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(layout.getRecordLength()).order(ByteOrder.LITTLE_ENDIAN);
+        direct.put(buffer, 2, layout.getRecordLength()).flip();
+        BufferDescriptor view = layout.wrap(direct);
+        Assert.assertEquals(-2, view.getInt("COUNTER"));
+        Assert.assertEquals(Long.MIN_VALUE, view.getLong("KEY"));
+        view.setInt("COUNTER", 258);
+        Assert.assertEquals(1, direct.get(4));
+        Assert.assertEquals(2, direct.get(5));
+        Assert.assertEquals(258, view.getInt("COUNTER"));
+
+        try {
+            new BufferBuilder().addDataDescription(1, "BASE").addDataDescription(5, "TOO-BIG", "9(19) COMP");
+            Assert.assertFalse(true); // never reached, binary fields have up to 18 digits
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_INVALID_PIC, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testScaledDecimals() {
+
+        RecordLayout layout = new BufferBuilder()
+                .addDataDescription(1, "BASE")
+                .addDataDescription(5, "TRAILING", "S9(5)V99")
+                .addDataDescription(5, "LEADING", "S9(3) SIGN IS LEADING")
+                .addDataDescription(5, "SEPARATE", "PIC S9(3)V9 SIGN TRAILING SEPARATE CHARACTER")
+                .addDataDescription(5, "PACKED", "S9(7)V99 COMP-3")
+                .addDataDescription(5, "UNSIGNED", "9(3)V99")
+                .endLayoutDescription();
+        Assert.assertEquals(2, layout.field("TRAILING").getScale());
+        Assert.assertEquals(5, layout.field("SEPARATE").getLength());
+        Assert.assertEquals(25, layout.getRecordLength());
+
+        BufferDescriptor record = layout.newRecord();
+        Assert.assertEquals("000000{{000000+", new String(record.getBuffer(), 0, 15));
+        Assert.assertEquals(0, BigDecimal.ZERO.compareTo(record.getBigDecimal("TRAILING")));
+
+        record.setBigDecimal("TRAILING", new BigDecimal("-123.456"));
+        Assert.assertEquals("001234N", record.getString("TRAILING"));
+        Assert.assertEquals(new BigDecimal("-123.45"), record.getBigDecimal("TRAILING"));
+        Assert.assertEquals(-12345, record.getUnscaledLong("TRAILING"));
+        Assert.assertEquals(-123.45, record.getDouble("TRAILING", 2), 0.0001);
+
+        record.setInt("LEADING", 12);
+        Assert.assertEquals("{12", record.getString("LEADING"));
+        record.setUnscaledLong("LEADING", -12);
+        Assert.assertEquals("}12", record.getString("LEADING"));
+        Assert.assertEquals(-12, record.getInt("LEADING"));
+
+        // Plain digits are positive, and only the rightmost digits are kept
+        record.setString("LEADING", "345");
+        Assert.assertEquals(345, record.getInt("LEADING"));
+        record.setInt("LEADING", -12345);
+        Assert.assertEquals(-345, record.getInt("LEADING"));
+
+        record.setBigDecimal("SEPARATE", new BigDecimal("-7.5"));
+        Assert.assertEquals("0075-", record.getString("SEPARATE"));
+        Assert.assertEquals(new BigDecimal("-7.5"), record.getBigDecimal("SEPARATE"));
+
+        FieldHandle packed = layout.field("PACKED");
+        record.setBigDecimal(packed, new BigDecimal("1234567.89"));
+        Assert.assertEquals(new BigDecimal("1234567.89"), record.getBigDecimal(packed));
+        record.setDouble(packed, 30000000.01, 2);
+        Assert.assertEquals(3000000001L % 1000000000L, record.getUnscaledLong(packed));
+
+        record.setBigDecimal("UNSIGNED", new BigDecimal("1.5"));
+        Assert.assertEquals("00150", record.getString("UNSIGNED"));
+
+        // The same fields in EBCDIC get the C and D zones
+        RecordLayout ebcdic = new BufferBuilder()
+                .setCodePage(CodePage.CP037)
+                .addDataDescription(1, "BASE")
+                .addDataDescription(5, "AMOUNT", "S9(3)")
+                .endLayoutDescription();
+        BufferDescriptor mainframe = ebcdic.newRecord();
+        mainframe.setInt("AMOUNT", -123);
+        Assert.assertEquals((byte) 0xF1, mainframe.getBuffer()[0]);
+        Assert.assertEquals((byte) 0xD3, mainframe.getBuffer()[2]);
+        mainframe.getBuffer()[2] = (byte) 0xC3;
+        Assert.assertEquals(123, mainframe.getInt("AMOUNT"));
+
+        try {
+            record.setBigDecimal("PACKED", new BigDecimal("1E30"));
+            Assert.assertFalse(true); // never reached, the value doesn't fit into a long
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_INVALID_VALUE, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDateFields() {
+        RecordLayout layout = new BufferBuilder()
+                .addDataDescription(1, "BASE")
+                .addDateDescription(5, "COMPACT", "yyyyMMdd")
+                .addDateDescription(5, "ISO", "yyyy-MM-dd")
+                .addDateDescription(5, "JULIAN", "yyyyDDD")
+                .addDateDescription(5, "EUROPEAN", "dd/MM/yyyy")
+                .addDateDescription(5, "TEXT", "X(12)", "d MMM yyyy")
+                .endLayoutDescription();
+        Assert.assertEquals(8, layout.field("COMPACT").getLength());
+        Assert.assertEquals(10, layout.field("ISO").getLength());
+        Assert.assertEquals(7, layout.field("JULIAN").getLength());
+        Assert.assertTrue(DatePattern.of("yyyyDDD").isFast());
+        Assert.assertFalse(DatePattern.of("d MMM yyyy").isFast());
+
+        BufferDescriptor record = layout.newRecord();
+        Assert.assertEquals("00000000", record.getString("COMPACT"));
+        Assert.assertNull(record.getLocalDate("COMPACT"));
+        Assert.assertNull(record.getLocalDate("ISO"));
+        Assert.assertNull(record.getLocalDate("TEXT"));
+        Assert.assertEquals(DatePattern.EMPTY, record.getEpochDay("JULIAN"));
+
+        LocalDate leapDay = LocalDate.of(2024, 2, 29);
+        record.setLocalDate("COMPACT", leapDay);
+        record.setLocalDate("ISO", leapDay);
+        record.setLocalDate("JULIAN", LocalDate.of(2024, 12, 31));
+        record.setLocalDate("EUROPEAN", leapDay);
+        Assert.assertEquals("20240229", record.getString("COMPACT"));
+        Assert.assertEquals("2024-02-29", record.getString("ISO"));
+        Assert.assertEquals("2024366", record.getString("JULIAN"));
+        Assert.assertEquals("29/02/2024", record.getString("EUROPEAN"));
+        Assert.assertEquals(leapDay, record.getLocalDate("COMPACT"));
+        Assert.assertEquals(leapDay, record.getLocalDate("EUROPEAN"));
+        Assert.assertEquals(LocalDate.of(2024, 12, 31), record.getLocalDate("JULIAN"));
+
+        // Digit arithmetic agrees with java.time over a wide range
+        FieldHandle compact = layout.field("COMPACT");
+        FieldHandle julian = layout.field("JULIAN");
+        for (int day = (int) LocalDate.of(1600, 1, 1).toEpochDay(); day < LocalDate.of(2400, 1, 1).toEpochDay();
+             day += 7) {
+            record.setEpochDay(compact, day);
+            record.setEpochDay(julian, day);
+            Assert.assertEquals(LocalDate.ofEpochDay(day).toString().replace("-", ""), record.getString(compact));
+            Assert.assertEquals(day, record.getEpochDay(compact));
+            Assert.assertEquals(day, record.getEpochDay(julian));
+        }
+
+        record.setLocalDate("TEXT", LocalDate.of(1999, 12, 31));
+        Assert.assertEquals(LocalDate.of(1999, 12, 31), record.getLocalDate("TEXT"));
+        record.setLocalDate("ISO", null);
+        Assert.assertEquals("          ", record.getString("ISO"));
+
+        // Dates in EBCDIC are read from the digits of the code page
+        RecordLayout ebcdic = new BufferBuilder()
+                .setCodePage(CodePage.CP037)
+                .addDataDescription(1, "BASE")
+                .addDateDescription(5, "ISO", "yyyy-MM-dd")
+                .endLayoutDescription();
+        ByteBuffer direct = ByteBuffer.allocateDirect(10);
+        BufferDescriptor mainframe = ebcdic.wrap(direct);
+        mainframe.setLocalDate("ISO", leapDay);
+        Assert.assertEquals((byte) 0xF2, direct.get(0));
+        Assert.assertEquals((byte) 0x60, direct.get(4));
+        Assert.assertEquals("2024-02-29", mainframe.getString("ISO"));
+        Assert.assertEquals(leapDay, mainframe.getLocalDate("ISO"));
+
+        record.setString("COMPACT", "20230229");
+        try {
+            record.getLocalDate("COMPACT");
+            Assert.assertFalse(true); // never reached, 2023 is not a leap year
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_INVALID_VALUE, e.getMessage());
+        }
+        try {
+            record.getLocalDate("BASE");
+            Assert.assertFalse(true); // never reached, the field is not a date
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_NO_DATE_FORMAT, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testLayoutSnapshot() {
+        BufferBuilder builder = new BufferBuilder()
+                .addDataDescription(1, "BASE")
+                .addDataDescription(5, "NAME", "X(10)").withValue("NONAME")
+                .addDataDescription(5, "GROUP", 3)
+                .addDataDescription(10, "INNER", 2)
+                .addDataDescription(15, "AMOUNT", "S9(5)V99 COMP-3")
+                .addDataDescription(15, "COUNT", "9(4) COMP")
+                .addDataDescription(10, "LABEL", "X(3)")
+                .setCodePage(CodePage.CP037)
+                .addDateDescription(5, "SINCE", "yyyyDDD")
+                .addDataDescription(5, "SIGNED", "S9(3) SIGN LEADING SEPARATE").withValue("-7");
+        RecordLayout layout = builder.endLayoutDescription();
+
+        byte[] snapshot = layout.toSnapshot();
+        RecordLayout loaded = RecordLayout.fromSnapshot(snapshot);
+        Assert.assertEquals(layout.getRecordLength(), loaded.getRecordLength());
+        Assert.assertEquals(layout.field("LABEL", 3).getOffset(), loaded.field("LABEL", 3).getOffset());
+        Assert.assertEquals(layout.field("COUNT", 2, 2).getOffset(), loaded.field("COUNT(2)(2)").getOffset());
+        Assert.assertEquals(CodePage.CP037, loaded.field("SINCE").getCodePage());
+        Assert.assertTrue(Arrays.equals(layout.newRecord().getBuffer(), loaded.newRecord().getBuffer()));
+
+        BufferDescriptor record = loaded.newRecord();
+        Assert.assertEquals("NONAME", record.getString("NAME").trim());
+        Assert.assertEquals(-7, record.getInt("SIGNED"));
+        record.setBigDecimal("AMOUNT", new BigDecimal("-123.45"), 3, 2);
+        record.setLocalDate("SINCE", LocalDate.of(2020, 3, 1));
+        BufferDescriptor original = layout.wrap(record.getBuffer());
+        Assert.assertEquals(new BigDecimal("-123.45"), original.getBigDecimal("AMOUNT", 3, 2));
+        Assert.assertEquals(LocalDate.of(2020, 3, 1), original.getLocalDate("SINCE"));
+
+        // Deep and wide layouts are built in linear time
+        BufferBuilder wide = new BufferBuilder().addDataDescription(1, "WIDE");
+        for (int i = 0; i < 20000; i++) {
+            wide.addDataDescription(2 + i % 48, "F" + i, i % 48 == 47 ? "X" : null, 1);
+        }
+        RecordLayout wideLayout = wide.endLayoutDescription();
+        Assert.assertEquals(20000 / 48, wideLayout.getRecordLength());
+        Assert.assertEquals(wideLayout.getRecordLength(),
+                RecordLayout.fromSnapshot(wideLayout.toSnapshot()).getRecordLength());
+
+        try {
+            builder.addDataDescription(1, "OTHER-ROOT");
+            Assert.assertFalse(true); // never reached, there is a single root
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_DESCRIPTOR_LEVEL, e.getMessage());
+        }
+        try {
+            RecordLayout.fromSnapshot(Arrays.copyOf(snapshot, snapshot.length - 1));
+            Assert.assertFalse(true); // never reached, the snapshot is truncated
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_INVALID_SNAPSHOT, e.getMessage());
+        }
+    }
+
+    public interface Client {
+        String getName();
+        void setName(String name);
+        String getPhone(int contact);
+        void setPhone(int contact, String phone);
+        long getMaxPurchaseAllowed();
+        void setMaxPurchaseAllowed(long max);
+        BigDecimal getBalance();
+        void setBalance(BigDecimal balance);
+        int getVisits();
+        void setVisits(int visits);
+        LocalDate getSince();
+        void setSince(LocalDate since);
+    }
+
+    public interface WrongClient {
+        int getName();
+    }
+
+    @Test
+    public void testGeneratedAccessors() {
+        RecordLayout layout = new BufferBuilder()
+                .addDataDescription(1, "CLIENT")
+                .addDataDescription(5, "NAME", "X(10)").withValue("NONAME")
+                .addDataDescription(5, "CONTACT", 3)
+                .addDataDescription(10, "PHONE", "X(9)")
+                .addDataDescription(5, "MAX-PURCHASE-ALLOWED", "9(6)")
+                .addDataDescription(5, "BALANCE", "S9(7)V99 COMP-3")
+                .addDataDescription(5, "VISITS", "S9(4) COMP")
+                .addDateDescription(5, "SINCE", "yyyyMMdd")
+                .endLayoutDescription();
+        AccessorFactory<Client> factory = AccessorFactory.compile(layout, Client.class);
+        Assert.assertSame(factory, AccessorFactory.compile(layout, Client.class));
+
+        Client client = factory.newRecord();
+        Assert.assertEquals("NONAME    ", client.getName());
+        Assert.assertNull(client.getSince());
+        client.setName("JOHN");
+        client.setPhone(2, "555123456");
+        client.setMaxPurchaseAllowed(1500);
+        client.setBalance(new BigDecimal("-12.5"));
+        client.setVisits(-3);
+        client.setSince(LocalDate.of(2020, 2, 29));
+
+        BufferDescriptor record = ((RecordAccessor) client).toBufferDescriptor();
+        Assert.assertEquals("JOHN      ", record.getString("NAME"));
+        Assert.assertEquals("555123456", record.getString("PHONE", 2));
+        Assert.assertEquals("001500", record.getString("MAX-PURCHASE-ALLOWED"));
+        Assert.assertEquals(new BigDecimal("-12.50"), record.getBigDecimal("BALANCE"));
+        Assert.assertEquals(-3, record.getInt("VISITS"));
+        Assert.assertEquals(LocalDate.of(2020, 2, 29), record.getLocalDate("SINCE"));
+        Assert.assertEquals(new BigDecimal("-12.50"), client.getBalance());
+        Assert.assertEquals(1500, client.getMaxPurchaseAllowed());
+        Assert.assertEquals(-3, client.getVisits());
+        Assert.assertEquals("555123456", client.getPhone(2));
+
+        // Accessors read records in place, anywhere in a bigger array
+        byte[] block = new byte[layout.getRecordLength() * 2];
+        System.arraycopy(record.getBuffer(), 0, block, layout.getRecordLength(), layout.getRecordLength());
+        Assert.assertEquals("JOHN      ", factory.wrap(block, layout.getRecordLength()).getName());
+
+        try {
+            client.getPhone(4);
+            Assert.assertFalse(true); // never reached, there are 3 contacts
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_NAME_DOESNT_EXIST, e.getMessage());
+        }
+        try {
+            AccessorFactory.compile(layout, WrongClient.class);
+            Assert.assertFalse(true); // never reached, NAME is not numeric
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_INVALID_ACCESSOR + "getName", e.getMessage());
+        }
+    }
+
+    public static class MappedClient {
+        @CobolField("NAME") private String name;
+        @CobolField("CONTACT") private List<MappedContact> contacts;
+        @CobolField("MAX-PURCHASE-ALLOWED") private long maxPurchaseAllowed;
+        @CobolField("BALANCE") private BigDecimal balance;
+        @CobolField("VISITS") private Integer visits;
+        @CobolField("SINCE") private LocalDate since;
+        @CobolField("SCORE") private int[] scores;
+        private String notMapped;
+    }
+
+    public static class MappedContact {
+        @CobolField("PHONE") private String phone;
+        @CobolField("CALLS") private long[] calls;
+    }
+
+    @Test
+    public void testRecordMapper() {
+        RecordLayout layout = new BufferBuilder()
+                .addDataDescription(1, "CLIENT")
+                .addDataDescription(5, "NAME", "X(10)")
+                .addDataDescription(5, "CONTACT", 3)
+                .addDataDescription(10, "PHONE", "X(9)")
+                .addDataDescription(10, "CALLS", "9(3) COMP-3", 2)
+                .addDataDescription(5, "MAX-PURCHASE-ALLOWED", "9(6)")
+                .addDataDescription(5, "BALANCE", "S9(7)V99 COMP-3")
+                .addDataDescription(5, "VISITS", "S9(4) COMP")
+                .addDateDescription(5, "SINCE", "yyyyMMdd")
+                .addDataDescription(5, "SCORE", "99", 4)
+                .endLayoutDescription();
+        RecordMapper<MappedClient> mapper = RecordMapper.bind(layout, MappedClient.class);
+        Assert.assertSame(mapper, RecordMapper.bind(layout, MappedClient.class));
+
+        BufferDescriptor record = layout.newRecord();
+        record.setString("NAME", "JOHN");
+        record.setString("PHONE", "555123456", 2);
+        record.setLong("CALLS", 42, 2, 2);
+        record.setLong("MAX-PURCHASE-ALLOWED", 1500);
+        record.setBigDecimal("BALANCE", new BigDecimal("-12.50"));
+        record.setInt("VISITS", -3);
+        record.setLocalDate("SINCE", LocalDate.of(2020, 2, 29));
+        record.setInt("SCORE", 7, 4);
+
+        MappedClient client = mapper.read(record);
+        Assert.assertEquals("JOHN      ", client.name);
+        Assert.assertEquals(3, client.contacts.size());
+        Assert.assertEquals("555123456", client.contacts.get(1).phone);
+        Assert.assertEquals(42, client.contacts.get(1).calls[1]);
+        Assert.assertEquals(0, client.contacts.get(2).calls[0]);
+        Assert.assertEquals(1500, client.maxPurchaseAllowed);
+        Assert.assertEquals(new BigDecimal("-12.50"), client.balance);
+        Assert.assertEquals(Integer.valueOf(-3), client.visits);
+        Assert.assertEquals(LocalDate.of(2020, 2, 29), client.since);
+        Assert.assertTrue(Arrays.equals(new int[] {0, 0, 0, 7}, client.scores));
+
+        // Writing back gives the same bytes, and missing values are initialized
+        BufferDescriptor copy = layout.newRecord();
+        mapper.write(client, copy);
+        Assert.assertTrue(Arrays.equals(record.getBuffer(), copy.getBuffer()));
+        client.contacts = client.contacts.subList(0, 1);
+        client.since = null;
+        client.balance = BigDecimal.ONE;
+        mapper.write(client, copy);
+        Assert.assertEquals("         ", copy.getString("PHONE", 2));
+        Assert.assertEquals(0, copy.getLong("CALLS", 2, 2));
+        Assert.assertNull(copy.getLocalDate("SINCE"));
+        Assert.assertEquals(new BigDecimal("1.00"), copy.getBigDecimal("BALANCE"));
+
+        try {
+            mapper.read(new BufferBuilder().addDataDescription(1, "OTHER").endDataDescription());
+            Assert.assertFalse(true); // never reached, the record has another layout
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_FOREIGN_RECORD, e.getMessage());
+        }
+        try {
+            RecordMapper.bind(layout, MappedContact.class);
+            Assert.assertFalse(true); // never reached, PHONE needs the index of its contact
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_INVALID_MAPPING + "phone", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testBlankRecords() {
+        RecordLayout layout = new BufferBuilder()
+                .addDataDescription(1, "BASE")
+                .addDataDescription(5, "NAME", "X(5)").withValue("NONE")
+                .addDataDescription(5, "ITEM", 3)
+                .addDataDescription(10, "AMOUNT", "S9(3)V99 COMP-3")
+                .addDataDescription(10, "COUNT", "9(2)").withValue("7")
+                .addDataDescription(5, "TOTAL", "S9(4) COMP")
+                .endLayoutDescription();
+        byte[] blank = layout.newRecord().getBuffer();
+        BufferDescriptor view = layout.wrap(blank);
+        Assert.assertEquals("NONE ", view.getString("NAME"));
+        Assert.assertEquals("07", view.getString("COUNT", 3));
+        Assert.assertEquals(0x0C, blank[layout.field("AMOUNT", 2).getOffset() + 2]);
+        Assert.assertEquals(0, view.getInt("TOTAL"));
+
+        // Clearing a used record restores the blank one, also over a direct buffer
+        BufferDescriptor record = layout.wrap(blank.clone());
+        record.setString("NAME", "JOHN");
+        record.setLong("AMOUNT", -12345, 2);
+        record.setInt("TOTAL", 99);
+        record.clearBuffer();
+        Assert.assertTrue(Arrays.equals(blank, record.getBuffer()));
+        ByteBuffer direct = ByteBuffer.allocateDirect(layout.getRecordLength() + 3);
+        BufferDescriptor offHeap = layout.wrap(direct, 3);
+        offHeap.clearBuffer();
+        Assert.assertEquals("NONE ", offHeap.getString("NAME"));
+        Assert.assertEquals(7, offHeap.getInt("COUNT", 3));
+        Assert.assertEquals(0, direct.position());
+
+        // Batches of records are initialized with a few bulk copies
+        byte[] records = layout.newRecords(5);
+        Assert.assertEquals(5 * layout.getRecordLength(), records.length);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(Arrays.equals(blank,
+                    Arrays.copyOfRange(records, i * blank.length, (i + 1) * blank.length)));
+        }
+        byte[] block = new byte[2 + 3 * blank.length];
+        layout.clearRecords(block, 2, 3);
+        Assert.assertEquals(0, block[1]);
+        Assert.assertEquals(7, layout.wrap(block, 2 + 2 * blank.length).getInt("COUNT", 2));
+        try {
+            layout.clearRecords(block, 3, 3);
+            Assert.assertFalse(true); // never reached, the last record doesn't fit
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_BUFFER_SIZE, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testRecordPool() throws InterruptedException {
+        RecordLayout layout = new BufferBuilder()
+                .addDataDescription(1, "BASE")
+                .addDataDescription(5, "NAME", "X(5)").withValue("NONE")
+                .addDataDescription(5, "COUNT", "9(3)")
+                .endLayoutDescription();
+        final RecordPool pool = new RecordPool(layout, 2);
+
+        // Released records come back cleared, first from the cache of the thread
+        BufferDescriptor record = pool.acquire();
+        record.setString("NAME", "JOHN");
+        record.setInt("COUNT", 7);
+        pool.release(record);
+        BufferDescriptor again = pool.acquire();
+        Assert.assertSame(record, again);
+        Assert.assertEquals("NONE ", again.getString("NAME"));
+        Assert.assertEquals(0, again.getInt("COUNT"));
+        Assert.assertEquals(1, pool.getHits());
+        Assert.assertEquals(1, pool.getMisses());
+
+        // Once the thread cache is full records go to the shared stack, up to the capacity
+        BufferDescriptor[] records = new BufferDescriptor[7];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = pool.acquire();
+        }
+        for (BufferDescriptor r : records) {
+            pool.release(r);
+        }
+        Assert.assertEquals(2, pool.getSharedSize());
+        Thread other = new Thread(new Runnable() {
+            public void run() {
+                pool.acquire();
+                pool.acquire();
+                pool.acquire();
+            }
+        });
+        other.start();
+        other.join();
+        Assert.assertEquals(0, pool.getSharedSize());
+        Assert.assertEquals(1 + 2, pool.getHits());
+        Assert.assertEquals(1 + 7 + 1, pool.getMisses());
+
+        // Records over a foreign buffer are not kept, and records of other layouts are refused
+        BufferDescriptor wrapped = layout.wrap(new byte[layout.getRecordLength() + 1], 1);
+        pool.release(wrapped);
+        Assert.assertEquals(0, pool.getSharedSize());
+        try {
+            pool.release(bd);
+            Assert.assertFalse(true); // never reached, the record has another layout
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_FOREIGN_RECORD, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testRedefines() {
+        RecordLayout layout = new BufferBuilder()
+                .addDataDescription(1, "MOVE")
+                .addDataDescription(5, "KIND", "X")
+                .addDataDescription(5, "ADDRESS")
+                    .addDataDescription(10, "STREET", "X(6)").withValue("NONE")
+                    .addDataDescription(10, "ZIP", "9(4)")
+                .addDataDescription(5, "PAYMENT").redefines("ADDRESS")
+                    .addDataDescription(10, "AMOUNT", "S9(5)V99 COMP-3")
+                    .addDataDescription(10, "CARD", "X(12)")
+                .addDataDescription(5, "CODE", "X(3)").redefines("ADDRESS")
+                .addDataDescription(5, "TOTAL", "9(3)")
+                .endLayoutDescription();
+
+        // The area takes the longest view, and the following fields are laid out after it
+        Assert.assertEquals(1 + 4 + 12 + 3, layout.getRecordLength());
+        Assert.assertEquals(1, layout.field("PAYMENT").getOffset());
+        Assert.assertEquals(1, layout.field("CODE").getOffset());
+        Assert.assertEquals(5, layout.field("CARD").getOffset());
+        Assert.assertEquals(17, layout.field("TOTAL").getOffset());
+
+        // Blank records are initialized by the redefined field, and every view reads the same bytes
+        BufferDescriptor record = layout.newRecord();
+        Assert.assertEquals("NONE  ", record.getString("STREET"));
+        Assert.assertEquals(0, record.getInt("ZIP"));
+        Assert.assertEquals("NON", record.getString("CODE"));
+        Assert.assertEquals("  0000      ", record.getString("CARD"));
+        record.setString("CODE", "ABC");
+        Assert.assertEquals("ABCE  ", record.getString("STREET"));
+        record.setUnscaledLong("AMOUNT", 12345);
+        record.setString("CARD", "4000");
+        Assert.assertEquals(new BigDecimal("123.45"), record.getBigDecimal("AMOUNT"));
+        Assert.assertEquals(0, record.getInt("TOTAL"));
+
+        // Snapshots keep the redefinitions
+        BufferDescriptor loaded = RecordLayout.fromSnapshot(layout.toSnapshot()).newRecord();
+        Assert.assertEquals("NONE  ", loaded.getString("STREET"));
+        Assert.assertEquals(5, loaded.field("CARD").getOffset());
+
+        try {
+            new BufferBuilder()
+                    .addDataDescription(1, "MOVE")
+                    .addDataDescription(5, "ADDRESS", "X(10)")
+                    .addDataDescription(5, "KIND", "X")
+                    .addDataDescription(5, "PAYMENT", "X(10)").redefines("ADDRESS");
+            Assert.assertFalse(true); // never reached, ADDRESS is not the previous field
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_INVALID_REDEFINES + "ADDRESS", e.getMessage());
+        }
+    }
+
+    private static byte[] serialize(final Object object) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(object);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object deserialize(final byte[] bytes) {
+        try {
+            return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
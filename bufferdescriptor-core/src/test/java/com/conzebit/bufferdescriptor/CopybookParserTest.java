@@ -0,0 +1,119 @@
+package com.conzebit.bufferdescriptor;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+
+public class CopybookParserTest {
+
+    private static final String CLIENT =
+            "000100* CLIENT RECORD                                                      CLIENT\n"
+          + "000200 01  CLIENT.                                                         CLIENT\n"
+          + "000300     05  NAME                  PIC X(10).                            CLIENT\n"
+          + "000400     05  KIND                  PIC X.                                CLIENT\n"
+          + "000500         88  KIND-PERSON       VALUE 'P'.                            CLIENT\n"
+          + "000600         88  KIND-COMPANY      VALUE 'C' 'S'.                        CLIENT\n"
+          + "000700     05  BALANCE               PIC S9(7)V99 USAGE IS COMP-3          CLIENT\n"
+          + "000800                             VALUE -1.5.                             CLIENT\n"
+          + "000900     05  FILLER                PIC X(2) VALUE ALL '*'.               CLIENT\n"
+          + "001000     05  COUNTRY               PIC X(2) VALUE 'ES'.                  CLIENT\n"
+          + "001100     05  COUNTRY-CODE REDEFINES COUNTRY PIC 99.                      CLIENT\n"
+          + "001200     05  COUNTERS COMP.                                              CLIENT\n"
+          + "001300         10  VISITS            PIC 9(4) VALUE ZERO.                  CLIENT\n"
+          + "001400         10  ORDERS            PIC S9(9).                            CLIENT\n"
+          + "001500     05  PHONE-COUNT           PIC 9.                                CLIENT\n"
+          + "001600     05  CONTACT OCCURS 1 TO 3 TIMES DEPENDING ON PHONE-COUNT        CLIENT\n"
+          + "001700                 INDEXED BY CONTACT-IDX.                             CLIENT\n"
+          + "001800         10  PHONE             PIC X(9).                             CLIENT\n"
+          + "001900         10  PIC X.                                                  CLIENT\n"
+          + "002000     05  NOTE                  PIC X(20) VALUE 'IT''S A LONG NOTE    CLIENT\n"
+          + "002100-                '00'.                                               CLIENT\n"
+          + "002200     05  AMOUNT                PIC S9(3) SIGN LEADING SEPARATE.      CLIENT\n";
+
+    @Test
+    public void testCopybook() throws IOException {
+        RecordLayout layout = new CopybookParser().parse(new StringReader(CLIENT));
+        Assert.assertEquals(10 + 1 + 5 + 2 + 2 + 2 + 4 + 1 + 3 * 10 + 20 + 4, layout.getRecordLength());
+        Assert.assertEquals(18, layout.field("COUNTRY").getOffset());
+        Assert.assertEquals(4, layout.field("ORDERS").getLength());
+        Assert.assertEquals(2, layout.field("BALANCE").getScale());
+        Assert.assertEquals(1, layout.field("FILLER#2", 3).getLength());
+
+        BufferDescriptor record = layout.newRecord();
+        Assert.assertEquals(new BigDecimal("-1.50"), record.getBigDecimal("BALANCE"));
+        Assert.assertEquals("**", record.getString("FILLER#1"));
+        Assert.assertEquals("ES", record.getString("COUNTRY"));
+        Assert.assertEquals(0, record.getInt("VISITS"));
+        Assert.assertEquals("IT'S A LONG NOTE 00 ", record.getString("NOTE"));
+        record.setInt("AMOUNT", -12);
+        Assert.assertEquals("-012", record.getString("AMOUNT"));
+        record.setString("PHONE", "555123456", 3);
+        Assert.assertEquals("555123456", record.getString("PHONE(3)"));
+
+        // Redefining fields and condition names take no room, a redefining field is another view of the same bytes
+        Assert.assertEquals(18, layout.field("COUNTRY-CODE").getOffset());
+        record.setInt("COUNTRY-CODE", 34);
+        Assert.assertEquals("34", record.getString("COUNTRY"));
+        record.clearBuffer();
+        Assert.assertEquals("ES", record.getString("COUNTRY"));
+
+        // A redefining field longer than the redefined one is initialized past the end of the redefined one
+        RecordLayout areas = new CopybookParser().setFixedFormat(false).parse("01 ROOT.\n"
+                + " 05 AREA1 PIC X(5) VALUE 'ABC'.\n 05 AREA2 REDEFINES AREA1.\n 10 NUM PIC 9(8).");
+        BufferDescriptor blank = areas.newRecord();
+        Assert.assertEquals(8, areas.getRecordLength());
+        Assert.assertEquals("ABC  000", blank.getString("AREA2"));
+        blank.setString("AREA1", "12345");
+        Assert.assertEquals(12345000, blank.getLong("NUM"));
+
+        // The same copybook is parsed once
+        Assert.assertSame(layout, new CopybookParser().parse(CLIENT));
+        Assert.assertNotSame(layout, new CopybookParser().setCodePage(CodePage.CP037).parse(CLIENT));
+
+        // Free format, without a 01 level
+        RecordLayout free = new CopybookParser()
+                .setFixedFormat(false)
+                .parse("05 CODE PIC 9(3). *> code of the operation\n05 TOTAL PIC 9(5)V99 BINARY.");
+        Assert.assertEquals(7, free.getRecordLength());
+        Assert.assertEquals(3, free.field("TOTAL").getOffset());
+
+        try {
+            new CopybookParser().setFixedFormat(false).parse("01 ROOT.\n 05 RATE PIC 9V9 COMP-1.");
+            Assert.assertFalse(true); // never reached, floating point fields are not supported
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_INVALID_COPYBOOK + " 05 RATE PIC 9V9 COMP-1", e.getMessage());
+        }
+
+        // Level 77 items are fields of ROOT
+        RecordLayout items = new CopybookParser().setFixedFormat(false).parse("77 X PIC X(2). 77 Y PIC 9(3).");
+        Assert.assertEquals("ROOT", items.getName());
+        Assert.assertEquals(5, items.getRecordLength());
+        Assert.assertEquals(2, items.field("Y").getOffset());
+        Assert.assertEquals("  000", items.newRecord().getString("ROOT"));
+        RecordLayout mixed = new CopybookParser().setFixedFormat(false)
+                .parse("77 N PIC X. 05 G. 10 A PIC X. 77 B PIC 99 VALUE 7. 05 C PIC X.");
+        Assert.assertEquals(5, mixed.getRecordLength());
+        Assert.assertEquals(2, mixed.field("B").getOffset());
+        Assert.assertEquals(4, mixed.field("C").getOffset());
+        Assert.assertEquals(7, mixed.newRecord().getInt("B"));
+
+        // A layout describes a single record
+        try {
+            new CopybookParser().setFixedFormat(false).parse("01 A. 05 X PIC X. 01 B. 05 Y PIC X.");
+            Assert.assertFalse(true); // never reached, there are two records
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_INVALID_COPYBOOK + " 01 B (a copybook must describe a single record)",
+                    e.getMessage());
+        }
+        try {
+            new CopybookParser().setFixedFormat(false).parse("01 A. 05 X PIC X. 77 Y PIC X.");
+            Assert.assertFalse(true); // never reached, the item is not part of the record
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_INVALID_COPYBOOK
+                    + " 77 Y PIC X (a copybook must describe a single record)", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package com.conzebit.bufferdescriptor;
+
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+public class RecordFileTest {
+
+    private static final int RECORDS = 10;
+
+    private RecordLayout layout = null;
+    private File file = null;
+
+    @Before
+    public void before() throws IOException {
+        layout = new BufferBuilder()
+                .addDataDescription(1, "CLIENT")
+                .addDataDescription(5, "ID", "9(6)")
+                .addDataDescription(5, "NAME", "X(10)")
+                .addDataDescription(5, "CONTACT", 2)
+                    .addDataDescription(10, "PHONE", "X(4)")
+                .endLayoutDescription();
+
+        file = File.createTempFile("records", ".dat");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            BufferDescriptor record = layout.newRecord();
+            for (int i = 0; i < RECORDS; i++) {
+                record.setInt("ID", i + 1);
+                record.setString("NAME", "NAME" + (i + 1));
+                record.setString("PHONE", "P" + i, 2);
+                out.write(record.getBuffer());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void after() {
+        file.delete();
+    }
+
+    @Test
+    public void testMappedReader() throws IOException {
+
+        // Three records per region, so the file is mapped as four chained regions
+        MappedRecordReader reader = new MappedRecordReader(layout, file, 3);
+        try {
+            Assert.assertEquals(RECORDS, reader.getRecordCount());
+            int count = 0;
+            while (reader.next()) {
+                BufferDescriptor record = reader.getRecord();
+                Assert.assertEquals(count, reader.getRecordNumber());
+                Assert.assertEquals(count + 1, record.getInt("ID"));
+                Assert.assertEquals("P" + count + "  ", record.getString("PHONE", 2));
+                count++;
+            }
+            Assert.assertEquals(RECORDS, count);
+
+            reader.seek(6);
+            Assert.assertEquals("NAME7     ", reader.getRecord().getString("NAME"));
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(8, reader.getRecord().getInt("ID"));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testMappedReaderWrongSize() throws IOException {
+
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write('X');
+        out.close();
+        try {
+            new MappedRecordReader(layout, file);
+            Assert.assertFalse(true); // never reached, previous line will throw an exception
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(e.getMessage(), IBufferConstant.ERROR_FILE_SIZE);
+        }
+    }
+
+    @Test
+    public void testStreams() throws IOException {
+
+        for (RecordFraming framing : RecordFraming.values()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            RecordWriter writer = new RecordWriter(layout, Channels.newChannel(bytes), framing);
+            BufferDescriptor copied = layout.newRecord();
+            for (int i = 0; i < 5000; i++) {
+                if (i % 2 == 0) {
+                    BufferDescriptor record = writer.nextRecord();
+                    record.setInt("ID", i);
+                    record.setString("PHONE", "T" + (i % 100), 1);
+                } else {
+                    copied.setInt("ID", i);
+                    copied.setString("PHONE", "T" + (i % 100), 1);
+                    writer.write(copied);
+                }
+            }
+            writer.close();
+
+            int overhead = framing == RecordFraming.FIXED ? 0 : (framing == RecordFraming.RDW ? 4 : 1);
+            Assert.assertEquals(5000 * (layout.getRecordLength() + overhead), bytes.size());
+
+            RecordReader reader = new RecordReader(layout, new ByteArrayInputStream(bytes.toByteArray()), framing);
+            int count = 0;
+            while (reader.next()) {
+                Assert.assertEquals(count, reader.getRecord().getInt("ID"));
+                Assert.assertEquals("T" + (count % 100), reader.getRecord().getString("PHONE", 1).trim());
+                count++;
+            }
+            reader.close();
+            Assert.assertEquals(5000, count);
+        }
+    }
+
+    @Test
+    public void testShortLines() throws IOException {
+
+        String lines = "000001JOSE\r\n000002SANZ      P1  P2  EXTRA\n\n000004";
+        RecordReader reader = new RecordReader(layout, new ByteArrayInputStream(lines.getBytes()), RecordFraming.LINE);
+        Assert.assertTrue(reader.next());
+        Assert.assertEquals(1, reader.getRecord().getInt("ID"));
+        Assert.assertEquals("JOSE      ", reader.getRecord().getString("NAME"));
+        Assert.assertEquals("    ", reader.getRecord().getString("PHONE", 1));
+        Assert.assertTrue(reader.next());
+        Assert.assertEquals("SANZ      ", reader.getRecord().getString("NAME"));
+        Assert.assertEquals("P2  ", reader.getRecord().getString("PHONE", 2));
+        Assert.assertTrue(reader.next());
+        Assert.assertEquals(0, reader.getRecord().getInt("ID"));
+        Assert.assertTrue(reader.next());
+        Assert.assertEquals(4, reader.getRecord().getInt("ID"));
+        Assert.assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void testTruncatedStream() throws IOException {
+
+        byte[] bytes = new byte[layout.getRecordLength() + 3];
+        RecordReader reader = new RecordReader(layout, new ByteArrayInputStream(bytes));
+        Assert.assertTrue(reader.next());
+        try {
+            reader.next();
+            Assert.assertFalse(true); // never reached, previous line will throw an exception
+        } catch (IOException e) {
+            Assert.assertEquals(e.getMessage(), IBufferConstant.ERROR_TRUNCATED_RECORD);
+        }
+    }
+
+    @Test
+    public void testParallelScan() throws IOException {
+
+        int records = 100000;
+        RecordWriter writer = new RecordWriter(layout, new FileOutputStream(file));
+        for (int i = 1; i <= records; i++) {
+            writer.nextRecord().setInt("ID", i);
+        }
+        writer.close();
+        long expected = (long) records * (records + 1) / 2;
+
+        // 999 records per region, so chunks cross region boundaries
+        MappedRecordReader reader = new MappedRecordReader(layout, file, 999);
+        try {
+            final AtomicLong total = new AtomicLong();
+            ParallelRecordScan.forEach(new ForkJoinPool(4), reader, new Consumer<BufferDescriptor>() {
+                public void accept(final BufferDescriptor record) {
+                    total.addAndGet(record.getInt("ID"));
+                }
+            });
+            Assert.assertEquals(expected, total.get());
+
+            Assert.assertEquals(expected, ParallelRecordScan.stream(reader).mapToLong(r -> r.getLong("ID")).sum());
+        } finally {
+            reader.close();
+        }
+
+        byte[] region = new byte[8 + 3000 * layout.getRecordLength()];
+        for (int i = 0; i < 3000; i++) {
+            layout.wrap(region, 8 + i * layout.getRecordLength()).setInt("ID", i + 1);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(region);
+        buffer.position(8);
+        Assert.assertEquals(3000L * 3001 / 2,
+                ParallelRecordScan.stream(layout, buffer).mapToLong(r -> r.getLong("ID")).sum());
+    }
+
+    @Test
+    public void testColumnExtraction() throws IOException {
+        ColumnExtractor extractor = new ColumnExtractor(layout)
+                .addLongColumn("ID")
+                .addStringColumn("PHONE", 2)
+                .addStringColumn("PHONE", 1);
+
+        // Records are taken from the four regions of the file
+        MappedRecordReader reader = new MappedRecordReader(layout, file, 3);
+        try {
+            ColumnBatch batch = extractor.extract(reader);
+            Assert.assertEquals(RECORDS, batch.size());
+            StringDictionary phones = batch.getDictionary(1);
+            for (int i = 0; i < RECORDS; i++) {
+                Assert.assertEquals(i + 1, batch.getLongs(0)[i]);
+                Assert.assertEquals(i, batch.getInts(1)[i]);
+                Assert.assertEquals("P" + i + "  ", phones.get(batch.getInts(1)[i]));
+                Assert.assertEquals(0, batch.getInts(2)[i]);
+            }
+            Assert.assertEquals(1, batch.getDictionary(2).size());
+            Assert.assertEquals(7, phones.indexOf("P7"));
+            Assert.assertEquals(-1, phones.indexOf("P10"));
+
+            // A partial batch, filled from the middle of the file, keeps its dictionary codes when reused
+            ColumnBatch small = extractor.newBatch(4);
+            Assert.assertEquals(4, extractor.extract(reader, 2, 5, small));
+            Assert.assertEquals(0, extractor.extract(reader, 6, 1, small));
+            Assert.assertEquals(6, small.getLongs(0)[3]);
+            small.clear();
+            Assert.assertEquals(2, extractor.extract(reader, 8, 10, small));
+            Assert.assertEquals(4, small.getInts(1)[0]);
+            Assert.assertEquals("P8  ", small.getDictionary(1).get(4));
+
+            try {
+                small.getInts(0);
+                Assert.assertFalse(true); // never reached, ID is a long column
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals(IBufferConstant.ERROR_TYPE_INVALID, e.getMessage());
+            }
+        } finally {
+            reader.close();
+        }
+
+        // Records in a byte[], with a date field taken by year
+        RecordLayout dated = new BufferBuilder()
+                .addDataDescription(1, "SALE")
+                .addDateDescription(5, "DAY", "yyyy-MM-dd")
+                .addDataDescription(5, "AMOUNT", "S9(5)V99 COMP-3")
+                .endLayoutDescription();
+        byte[] block = new byte[dated.getRecordLength() * 3];
+        for (int i = 0; i < 3; i++) {
+            BufferDescriptor sale = dated.wrap(block, i * dated.getRecordLength());
+            sale.clearBuffer();
+            sale.setUnscaledLong("AMOUNT", -100 * i);
+            if (i > 0) {
+                sale.setString("DAY", (1999 + i) + "-12-31");
+            }
+        }
+        ColumnExtractor sales = new ColumnExtractor(dated).addYearColumn("DAY").addIntColumn("AMOUNT");
+        ColumnBatch batch = sales.newBatch(3);
+        Assert.assertEquals(3, sales.extract(block, 0, 3, batch));
+        Assert.assertEquals(DatePattern.EMPTY, batch.getInts(0)[0]);
+        Assert.assertEquals(2000, batch.getInts(0)[1]);
+        Assert.assertEquals(2001, batch.getInts(0)[2]);
+        Assert.assertEquals(-200, batch.getInts(1)[2]);
+
+        try {
+            new ColumnExtractor(layout).addLongColumn("NAME");
+            Assert.assertFalse(true); // never reached, NAME is not numeric
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_TYPE_INVALID, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFilters() throws IOException {
+        RecordFilter middle = RecordFilter.between(layout.field("ID"), 3, 5);
+        RecordFilter named = RecordFilter.equalTo(layout.field("NAME"), "NAME9");
+        RecordFilter filter = middle.or(named).and(RecordFilter.startsWith(layout.field("PHONE", 2), "P"));
+
+        MappedRecordReader reader = new MappedRecordReader(layout, file, 3);
+        try {
+            reader.setFilter(filter);
+            StringBuilder ids = new StringBuilder();
+            while (reader.next()) {
+                ids.append(reader.getRecord().getInt("ID")).append(' ');
+            }
+            Assert.assertEquals("3 4 5 9 ", ids.toString());
+            Assert.assertEquals(2, ParallelRecordScan.stream(reader).filter(middle.and(
+                    RecordFilter.between(layout.field("NAME"), "NAME3", "NAME4"))).count());
+        } finally {
+            reader.close();
+        }
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        RecordReader stream = new RecordReader(layout, new ByteArrayInputStream(bytes));
+        stream.setFilter(RecordFilter.anyOf(RecordFilter.equalTo(layout.field("ID"), 10),
+                RecordFilter.equalTo(layout.field("ID"), 1234567), RecordFilter.equalTo(layout.field("NAME"), "NAME")));
+        Assert.assertTrue(stream.next());
+        Assert.assertEquals(9, stream.getRecordNumber());
+        Assert.assertEquals(10, stream.getRecord().getInt("ID"));
+        Assert.assertFalse(stream.next());
+        stream.close();
+
+        // Signed and packed numbers are decoded, as their sign can be encoded in several ways
+        RecordLayout signed = new BufferBuilder()
+                .addDataDescription(1, "MOVE")
+                .addDataDescription(5, "AMOUNT", "S9(5)V99 COMP-3")
+                .addDataDescription(5, "UNITS", "S9(3)")
+                .endLayoutDescription();
+        BufferDescriptor move = signed.newRecord();
+        move.setUnscaledLong("AMOUNT", -1050);
+        move.setInt("UNITS", -7);
+        Assert.assertTrue(RecordFilter.between(signed.field("AMOUNT"), -2000, -1000).test(move));
+        Assert.assertTrue(RecordFilter.equalTo(signed.field("UNITS"), -7).test(move));
+        Assert.assertFalse(RecordFilter.equalTo(signed.field("UNITS"), 7).test(move));
+
+        // Unsigned display numbers may hold a leading sign, so they are decoded too
+        RecordLayout unsigned = new BufferBuilder()
+                .addDataDescription(1, "STOCK")
+                .addDataDescription(5, "COUNT", "9(4)")
+                .endLayoutDescription();
+        BufferDescriptor stock = unsigned.newRecord();
+        stock.setLong("COUNT", -5);
+        Assert.assertEquals(-5, stock.getLong("COUNT"));
+        Assert.assertTrue(RecordFilter.between(unsigned.field("COUNT"), -10, 10).test(stock));
+        Assert.assertFalse(RecordFilter.between(unsigned.field("COUNT"), 0, 10).test(stock));
+        System.arraycopy("+005".getBytes("US-ASCII"), 0, stock.getBuffer(), 0, 4);
+        Assert.assertEquals(5, stock.getLong("COUNT"));
+        Assert.assertTrue(RecordFilter.between(unsigned.field("COUNT"), 0, 10).test(stock));
+        Assert.assertTrue(RecordFilter.equalTo(unsigned.field("COUNT"), 5).test(stock));
+
+        try {
+            RecordFilter.startsWith(signed.field("UNITS"), "-");
+            Assert.assertFalse(true); // never reached, signed numbers are not compared as text
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_TYPE_INVALID, e.getMessage());
+        }
+        try {
+            middle.test(move);
+            Assert.assertFalse(true); // never reached, the record has another layout
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(IBufferConstant.ERROR_FOREIGN_RECORD, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testMetrics() throws IOException {
+        final List<String> events = new ArrayList<String>();
+        MetricsSink sink = new MetricsSink() {
+            public void layoutBuilt(final RecordLayout layout, final long nanos) {
+                events.add("built " + layout.getName());
+            }
+            public void fieldAccessed(final RecordLayout layout, final String field, final long reads,
+                                      final long writes) {
+                events.add(field + " " + reads + "/" + writes);
+            }
+            public void accessFailed(final RecordLayout layout, final String field, final String error) {
+                events.add("failed " + field);
+            }
+            public void recordsRead(final RecordLayout layout, final long records, final long nanos) {
+                events.add("read " + records);
+            }
+        };
+
+        RecordMetrics metrics = RecordMetrics.enable(sink);
+        try {
+            RecordLayout copy = RecordLayout.fromSnapshot(layout.toSnapshot());
+            Assert.assertEquals("built CLIENT", events.get(0));
+
+            MappedRecordReader reader = new MappedRecordReader(layout, file);
+            while (reader.next()) {
+                reader.getRecord().getInt("ID");
+                reader.getRecord().getString(layout.field("PHONE", 2));
+            }
+            reader.close();
+            Assert.assertEquals("read " + RECORDS, events.get(1));
+
+            // Records are counted as they are read, not from the position, and a reader is reported once
+            reader = new MappedRecordReader(layout, file);
+            reader.seek(RECORDS - 3);
+            while (reader.next()) {
+                reader.getRecord();
+            }
+            reader.close();
+            reader.close();
+            Assert.assertEquals("read 2", events.get(2));
+            Assert.assertEquals(3, events.size());
+
+            BufferDescriptor record = copy.newRecord();
+            record.setString("NAME", "X");
+            try {
+                record.getString("SURNAME");
+                Assert.assertFalse(true); // never reached, the field doesn't exist
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals("failed SURNAME", events.get(3));
+            }
+            record.setString("ID", "ABC");
+            try {
+                record.getLong("ID");
+                Assert.assertFalse(true); // never reached, the field is not a number
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals("failed ID", events.get(4));
+            }
+
+            // Counters are kept per field, for every occurrence, and per layout
+            Assert.assertEquals(RECORDS, metrics.getReads(layout, "ID"));
+            Assert.assertEquals(RECORDS, metrics.getReads(layout, "PHONE"));
+            Assert.assertEquals(0, metrics.getWrites(layout, "NAME"));
+            Assert.assertEquals(2 * RECORDS, metrics.getAccesses(layout));
+            Assert.assertEquals(0, metrics.getFailures(layout));
+            Assert.assertEquals(1, metrics.getWrites(copy, "NAME"));
+            Assert.assertEquals(2, metrics.getFailures(copy));
+            metrics.report();
+            Assert.assertTrue(events.contains("PHONE " + RECORDS + "/0"));
+            Assert.assertTrue(events.contains("NAME 0/1"));
+        } finally {
+            RecordMetrics.disable();
+        }
+
+        // Once disabled nothing is counted
+        layout.newRecord().getInt("ID");
+        Assert.assertNull(RecordMetrics.current());
+        Assert.assertEquals(RECORDS, metrics.getReads(layout, "ID"));
+    }
+}
@@ -0,0 +1,146 @@
+package com.conzebit.bufferdescriptor.jfr;
+
+import com.conzebit.bufferdescriptor.MetricsSink;
+import com.conzebit.bufferdescriptor.RecordLayout;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Sink that publishes metrics as Java Flight Recorder events, so they can be recorded along with the CPU and
+ * allocation profile of the application:<br />
+ * <br />
+ * <code>
+ * RecordMetrics.enable(new JfrMetricsSink());
+ * </code><br />
+ * <br />
+ * Events are named <code>com.conzebit.bufferdescriptor.LayoutBuilt</code>, <code>FieldAccess</code>,
+ * <code>AccessFailed</code> and <code>RecordsRead</code>, and are only filled in and committed while a recording has
+ * them enabled.<br />
+ * <br />
+ * This sink is shipped in its own module, <code>bufferdescriptor-jfr</code>, which requires Java 11, so the core
+ * module keeps running on plain Java 8.
+ */
+public final class JfrMetricsSink implements MetricsSink {
+
+    @Override
+    public void layoutBuilt(final RecordLayout layout, final long nanos) {
+        LayoutBuiltEvent event = new LayoutBuiltEvent();
+        if (event.isEnabled()) {
+            event.layout = layout.getName();
+            event.recordLength = layout.getRecordLength();
+            event.buildTime = nanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void fieldAccessed(final RecordLayout layout, final String field, final long reads, final long writes) {
+        FieldAccessEvent event = new FieldAccessEvent();
+        if (event.isEnabled()) {
+            event.layout = layout.getName();
+            event.field = field;
+            event.reads = reads;
+            event.writes = writes;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void accessFailed(final RecordLayout layout, final String field, final String error) {
+        AccessFailedEvent event = new AccessFailedEvent();
+        if (event.isEnabled()) {
+            event.layout = layout.getName();
+            event.field = field;
+            event.error = error;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void recordsRead(final RecordLayout layout, final long records, final long nanos) {
+        RecordsReadEvent event = new RecordsReadEvent();
+        if (event.isEnabled()) {
+            event.layout = layout.getName();
+            event.records = records;
+            event.elapsed = nanos;
+            event.recordsPerSecond = nanos > 0 ? records * 1e9 / nanos : 0;
+            event.commit();
+        }
+    }
+
+    @Name("com.conzebit.bufferdescriptor.LayoutBuilt")
+    @Label("Layout Built")
+    @Category("BufferDescriptor")
+    @Description("A record layout has been built or loaded from a snapshot")
+    static final class LayoutBuiltEvent extends Event {
+
+        @Label("Layout")
+        String layout;
+
+        @Label("Record Length")
+        int recordLength;
+
+        @Label("Build Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long buildTime;
+    }
+
+    @Name("com.conzebit.bufferdescriptor.FieldAccess")
+    @Label("Field Access")
+    @Category("BufferDescriptor")
+    @Description("Reads and writes of a field since metrics were enabled")
+    static final class FieldAccessEvent extends Event {
+
+        @Label("Layout")
+        String layout;
+
+        @Label("Field")
+        String field;
+
+        @Label("Reads")
+        long reads;
+
+        @Label("Writes")
+        long writes;
+    }
+
+    @Name("com.conzebit.bufferdescriptor.AccessFailed")
+    @Label("Access Failed")
+    @Category("BufferDescriptor")
+    @Description("A field doesn't exist or its value can't be decoded or encoded")
+    static final class AccessFailedEvent extends Event {
+
+        @Label("Layout")
+        String layout;
+
+        @Label("Field")
+        String field;
+
+        @Label("Error")
+        String error;
+    }
+
+    @Name("com.conzebit.bufferdescriptor.RecordsRead")
+    @Label("Records Read")
+    @Category("BufferDescriptor")
+    @Description("A record reader has been closed")
+    static final class RecordsReadEvent extends Event {
+
+        @Label("Layout")
+        String layout;
+
+        @Label("Records")
+        long records;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+
+        @Label("Records per Second")
+        double recordsPerSecond;
+    }
+}
@@ -0,0 +1,55 @@
+package com.conzebit.bufferdescriptor.jfr;
+
+import com.conzebit.bufferdescriptor.BufferBuilder;
+import com.conzebit.bufferdescriptor.RecordLayout;
+import com.conzebit.bufferdescriptor.RecordMetrics;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class JfrMetricsSinkTest {
+
+    @Test
+    public void testEvents() throws IOException {
+        Recording recording = new Recording();
+        recording.enable("com.conzebit.bufferdescriptor.LayoutBuilt");
+        recording.enable("com.conzebit.bufferdescriptor.AccessFailed");
+        recording.start();
+        RecordMetrics.enable(new JfrMetricsSink());
+        try {
+            RecordLayout layout = new BufferBuilder()
+                    .addDataDescription(1, "CLIENT")
+                    .addDataDescription(5, "NAME", "X(10)")
+                    .endLayoutDescription();
+            try {
+                layout.newRecord().getString("SURNAME");
+                Assert.assertFalse(true); // never reached, the field doesn't exist
+            } catch (IllegalArgumentException e) {
+                // counted as a failed access
+            }
+        } finally {
+            RecordMetrics.disable();
+            recording.stop();
+        }
+
+        File file = File.createTempFile("metrics", ".jfr");
+        try {
+            recording.dump(file.toPath());
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+            Assert.assertEquals(2, events.size());
+            Assert.assertEquals("com.conzebit.bufferdescriptor.LayoutBuilt", events.get(0).getEventType().getName());
+            Assert.assertEquals(10, events.get(0).getInt("recordLength"));
+            Assert.assertEquals("SURNAME", events.get(1).getString("field"));
+            Assert.assertEquals("CLIENT", events.get(1).getString("layout"));
+        } finally {
+            recording.close();
+            file.delete();
+        }
+    }
+}